@@ -191,6 +191,28 @@ public class Client {
 			"                 -sf <#seconds>          Set the status update frequency\n" +
 			"                 -cf <#seconds>          Set the get changes frequency\n" +
 			"                 -df <#seconds>          Set the post diagnostics frequency\n" +
+			"                 -ab <block/drop>        Set the mode on which messages are\n" +
+			"                                         archived when archiving falls behind\n" +
+			"                 -ad <none/group/        Set the mode on which archived messages\n" +
+			"                     message>            are forced to the storage device\n" +
+			"                 -ae <file/mmap>         Set the storage engine of message\n" +
+			"                                         archive segments\n" +
+			"                 -as <#MB>               Set the maximum size, in MiB, of a\n" +
+			"                                         message archive segment\n" +
+			"                 -am <#messages>         Set the maximum number of messages of\n" +
+			"                                         a message archive segment\n" +
+			"                 -aa <#minutes>          Set the maximum age of a message\n" +
+			"                                         archive segment, 0 for no limit\n" +
+			"                 -rs <#MB>               Set the maximum size, in MiB, of the\n" +
+			"                                         message archive of each publisher,\n" +
+			"                                         0 for no limit\n" +
+			"                 -ra <#hours>            Set the maximum age of archived\n" +
+			"                                         messages, 0 for no limit\n" +
+			"                 -fp <drop/block/page>   Set the policy for a receiver whose\n" +
+			"                                         queue is full\n" +
+			"                 -rq <#messages>         Set the maximum number of messages\n" +
+			"                                         queued per receiver, 0 for no\n" +
+			"                                         limit\n" +
 			"                 -sd <#seconds>          Set the scan devices frequency\n" +
 			"                 -idc <on/off>           Set the mode on which any not\n" +
 			"										  registered docker container will be\n" +
@@ -51,6 +51,16 @@ public enum CommandLineConfigParam {
     GPS_MODE (GpsMode.AUTO.name().toLowerCase(), "gps", "gps", "gpsMode"),
     GPS_COORDINATES ("", "", "gps_coordinates", "gpscoordinates"),
     POST_DIAGNOSTICS_FREQ ("10", "df", "post_diagnostics_freq", "postdiagnosticsfreq"),
+    ARCHIVE_BACKPRESSURE ("block", "ab", "archive_backpressure", ""),
+    ARCHIVE_DURABILITY ("group", "ad", "archive_durability", ""),
+    ARCHIVE_ENGINE ("file", "ae", "archive_engine", ""),
+    ARCHIVE_SEGMENT_SIZE ("16", "as", "archive_segment_size", ""),
+    ARCHIVE_SEGMENT_MESSAGES ("100000", "am", "archive_segment_messages", ""),
+    ARCHIVE_SEGMENT_AGE ("60", "aa", "archive_segment_age", ""),
+    ARCHIVE_RETENTION_SIZE ("0", "rs", "archive_retention_size", ""),
+    ARCHIVE_RETENTION_AGE ("0", "ra", "archive_retention_age", ""),
+    ADDRESS_FULL_POLICY ("drop", "fp", "address_full_policy", ""),
+    RECEIVER_QUEUE_LIMIT ("10000", "rq", "receiver_queue_limit", ""),
     FOG_TYPE ("auto", "ft", "fog_type", ""),
     DEV_MODE ("on", "dev", "dev_mode", "");
 
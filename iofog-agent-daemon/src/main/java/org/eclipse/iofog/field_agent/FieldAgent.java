@@ -533,6 +533,7 @@ public class FieldAgent implements IOFogModule {
 
             String microserviceUuid = microservice.getMicroserviceUuid();
             Route microserviceRoute = new Route();
+            microserviceRoute.setCompression(microservice.getMessageCompression());
 
             for (String jsonRoute : jsonRoutes) {
                 microserviceRoute.getReceivers().add(jsonRoute);
@@ -624,6 +625,7 @@ public class FieldAgent implements IOFogModule {
 
             JsonValue routesValue = jsonObj.get("routes");
             microservice.setRoutes(getStringList(routesValue));
+            microservice.setMessageCompression(MessageCompression.fromName(jsonObj.getString("messageCompression", null)));
 
             JsonValue portMappingValue = jsonObj.get("portMappings");
             if (!portMappingValue.getValueType().equals(JsonValue.ValueType.NULL)) {
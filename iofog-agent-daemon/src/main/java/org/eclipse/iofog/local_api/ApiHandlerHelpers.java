@@ -59,6 +59,11 @@ public class ApiHandlerHelpers {
         return createResponse(outputBuffer, content, OK);
     }
 
+    public static FullHttpResponse successResponse(ByteBuf outputBuffer) {
+    	LoggingService.logInfo(MODULE_NAME, "Create success response from prepared content");
+        return createResponse(outputBuffer, null, OK);
+    }
+
     public static FullHttpResponse methodNotAllowedResponse() {
     	LoggingService.logInfo(MODULE_NAME, "Create method not allowed response");
         return createResponse(null, null, METHOD_NOT_ALLOWED);
@@ -84,10 +89,16 @@ public class ApiHandlerHelpers {
         return createResponse(outputBuffer, content, INTERNAL_SERVER_ERROR);
     }
 
+    public static FullHttpResponse serviceUnavailableResponse(ByteBuf outputBuffer, String content) {
+    	LoggingService.logInfo(MODULE_NAME, "Create service unavailable response");
+        return createResponse(outputBuffer, content, SERVICE_UNAVAILABLE);
+    }
+
     private static FullHttpResponse createResponse(ByteBuf outputBuffer, String content, HttpResponseStatus status) {
     	LoggingService.logInfo(MODULE_NAME, "Start create response");
     	if (outputBuffer != null) {
-            outputBuffer.writeBytes(content.getBytes(UTF_8));
+            if (content != null)
+                outputBuffer.writeBytes(content.getBytes(UTF_8));
             FullHttpResponse res = new DefaultFullHttpResponse(HTTP_1_1, status, outputBuffer);
             HttpUtil.setContentLength(res, outputBuffer.readableBytes());
             LoggingService.logInfo(MODULE_NAME, "Finish create response");
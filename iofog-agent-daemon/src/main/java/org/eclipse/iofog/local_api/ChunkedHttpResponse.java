@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Edgeworx, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ * Saeid Baghbidi
+ * Kilton Hopkins
+ *  Ashita Nagar
+ *******************************************************************************/
+package org.eclipse.iofog.local_api;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.stream.ChunkedInput;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+
+/**
+ * success response which content is streamed with chunked transfer encoding.
+ * Content is pulled from its {@link ChunkedInput} only while the channel is writable,
+ * so it never has to be held in memory as a whole
+ *
+ * @author saeid
+ */
+class ChunkedHttpResponse extends DefaultHttpResponse {
+	private final ChunkedInput<ByteBuf> content;
+
+	ChunkedHttpResponse(ChunkedInput<ByteBuf> content) {
+		super(HTTP_1_1, OK);
+		HttpUtil.setTransferEncodingChunked(this, true);
+		this.content = content;
+	}
+
+	ChunkedInput<ByteBuf> content() {
+		return content;
+	}
+}
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Edgeworx, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ * Saeid Baghbidi
+ * Kilton Hopkins
+ *  Ashita Nagar
+ *******************************************************************************/
+package org.eclipse.iofog.local_api;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpRequest;
+import org.eclipse.iofog.exception.AgentSystemException;
+import org.eclipse.iofog.exception.AgentUserException;
+import org.eclipse.iofog.message_bus.Message;
+import org.eclipse.iofog.message_bus.MessageBusUtil;
+import org.eclipse.iofog.utils.logging.LoggingService;
+
+import javax.json.*;
+import java.io.StringReader;
+import java.util.concurrent.Callable;
+
+import static io.netty.handler.codec.http.HttpMethod.POST;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Handler to deliver a single archived message to the receiver by its ID
+ *
+ * @author saeid
+ */
+public class GetMessageHandler implements Callable<FullHttpResponse> {
+	private static final String MODULE_NAME = "Local API : GetMessageHandler";
+
+	private final HttpRequest req;
+	private final ByteBuf outputBuffer;
+	private final byte[] content;
+
+	public GetMessageHandler(HttpRequest req, ByteBuf outputBuffer, byte[] content) {
+		this.req = req;
+		this.outputBuffer = outputBuffer;
+		this.content = content;
+	}
+
+	/**
+	 * Handler method to look up a message of a publisher by its ID in message archive
+	 *
+	 * @return Object
+	 */
+	private FullHttpResponse handleGetMessageRequest() {
+		LoggingService.logInfo(MODULE_NAME, "Start Handler method to get archived message by its ID");
+		if (!ApiHandlerHelpers.validateMethod(this.req, POST)) {
+			LoggingService.logError(MODULE_NAME, "Request method not allowed", new AgentUserException("Request method not allowed"));
+			return ApiHandlerHelpers.methodNotAllowedResponse();
+		}
+
+		final String contentTypeError = ApiHandlerHelpers.validateContentType(this.req, "application/json");
+		if (contentTypeError != null) {
+			LoggingService.logError(MODULE_NAME, contentTypeError, new AgentUserException(contentTypeError));
+			return ApiHandlerHelpers.badRequestResponse(outputBuffer, contentTypeError);
+		}
+
+		JsonObject jsonObject;
+		try (JsonReader reader = Json.createReader(new StringReader(new String(content, UTF_8)))) {
+			jsonObject = reader.readObject();
+			validateRequest(jsonObject);
+		} catch (Exception e) {
+			String errorMsg = "Incorrect input content/data " + e.getMessage();
+			LoggingService.logError(MODULE_NAME, errorMsg, new AgentUserException(errorMsg, e));
+			return ApiHandlerHelpers.badRequestResponse(outputBuffer, errorMsg);
+		}
+
+		String receiverId = jsonObject.getString("id");
+		String publisherId = jsonObject.getString("publisher");
+		String messageId = jsonObject.getString("messageid");
+
+		MessageBusUtil bus = new MessageBusUtil();
+		Message message = bus.getMessage(publisherId, receiverId, messageId);
+		if (message == null) {
+			String errorMsg = "Message " + messageId + " not found";
+			LoggingService.logInfo(MODULE_NAME, errorMsg);
+			return ApiHandlerHelpers.notFoundResponse(outputBuffer, errorMsg);
+		}
+
+		try {
+			new MessageJsonWriter(outputBuffer).beginObject()
+					.write("status", "okay")
+					.write("message", message)
+					.endObject();
+		} catch (Exception e) {
+			String errorMsg = "Unable to write message " + e.getMessage();
+			LoggingService.logError(MODULE_NAME, errorMsg, new AgentSystemException(errorMsg, e));
+			outputBuffer.clear();
+			return ApiHandlerHelpers.internalServerErrorResponse(outputBuffer, errorMsg);
+		}
+
+		LoggingService.logInfo(MODULE_NAME, "Finished Handler method to get archived message by its ID");
+		return ApiHandlerHelpers.successResponse(outputBuffer);
+	}
+
+	/**
+	 * Validate the request
+	 *
+	 * @param jsonObject
+	 */
+	private void validateRequest(JsonObject jsonObject) throws Exception {
+		for (String field : new String[] { "id", "publisher", "messageid" }) {
+			if (!jsonObject.containsKey(field))
+				throw new AgentUserException("Error: Missing input field " + field);
+			if (jsonObject.get(field).getValueType() != JsonValue.ValueType.STRING
+					|| jsonObject.getString(field).trim().equals(""))
+				throw new AgentUserException("Error: Invalid value of " + field);
+		}
+	}
+
+	/**
+	 * Overriden method of the Callable interface which call the handler method
+	 *
+	 * @return Object
+	 */
+	@Override
+	public FullHttpResponse call() {
+		return handleGetMessageRequest();
+	}
+}
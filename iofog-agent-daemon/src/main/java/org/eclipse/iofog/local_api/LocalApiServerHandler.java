@@ -22,6 +22,7 @@ import io.netty.handler.codec.http.websocketx.WebSocketFrame;
 import io.netty.util.CharsetUtil;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.ReferenceCounted;
+import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.concurrent.EventExecutorGroup;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
@@ -53,10 +54,13 @@ public class LocalApiServerHandler extends SimpleChannelInboundHandler<Object> {
     private byte[] content;
 
     private final EventExecutorGroup executor;
+    // publishes messages received by websocket of this channel one by one, in order
+    private final EventExecutor publishExecutor;
 
     public LocalApiServerHandler(EventExecutorGroup executor) {
         super(false);
         this.executor = executor;
+        this.publishExecutor = executor.next();
     }
 
     /**
@@ -96,7 +100,7 @@ public class LocalApiServerHandler extends SimpleChannelInboundHandler<Object> {
                         ControlWebsocketHandler controlSocket = new ControlWebsocketHandler();
                         controlSocket.handleWebSocketFrame(ctx, (WebSocketFrame) msg);
                     } else if (mapName != null && mapName.equals("message")) {
-                        MessageWebsocketHandler messageSocket = new MessageWebsocketHandler();
+                        MessageWebsocketHandler messageSocket = new MessageWebsocketHandler(publishExecutor);
                         messageSocket.handleWebSocketFrame(ctx, (WebSocketFrame) msg);
                     } else {
                         LoggingService.logError(MODULE_NAME, "Cannot initiate real-time service: Context not found", 
@@ -172,9 +176,25 @@ public class LocalApiServerHandler extends SimpleChannelInboundHandler<Object> {
             return;
         }
 
+        if (request.uri().equals("/v2/messages/new/batch")) {
+        	LoggingService.logInfo(MODULE_NAME, "Start Processing messages/new/batch request");
+            Callable<FullHttpResponse> callable = new MessageBatchSenderHandler(request, ctx.alloc().buffer(), content);
+            runTask(callable, ctx, request);
+            LoggingService.logInfo(MODULE_NAME, "Finished Processing messages/new/batch request");
+            return;
+        }
+
+        if (request.uri().equals("/v2/messages/get")) {
+        	LoggingService.logInfo(MODULE_NAME, "Start Processing messages/get request");
+            Callable<FullHttpResponse> callable = new GetMessageHandler(request, ctx.alloc().buffer(), content);
+            runTask(callable, ctx, request);
+            LoggingService.logInfo(MODULE_NAME, "Finished Processing messages/get request");
+            return;
+        }
+
         if (request.uri().equals("/v2/messages/query")) {
         	LoggingService.logInfo(MODULE_NAME, "Start Processing messages/query request");
-            Callable<FullHttpResponse> callable = new QueryMessageReceiverHandler(request, ctx.alloc().buffer(), content);
+            Callable<HttpResponse> callable = new QueryMessageReceiverHandler(request, ctx.alloc().buffer(), content);
             runTask(callable, ctx, request);
             LoggingService.logInfo(MODULE_NAME, "Finished Processing messages/query request");
             return;
@@ -321,11 +341,15 @@ public class LocalApiServerHandler extends SimpleChannelInboundHandler<Object> {
      * @param ctx
      * @param req
      */
-    private void runTask(Callable<FullHttpResponse> callable, ChannelHandlerContext ctx, HttpRequest req) {
-        final Future<FullHttpResponse> future = executor.submit(callable);
+    private void runTask(Callable<? extends HttpResponse> callable, ChannelHandlerContext ctx, HttpRequest req) {
+        final Future<? extends HttpResponse> future = executor.submit(callable);
         future.addListener((GenericFutureListener<Future<Object>>) futureListener -> {
             if (futureListener.isSuccess()) {
-                sendHttpResponse(ctx, req, (FullHttpResponse) futureListener.get());
+                Object response = futureListener.get();
+                if (response instanceof ChunkedHttpResponse)
+                    sendChunkedResponse(ctx, req, (ChunkedHttpResponse) response);
+                else
+                    sendHttpResponse(ctx, req, (FullHttpResponse) response);
             } else {
                 ctx.fireExceptionCaught(futureListener.cause());
                 ctx.close();
@@ -356,6 +380,26 @@ public class LocalApiServerHandler extends SimpleChannelInboundHandler<Object> {
         LoggingService.logInfo(MODULE_NAME, "Finished providing response as per the request");
     }
 
+    /**
+     * Provide the response which content is streamed in chunks
+     * Headers are already sent when content fails, so the connection is closed instead
+     *
+     * @param ctx
+     * @param req
+     * @param res
+     */
+    private static void sendChunkedResponse(ChannelHandlerContext ctx, HttpRequest req, ChunkedHttpResponse res) {
+    	LoggingService.logInfo(MODULE_NAME, "Start providing chunked response as per the request");
+        ctx.channel().write(res);
+        ChannelFuture f = ctx.channel().writeAndFlush(new HttpChunkedInput(res.content()));
+        f.addListener(future -> {
+            if (!future.isSuccess())
+                LoggingService.logError(MODULE_NAME, "Failed to send chunked response", future.cause());
+        });
+        f.addListener(HttpUtil.isKeepAlive(req) ? ChannelFutureListener.CLOSE_ON_FAILURE : ChannelFutureListener.CLOSE);
+        LoggingService.logInfo(MODULE_NAME, "Finished providing chunked response as per the request");
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause)
             throws Exception {
@@ -20,6 +20,7 @@ import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpServerCodec;
 import io.netty.handler.ssl.SslContext;
+import io.netty.handler.stream.ChunkedWriteHandler;
 import io.netty.util.concurrent.DefaultEventExecutorGroup;
 import io.netty.util.concurrent.EventExecutorGroup;
 
@@ -32,11 +33,14 @@ import io.netty.util.concurrent.EventExecutorGroup;
 public class LocalApiServerPipelineFactory extends ChannelInitializer<SocketChannel>{
 	private final SslContext sslCtx;
 	private final EventExecutorGroup executor;
+	private final EventExecutorGroup chunkedWriteExecutor;
 	private static final String MODULE_NAME = "Local API : LocalApi ServerPipelineFactory";
 	
 	public LocalApiServerPipelineFactory(SslContext sslCtx) {
 		this.sslCtx = sslCtx;
 		this.executor = new DefaultEventExecutorGroup(10);
+		// chunked responses read messages from archive, which must not hold up the event loop
+		this.chunkedWriteExecutor = new DefaultEventExecutorGroup(4);
 	}
 	
 	/**
@@ -52,6 +56,7 @@ public class LocalApiServerPipelineFactory extends ChannelInitializer<SocketChan
 		}
 		pipeline.addLast(new HttpServerCodec());
 		pipeline.addLast(new HttpObjectAggregator(Integer.MAX_VALUE));
+		pipeline.addLast(chunkedWriteExecutor, new ChunkedWriteHandler());
 		pipeline.addLast(new LocalApiServerHandler(executor));	
 		LoggingService.logInfo(MODULE_NAME, "Finished Initialize channel for communication and assign handler");
 	}
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Edgeworx, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ * Saeid Baghbidi
+ * Kilton Hopkins
+ *  Ashita Nagar
+ *******************************************************************************/
+package org.eclipse.iofog.local_api;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpRequest;
+import org.eclipse.iofog.exception.AgentUserException;
+import org.eclipse.iofog.message_bus.Message;
+import org.eclipse.iofog.message_bus.MessageBusUtil;
+import org.eclipse.iofog.utils.logging.LoggingService;
+
+import javax.json.*;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static io.netty.handler.codec.http.HttpMethod.POST;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Handler to publish a batch of messages from the container to message bus
+ *
+ * @author saeid
+ */
+public class MessageBatchSenderHandler implements Callable<FullHttpResponse> {
+	private static final String MODULE_NAME = "Local API : MessageBatchSenderHandler";
+
+	private final HttpRequest req;
+	private final ByteBuf outputBuffer;
+	private final byte[] content;
+
+	public MessageBatchSenderHandler(HttpRequest req, ByteBuf outputBuffer, byte[] content) {
+		this.req = req;
+		this.outputBuffer = outputBuffer;
+		this.content = content;
+	}
+
+	/**
+	 * Handler method to publish a batch of messages from the container to message bus
+	 * Messages are validated all together, so either whole batch is published or none of it
+	 *
+	 * @return Object
+	 */
+	private FullHttpResponse handleMessageBatchSenderRequest() {
+		LoggingService.logInfo(MODULE_NAME, "Start Handler method to publish batch of messages from the container to message bus");
+		if (!ApiHandlerHelpers.validateMethod(this.req, POST)) {
+			LoggingService.logError(MODULE_NAME, "Request method not allowed", new AgentUserException("Request method not allowed"));
+			return ApiHandlerHelpers.methodNotAllowedResponse();
+		}
+
+		final String contentTypeError = ApiHandlerHelpers.validateContentType(this.req, "application/json");
+		if (contentTypeError != null) {
+			LoggingService.logError(MODULE_NAME, contentTypeError, new AgentUserException(contentTypeError));
+			return ApiHandlerHelpers.badRequestResponse(outputBuffer, contentTypeError);
+		}
+
+		List<Message> messages = new ArrayList<>();
+		try (JsonReader reader = Json.createReader(new StringReader(new String(content, UTF_8)))) {
+			JsonArray jsonArray = reader.readArray();
+			for (int i = 0; i < jsonArray.size(); i++) {
+				JsonObject jsonObject = jsonArray.getJsonObject(i);
+				try {
+					MessageSenderHandler.validateMessage(jsonObject);
+					messages.add(new Message(jsonObject));
+				} catch (Exception e) {
+					throw new AgentUserException("message " + i + " : " + e.getMessage(), e);
+				}
+			}
+		} catch (Exception e) {
+			String errorMsg = "Validation Error, " + e.getMessage();
+			LoggingService.logError(MODULE_NAME, errorMsg, e);
+			return ApiHandlerHelpers.badRequestResponse(outputBuffer, errorMsg);
+		}
+
+		MessageBusUtil bus = new MessageBusUtil();
+		try {
+			bus.publishMessages(messages);
+		} catch (AgentUserException e) {
+			String errorMsg = "Publish Error, " + e.getMessage();
+			LoggingService.logError(MODULE_NAME, errorMsg, e);
+			return ApiHandlerHelpers.serviceUnavailableResponse(outputBuffer, errorMsg);
+		}
+
+		JsonBuilderFactory factory = Json.createBuilderFactory(null);
+		JsonArrayBuilder ids = factory.createArrayBuilder();
+		messages.forEach(message -> ids.add(message.getId()));
+		JsonObjectBuilder builder = factory.createObjectBuilder();
+		builder.add("status", "okay");
+		builder.add("count", messages.size());
+		builder.add("timestamp", messages.isEmpty() ? System.currentTimeMillis() : messages.get(0).getTimestamp());
+		builder.add("ids", ids);
+
+		String sendMessageResult = builder.build().toString();
+		LoggingService.logInfo(MODULE_NAME, "Finished Handler method to publish batch of messages from the container to message bus");
+		return ApiHandlerHelpers.successResponse(outputBuffer, sendMessageResult);
+	}
+
+	/**
+	 * Overriden method of the Callable interface which call the handler method
+	 *
+	 * @return Object
+	 */
+	@Override
+	public FullHttpResponse call() {
+		return handleMessageBatchSenderRequest();
+	}
+}
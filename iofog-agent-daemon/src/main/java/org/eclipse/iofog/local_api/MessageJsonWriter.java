@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Edgeworx, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ * Saeid Baghbidi
+ * Kilton Hopkins
+ *  Ashita Nagar
+ *******************************************************************************/
+package org.eclipse.iofog.local_api;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.ByteBufUtil;
+import org.eclipse.iofog.message_bus.Message;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Base64;
+
+/**
+ * Streaming serializer of message responses.
+ * Writes JSON incrementally into the response buffer. Payloads are base64 encoded
+ * straight into the buffer, without building JsonObject or intermediate strings.
+ * Output is the same as of {@link Message#toJson()}.
+ *
+ * @author saeid
+ */
+class MessageJsonWriter {
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private ByteBuf out;
+	private boolean needComma;
+
+	MessageJsonWriter(ByteBuf out) {
+		this.out = out;
+	}
+
+	/**
+	 * continues writing into another buffer, so that a document can be written in chunks
+	 *
+	 * @param out - destination buffer
+	 */
+	MessageJsonWriter output(ByteBuf out) {
+		this.out = out;
+		return this;
+	}
+
+	MessageJsonWriter beginObject() {
+		separator();
+		out.writeByte('{');
+		needComma = false;
+		return this;
+	}
+
+	MessageJsonWriter beginObject(String name) {
+		name(name);
+		out.writeByte('{');
+		needComma = false;
+		return this;
+	}
+
+	MessageJsonWriter endObject() {
+		out.writeByte('}');
+		needComma = true;
+		return this;
+	}
+
+	MessageJsonWriter beginArray(String name) {
+		name(name);
+		out.writeByte('[');
+		needComma = false;
+		return this;
+	}
+
+	MessageJsonWriter endArray() {
+		out.writeByte(']');
+		needComma = true;
+		return this;
+	}
+
+	MessageJsonWriter write(String name, String value) {
+		name(name);
+		string(value == null ? "" : value);
+		needComma = true;
+		return this;
+	}
+
+	MessageJsonWriter write(String name, long value) {
+		name(name);
+		ByteBufUtil.writeAscii(out, Long.toString(value));
+		needComma = true;
+		return this;
+	}
+
+	MessageJsonWriter write(String name, byte[] value) throws IOException {
+		name(name);
+		out.writeByte('"');
+		if (value != null) {
+			try (OutputStream base64 = Base64.getEncoder().wrap(new ByteBufOutputStream(out))) {
+				base64.write(value);
+			}
+		}
+		out.writeByte('"');
+		needComma = true;
+		return this;
+	}
+
+	/**
+	 * writes {@link Message} as an element of current array
+	 *
+	 * @param message - {@link Message} to be written
+	 * @throws IOException
+	 */
+	MessageJsonWriter write(Message message) throws IOException {
+		beginObject();
+		return fields(message).endObject();
+	}
+
+	/**
+	 * writes {@link Message} as a field of current object
+	 *
+	 * @param name - name of field
+	 * @param message - {@link Message} to be written
+	 * @throws IOException
+	 */
+	MessageJsonWriter write(String name, Message message) throws IOException {
+		beginObject(name);
+		return fields(message).endObject();
+	}
+
+	private MessageJsonWriter fields(Message message) throws IOException {
+		write("id", message.getId());
+		write("tag", message.getTag());
+		write("groupid", message.getMessageGroupId());
+		write("sequencenumber", message.getSequenceNumber());
+		write("sequencetotal", message.getSequenceTotal());
+		write("priority", message.getPriority());
+		write("timestamp", message.getTimestamp());
+		write("publisher", message.getPublisher());
+		write("authid", message.getAuthIdentifier());
+		write("authgroup", message.getAuthGroup());
+		write("version", message.getVersion());
+		write("chainposition", message.getChainPosition());
+		write("hash", message.getHash());
+		write("previoushash", message.getPreviousHash());
+		write("nonce", message.getNonce());
+		write("difficultytarget", message.getDifficultyTarget());
+		write("infotype", message.getInfoType());
+		write("infoformat", message.getInfoFormat());
+		write("contextdata", message.getContextData());
+		return write("contentdata", message.getContentData());
+	}
+
+	private void separator() {
+		if (needComma)
+			out.writeByte(',');
+	}
+
+	private void name(String name) {
+		separator();
+		string(name);
+		out.writeByte(':');
+	}
+
+	private void string(String value) {
+		out.writeByte('"');
+		int start = 0;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c >= 0x20 && c != '"' && c != '\\')
+				continue;
+			if (i > start)
+				ByteBufUtil.writeUtf8(out, value.subSequence(start, i));
+			start = i + 1;
+			out.writeByte('\\');
+			switch (c) {
+				case '"':
+				case '\\':
+					out.writeByte(c);
+					break;
+				case '\b':
+					out.writeByte('b');
+					break;
+				case '\f':
+					out.writeByte('f');
+					break;
+				case '\n':
+					out.writeByte('n');
+					break;
+				case '\r':
+					out.writeByte('r');
+					break;
+				case '\t':
+					out.writeByte('t');
+					break;
+				default:
+					out.writeByte('u');
+					out.writeByte('0');
+					out.writeByte('0');
+					out.writeByte(HEX[c >> 4]);
+					out.writeByte(HEX[c & 0xF]);
+			}
+		}
+		if (value.length() > start)
+			ByteBufUtil.writeUtf8(out, value.subSequence(start, value.length()));
+		out.writeByte('"');
+	}
+}
@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Edgeworx, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ * Saeid Baghbidi
+ * Kilton Hopkins
+ *  Ashita Nagar
+ *******************************************************************************/
+package org.eclipse.iofog.local_api;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.stream.ChunkedInput;
+import org.eclipse.iofog.message_bus.Message;
+import org.eclipse.iofog.message_bus.MessageArchiveIterator;
+
+import java.util.List;
+
+/**
+ * content of message query response, produced in chunks as the channel can take them.
+ * Messages of each publisher are read from its {@link MessageArchiveIterator} in turn.
+ * Count and actual end of time frame are known only at the end, so they follow
+ * the messages array.
+ * If the limit stops the query before all messages are read, a cursor to continue at follows them.
+ * Chunks are read by ChunkedWriteHandler on its own executor, off the event loop, as reading
+ * may map segment files or inflate compressed blocks.
+ *
+ * @author saeid
+ */
+class MessageQueryChunkedInput implements ChunkedInput<ByteBuf> {
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	private final List<String> publishers;
+	private final List<MessageArchiveIterator> iterators;
+	private final long timeframeStart;
+	private final long timeframeEnd;
+	private final int limit;
+	private final MessageJsonWriter writer = new MessageJsonWriter(null);
+	private int current;
+	private long count;
+	private long lastTimestamp;
+	private boolean started;
+	private boolean ended;
+
+	/**
+	 * @param publishers - publishers to be queried
+	 * @param iterators - iterators of publishers, in the same order
+	 * @param timeframeStart - beginning of time frame
+	 * @param timeframeEnd - end of time frame
+	 * @param limit - maximum number of messages, 0 for no limit
+	 */
+	MessageQueryChunkedInput(List<String> publishers, List<MessageArchiveIterator> iterators,
+							 long timeframeStart, long timeframeEnd, int limit) {
+		this.publishers = publishers;
+		this.iterators = iterators;
+		this.timeframeStart = timeframeStart;
+		this.timeframeEnd = timeframeEnd;
+		this.limit = limit;
+	}
+
+	@Override
+	public boolean isEndOfInput() {
+		return ended;
+	}
+
+	@Override
+	public void close() {
+		iterators.forEach(MessageArchiveIterator::close);
+	}
+
+	@Deprecated
+	@Override
+	public ByteBuf readChunk(ChannelHandlerContext ctx) throws Exception {
+		return readChunk(ctx.alloc());
+	}
+
+	/**
+	 * writes messages until chunk reaches its size or there are no more
+	 *
+	 * @param allocator - allocator of chunk
+	 * @return chunk or null if end of input is reached
+	 * @throws Exception
+	 */
+	@Override
+	public ByteBuf readChunk(ByteBufAllocator allocator) throws Exception {
+		if (ended)
+			return null;
+
+		ByteBuf chunk = allocator.buffer(CHUNK_SIZE);
+		try {
+			writer.output(chunk);
+			if (!started) {
+				writer.beginObject()
+						.write("status", "okay")
+						.write("timeframestart", timeframeStart)
+						.beginArray("messages");
+				started = true;
+			}
+			while (chunk.readableBytes() < CHUNK_SIZE) {
+				Message message = nextMessage();
+				if (message == null) {
+					writer.endArray()
+							.write("count", count)
+							.write("timeframeend", count > 0 ? lastTimestamp : timeframeEnd);
+					MessageQueryCursor cursor = nextCursor();
+					if (cursor != null)
+						writer.write("cursor", cursor.encode());
+					writer.endObject();
+					ended = true;
+					close();
+					break;
+				}
+				writer.write(message);
+				count++;
+				lastTimestamp = message.getTimestamp();
+			}
+			return chunk;
+		} catch (Exception e) {
+			chunk.release();
+			throw e;
+		}
+	}
+
+	private Message nextMessage() {
+		if (limit > 0 && count >= limit)
+			return null;
+		while (current < iterators.size()) {
+			MessageArchiveIterator iterator = iterators.get(current);
+			if (iterator.hasNext())
+				return iterator.next();
+			iterator.close();
+			current++;
+		}
+		return null;
+	}
+
+	/**
+	 * @return cursor of the first message not returned, null if all messages are returned
+	 */
+	private MessageQueryCursor nextCursor() {
+		for (; current < iterators.size(); current++) {
+			MessageArchiveIterator iterator = iterators.get(current);
+			if (iterator.hasNext())
+				return new MessageQueryCursor(publishers.get(current), iterator.getPosition());
+		}
+		return null;
+	}
+
+	@Override
+	public long length() {
+		return -1;
+	}
+
+	@Override
+	public long progress() {
+		return count;
+	}
+}
@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Edgeworx, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ * Saeid Baghbidi
+ * Kilton Hopkins
+ *  Ashita Nagar
+ *******************************************************************************/
+package org.eclipse.iofog.local_api;
+
+import org.eclipse.iofog.message_bus.MessageArchivePosition;
+
+import java.util.Base64;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * continuation point of a paged message query, which is opaque for the container.
+ * It tells the publisher and the archive position of the first message not returned yet.
+ *
+ * @author saeid
+ */
+final class MessageQueryCursor {
+	private final String publisher;
+	private final MessageArchivePosition position;
+
+	MessageQueryCursor(String publisher, MessageArchivePosition position) {
+		this.publisher = publisher;
+		this.position = position;
+	}
+
+	String getPublisher() {
+		return publisher;
+	}
+
+	MessageArchivePosition getPosition() {
+		return position;
+	}
+
+	/**
+	 * @return cursor encoded as url safe base64 string
+	 */
+	String encode() {
+		String value = publisher + "/" + position.getSegment() + "/" + position.getOffset();
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(UTF_8));
+	}
+
+	/**
+	 * @param cursor - string returned by {@link #encode()}
+	 * @return decoded cursor
+	 * @throws IllegalArgumentException if cursor is malformed
+	 */
+	static MessageQueryCursor decode(String cursor) {
+		String value = new String(Base64.getUrlDecoder().decode(cursor), UTF_8);
+		int offsetSeparator = value.lastIndexOf('/');
+		int segmentSeparator = offsetSeparator > 0 ? value.lastIndexOf('/', offsetSeparator - 1) : -1;
+		if (segmentSeparator < 1)
+			throw new IllegalArgumentException("malformed cursor");
+		try {
+			long segment = Long.parseLong(value.substring(segmentSeparator + 1, offsetSeparator));
+			int offset = Integer.parseInt(value.substring(offsetSeparator + 1));
+			if (offset < 0)
+				throw new IllegalArgumentException("malformed cursor");
+			return new MessageQueryCursor(value.substring(0, segmentSeparator), new MessageArchivePosition(segment, offset));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("malformed cursor", e);
+		}
+	}
+}
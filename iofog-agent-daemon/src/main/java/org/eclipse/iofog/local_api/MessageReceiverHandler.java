@@ -15,6 +15,7 @@ package org.eclipse.iofog.local_api;
 import io.netty.buffer.ByteBuf;
 import io.netty.handler.codec.http.*;
 
+import org.eclipse.iofog.exception.AgentSystemException;
 import org.eclipse.iofog.exception.AgentUserException;
 import org.eclipse.iofog.message_bus.Message;
 import org.eclipse.iofog.message_bus.MessageBusUtil;
@@ -83,24 +84,28 @@ public class MessageReceiverHandler implements Callable<FullHttpResponse> {
 
 		String receiverId = jsonObject.getString("id");
 
-		JsonBuilderFactory factory = Json.createBuilderFactory(null);
-		JsonObjectBuilder builder = factory.createObjectBuilder();
-		JsonArrayBuilder messagesArray = factory.createArrayBuilder();
-
 		MessageBusUtil bus = new MessageBusUtil();
 		List<Message> messageList = bus.getMessages(receiverId);
 
-		for (Message msg : messageList) {
-			JsonObject msgJson = msg.toJson();
-			messagesArray.add(msgJson);
+		try {
+			MessageJsonWriter writer = new MessageJsonWriter(outputBuffer);
+			writer.beginObject()
+					.write("status", "okay")
+					.write("count", messageList.size())
+					.beginArray("messages");
+			for (Message msg : messageList) {
+				writer.write(msg);
+			}
+			writer.endArray().endObject();
+		} catch (Exception e) {
+			String errorMsg = "Unable to write messages " + e.getMessage();
+			LoggingService.logError(MODULE_NAME, errorMsg, new AgentSystemException(errorMsg, e));
+			outputBuffer.clear();
+			return ApiHandlerHelpers.internalServerErrorResponse(outputBuffer, errorMsg);
 		}
-		builder.add("status", "okay");
-		builder.add("count", messageList.size());
-		builder.add("messages", messagesArray);
 
-		String result = builder.build().toString();
 		LoggingService.logInfo(MODULE_NAME, "Finished Handler method to deliver the messages to the receiver. Get the messages");
-		return ApiHandlerHelpers.successResponse(outputBuffer, result);
+		return ApiHandlerHelpers.successResponse(outputBuffer);
 	}
 
 	/**
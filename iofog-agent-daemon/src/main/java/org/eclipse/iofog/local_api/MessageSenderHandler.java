@@ -87,7 +87,13 @@ public class MessageSenderHandler implements Callable<FullHttpResponse> {
 			LoggingService.logError(MODULE_NAME, errorMsg, e);
 			return ApiHandlerHelpers.badRequestResponse(outputBuffer, errorMsg);
 		}
-		bus.publishMessage(message);
+		try {
+			bus.publishMessage(message);
+		} catch (AgentUserException e) {
+			String errorMsg = "Publish Error, " + e.getMessage();
+			LoggingService.logError(MODULE_NAME, errorMsg, e);
+			return ApiHandlerHelpers.serviceUnavailableResponse(outputBuffer, errorMsg);
+		}
 
 		JsonBuilderFactory factory = Json.createBuilderFactory(null);
 		JsonObjectBuilder builder = factory.createObjectBuilder();
@@ -105,7 +111,7 @@ public class MessageSenderHandler implements Callable<FullHttpResponse> {
 	 * 
 	 * @param message
 	 */
-	private void validateMessage(JsonObject message) throws Exception {
+	static void validateMessage(JsonObject message) throws Exception {
 		
 		LoggingService.logInfo(MODULE_NAME, "Start Handler method to validate the request and the message to publish");
 		if (!message.containsKey("publisher"))
@@ -152,6 +158,13 @@ public class MessageSenderHandler implements Callable<FullHttpResponse> {
 			}
 		}
 
+		if (message.containsKey("ttl")) {
+			String ttl = message.get("ttl").toString();
+			if (!(ttl.matches("[0-9]{1,18}"))) {
+				throw new AgentUserException("Error: Invalid  value for field ttl ");
+			}
+		}
+
 		if (message.containsKey("chainposition")) {
 			String chainPos = message.get("chainposition").toString();
 			if (!(chainPos.matches("[0-9]+"))) {
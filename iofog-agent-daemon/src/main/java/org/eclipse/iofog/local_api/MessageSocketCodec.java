@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Edgeworx, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ * Saeid Baghbidi
+ * Kilton Hopkins
+ *  Ashita Nagar
+ *******************************************************************************/
+package org.eclipse.iofog.local_api;
+
+import io.netty.buffer.ByteBuf;
+import org.eclipse.iofog.message_bus.CompactMessageCodec;
+import org.eclipse.iofog.message_bus.Message;
+import org.eclipse.iofog.message_bus.MessageDictionary;
+
+/**
+ * ioMessage v5 state of a message websocket which has negotiated it.
+ * Keeps dictionaries of messages sent to and received from the container,
+ * both of them live as long as the connection.
+ *
+ * @author saeid
+ */
+class MessageSocketCodec {
+	private final MessageDictionary outgoing = new MessageDictionary();
+	private final MessageDictionary incoming = new MessageDictionary();
+
+	/**
+	 * encodes message to be sent to the container
+	 * caller has to hold the lock of this codec until the frame is written,
+	 * so that dictionary definitions reach the container in order
+	 *
+	 * @param message - {@link Message} to be sent
+	 * @param out - destination buffer
+	 */
+	void write(Message message, ByteBuf out) {
+		CompactMessageCodec.write(message, out, outgoing, true);
+	}
+
+	/**
+	 * decodes message received from the container
+	 *
+	 * @param in - buffer containing encoded message
+	 * @return decoded {@link Message}
+	 */
+	synchronized Message read(ByteBuf in) {
+		return CompactMessageCodec.read(in, incoming);
+	}
+}
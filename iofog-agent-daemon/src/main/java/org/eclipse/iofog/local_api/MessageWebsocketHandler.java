@@ -15,18 +15,26 @@ package org.eclipse.iofog.local_api;
 import static io.netty.handler.codec.http.HttpHeaders.Names.HOST;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import org.eclipse.iofog.exception.AgentSystemException;
 import org.eclipse.iofog.exception.AgentUserException;
+import org.eclipse.iofog.message_bus.CompactMessageCodec;
 import org.eclipse.iofog.message_bus.Message;
 import org.eclipse.iofog.message_bus.MessageBus;
 import org.eclipse.iofog.message_bus.MessageBusUtil;
+import org.eclipse.iofog.message_bus.MessageReader;
+import org.eclipse.iofog.message_bus.MessageWriter;
 import org.eclipse.iofog.status_reporter.StatusReporter;
 import org.eclipse.iofog.utils.BytesUtil;
 import org.eclipse.iofog.utils.logging.LoggingService;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
@@ -36,6 +44,7 @@ import io.netty.handler.codec.http.websocketx.PongWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketServerHandshaker;
 import io.netty.handler.codec.http.websocketx.WebSocketServerHandshakerFactory;
+import io.netty.util.concurrent.EventExecutor;
 
 /**
  * Hadler for the real-time message websocket Open real-time message websocket
@@ -52,9 +61,27 @@ public class MessageWebsocketHandler {
 	private static final Byte OPCODE_ACK = 0xB;
 	private static final Byte OPCODE_MSG = 0xD;
 	private static final Byte OPCODE_RECEIPT = 0xE;
+	private static final Byte OPCODE_FORMAT = 0xF;
+	private static final Byte OPCODE_MSG_BATCH = 0x10;
+	private static final Byte OPCODE_RECEIPT_BATCH = 0x11;
+	private static final Byte OPCODE_PUBLISH_FAILURE = 0x12;
 
 	private static final String WEBSOCKET_PATH = "/v2/message/socket";
 
+	private final EventExecutor publishExecutor;
+
+	public MessageWebsocketHandler() {
+		this(null);
+	}
+
+	/**
+	 * @param publishExecutor - executor of the channel which publishes messages, in order they
+	 *                        are received, null to publish them on the event loop
+	 */
+	public MessageWebsocketHandler(EventExecutor publishExecutor) {
+		this.publishExecutor = publishExecutor;
+	}
+
 	/**
 	 * Handler to open the websocket for the real-time message websocket
 	 * 
@@ -143,35 +170,48 @@ public class MessageWebsocketHandler {
 
 						int totalMsgLength = BytesUtil.bytesToInteger(BytesUtil.copyOfRange(byteArray, 1, 5));
 						try {
-							Message message = new Message(BytesUtil.copyOfRange(byteArray, 5, totalMsgLength + 5));
-
-							MessageBusUtil messageBus = new MessageBusUtil();
-							messageBus.publishMessage(message);
-
-							String messageId = message.getId();
-							Long msgTimestamp = message.getTimestamp();
-							ByteBuf buffer1 = ctx.alloc().buffer();
-
-							buffer1.writeByte(OPCODE_RECEIPT.intValue());
+							Message message = readMessage(ctx, Unpooled.wrappedBuffer(byteArray, 5, totalMsgLength));
+							// optional time-to-live follows the message
+							if (byteArray.length >= 5 + totalMsgLength + Integer.BYTES)
+								message.setTtl(Unpooled.wrappedBuffer(byteArray, 5 + totalMsgLength, Integer.BYTES).readUnsignedInt());
 
-							// send Length
-							int msgIdLength = messageId.length();
-							buffer1.writeByte(msgIdLength);
-							buffer1.writeByte(Long.BYTES);
-
-							// Send opcode, id and timestamp
-							buffer1.writeBytes(messageId.getBytes(UTF_8));
-							buffer1.writeBytes(BytesUtil.longToBytes(msgTimestamp));
-							ctx.channel().write(new BinaryWebSocketFrame(buffer1));
+							publish(ctx, Collections.singletonList(message), false);
 						} catch (Exception e) {
 							LoggingService.logError(MODULE_NAME, "wrong message format, validation failed", new AgentSystemException(e.getMessage(), e));
 						}
 					}
 					return;
 				}
+			} else if (opcode == OPCODE_MSG_BATCH.intValue()) {
+				if (byteArray.length >= 5 && WebsocketUtil.hasContextInMap(ctx, WebSocketMap.messageWebsocketMap)) {
+					try {
+						ByteBuf batch = Unpooled.wrappedBuffer(byteArray, 1, byteArray.length - 1);
+						int count = batch.readInt();
+						List<Message> messages = new ArrayList<>();
+						for (int i = 0; i < count; i++) {
+							int msgLength = batch.readInt();
+							messages.add(readMessage(ctx, batch.readSlice(msgLength)));
+						}
+						// optional time-to-live of all messages follows the batch
+						if (batch.readableBytes() >= Integer.BYTES) {
+							long ttl = batch.readUnsignedInt();
+							messages.forEach(message -> message.setTtl(ttl));
+						}
+
+						publish(ctx, messages, true);
+					} catch (Exception e) {
+						LoggingService.logError(MODULE_NAME, "wrong message batch format, validation failed", new AgentSystemException(e.getMessage(), e));
+					}
+				}
+				return;
 			} else if (opcode == OPCODE_ACK.intValue()) {
 				WebSocketMap.unackMessageSendingMap.remove(ctx);
 				return;
+			} else if (opcode == OPCODE_FORMAT.intValue()) {
+				if (byteArray.length >= 3 && WebsocketUtil.hasContextInMap(ctx, WebSocketMap.messageWebsocketMap)) {
+					negotiateFormat(ctx, (short) (((byteArray[1] & 0xFF) << 8) | (byteArray[2] & 0xFF)));
+				}
+				return;
 			}
 			
 			return;
@@ -183,11 +223,101 @@ public class MessageWebsocketHandler {
 			MessageBus.getInstance()
 			.disableRealTimeReceiving(WebsocketUtil.getIdForWebsocket(ctx, WebSocketMap.messageWebsocketMap));
 			WebsocketUtil.removeWebsocketContextFromMap(ctx, WebSocketMap.messageWebsocketMap);
+			WebSocketMap.messageCodecMap.remove(ctx);
 			StatusReporter.setLocalApiStatus().setOpenConfigSocketsCount(WebSocketMap.messageWebsocketMap.size());
 		}
 		LoggingService.logInfo(MODULE_NAME, "Finished Handler for the real-time message receive and sending real time-time messages");
 	}
 
+	/**
+	 * Publishes messages received from the container and sends receipt back
+	 * Publisher may wait for receivers whose queues are full, so messages are published on
+	 * executor of the channel, and reading of the channel is paused meanwhile, so that
+	 * only this container is slowed down and not the other channels of the event loop
+	 * 
+	 * @param ctx, messages, batch
+	 * @return void
+	 */
+	private void publish(ChannelHandlerContext ctx, List<Message> messages, boolean batch) {
+		if (publishExecutor == null) {
+			publishAndSendReceipt(ctx, messages, batch);
+			return;
+		}
+		ctx.channel().config().setAutoRead(false);
+		publishExecutor.execute(() -> {
+			try {
+				publishAndSendReceipt(ctx, messages, batch);
+			} finally {
+				ctx.channel().config().setAutoRead(true);
+			}
+		});
+	}
+
+	/**
+	 * Publishes messages and sends either receipt or publish failure with its reason
+	 * 
+	 * @param ctx, messages, batch
+	 * @return void
+	 */
+	private void publishAndSendReceipt(ChannelHandlerContext ctx, List<Message> messages, boolean batch) {
+		ByteBuf buffer1 = ctx.alloc().buffer();
+		try {
+			MessageBusUtil messageBus = new MessageBusUtil();
+			messageBus.publishMessages(messages);
+		} catch (AgentUserException e) {
+			LoggingService.logError(MODULE_NAME, "unable to publish message", e);
+			buffer1.writeByte(OPCODE_PUBLISH_FAILURE.intValue());
+			buffer1.writeBytes(String.valueOf(e.getMessage()).getBytes(UTF_8));
+			ctx.channel().writeAndFlush(new BinaryWebSocketFrame(buffer1));
+			return;
+		}
+
+		if (batch) {
+			buffer1.writeByte(OPCODE_RECEIPT_BATCH.intValue());
+			// Send count and timestamp shared by all messages of the batch
+			buffer1.writeInt(messages.size());
+			buffer1.writeLong(messages.isEmpty() ? System.currentTimeMillis() : messages.get(0).getTimestamp());
+			// Send ids in order of the batch
+			for (Message message : messages) {
+				byte[] messageId = message.getId().getBytes(UTF_8);
+				buffer1.writeByte(messageId.length);
+				buffer1.writeBytes(messageId);
+			}
+		} else {
+			Message message = messages.get(0);
+			String messageId = message.getId();
+			Long msgTimestamp = message.getTimestamp();
+
+			buffer1.writeByte(OPCODE_RECEIPT.intValue());
+
+			// send Length
+			int msgIdLength = messageId.length();
+			buffer1.writeByte(msgIdLength);
+			buffer1.writeByte(Long.BYTES);
+
+			// Send opcode, id and timestamp
+			buffer1.writeBytes(messageId.getBytes(UTF_8));
+			buffer1.writeBytes(BytesUtil.longToBytes(msgTimestamp));
+		}
+		ctx.channel().writeAndFlush(new BinaryWebSocketFrame(buffer1));
+	}
+
+	/**
+	 * Decodes message received from the container in either v4 or negotiated v5 format
+	 * 
+	 * @param ctx, messageBytes
+	 * @return Message
+	 */
+	private Message readMessage(ChannelHandlerContext ctx, ByteBuf messageBytes) throws AgentUserException {
+		if (CompactMessageCodec.isCompact(messageBytes)) {
+			MessageSocketCodec codec = WebSocketMap.messageCodecMap.get(ctx);
+			if (codec == null)
+				throw new AgentUserException("ioMessage v5 received before format negotiation");
+			return codec.read(messageBytes);
+		}
+		return new Message(ByteBufUtil.getBytes(messageBytes));
+	}
+
 	/**
 	 * Helper to send real-time messages
 	 * 
@@ -203,25 +333,73 @@ public class MessageWebsocketHandler {
 			ctx = messageSocketMap.get(receiverId);
 			WebSocketMap.unackMessageSendingMap.put(ctx, new MessageSentInfo(message, 1, System.currentTimeMillis()));
 
-			int totalMsgLength;
-			byte[] bytesMsg = message.getBytes();
+			writeMessage(ctx, message);
+		} else {
+			LoggingService.logError(MODULE_NAME, "No active real-time websocket found for " + receiverId, 
+					new AgentSystemException("No active real-time websocket found for " + receiverId, null));
+		}
+		LoggingService.logInfo(MODULE_NAME, "Finished Helper to send real-time messages");
 
-			totalMsgLength = bytesMsg.length;
+	}
+
+	/**
+	 * Writes message frame to the websocket in format negotiated by the container
+	 * 
+	 * @param ctx, message
+	 * @return void
+	 */
+	static void writeMessage(ChannelHandlerContext ctx, Message message) {
+		MessageSocketCodec codec = WebSocketMap.messageCodecMap.get(ctx);
+		if (codec == null) {
+			int totalMsgLength = MessageWriter.getEncodedSize(message);
 
 			ByteBuf buffer1 = ctx.alloc().buffer(totalMsgLength + 5);
 			// Send Opcode
 			buffer1.writeByte(OPCODE_MSG);
 			// Total Length
-			buffer1.writeBytes(BytesUtil.integerToBytes(totalMsgLength));
+			buffer1.writeInt(totalMsgLength);
+			// Message
+			MessageWriter.write(message, buffer1);
+			ctx.channel().writeAndFlush(new BinaryWebSocketFrame(buffer1));
+			return;
+		}
+
+		synchronized (codec) {
+			ByteBuf buffer1 = ctx.alloc().buffer();
+			// Send Opcode
+			buffer1.writeByte(OPCODE_MSG);
+			// Total Length, filled in once the message is written
+			buffer1.writeInt(0);
 			// Message
-			buffer1.writeBytes(bytesMsg);
+			codec.write(message, buffer1);
+			buffer1.setInt(1, buffer1.readableBytes() - 5);
 			ctx.channel().writeAndFlush(new BinaryWebSocketFrame(buffer1));
+		}
+	}
+
+	/**
+	 * Handles format negotiation requested by the container.
+	 * Replies with the version which will be used for messages sent to the container.
+	 * Messages in v4 format are accepted from the container regardless of negotiation.
+	 * 
+	 * @param ctx, version
+	 * @return void
+	 */
+	private void negotiateFormat(ChannelHandlerContext ctx, short version) {
+		short accepted;
+		if (version == CompactMessageCodec.VERSION) {
+			WebSocketMap.messageCodecMap.put(ctx, new MessageSocketCodec());
+			accepted = CompactMessageCodec.VERSION;
 		} else {
-			LoggingService.logError(MODULE_NAME, "No active real-time websocket found for " + receiverId, 
-					new AgentSystemException("No active real-time websocket found for " + receiverId, null));
+			WebSocketMap.messageCodecMap.remove(ctx);
+			accepted = MessageReader.VERSION;
 		}
-		LoggingService.logInfo(MODULE_NAME, "Finished Helper to send real-time messages");
+		LoggingService.logInfo(MODULE_NAME, "Message format negotiated : " + accepted);
 
+		ByteBuf buffer1 = ctx.alloc().buffer(3);
+		buffer1.writeByte(OPCODE_FORMAT.intValue());
+		buffer1.writeShort(accepted);
+		ctx.channel().writeAndFlush(new BinaryWebSocketFrame(buffer1));
 	}
 
 	/**
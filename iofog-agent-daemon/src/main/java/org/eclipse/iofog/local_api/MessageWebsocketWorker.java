@@ -17,13 +17,10 @@ import java.util.Map;
 import org.eclipse.iofog.message_bus.Message;
 import org.eclipse.iofog.message_bus.MessageBus;
 import org.eclipse.iofog.status_reporter.StatusReporter;
-import org.eclipse.iofog.utils.BytesUtil;
 import org.eclipse.iofog.utils.Constants;
 import org.eclipse.iofog.utils.logging.LoggingService;
 
-import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
 
 /**
  * Helper class for the message websocket
@@ -33,7 +30,6 @@ import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
  */
 public class MessageWebsocketWorker implements Runnable{
 	private static final String MODULE_NAME = "Local API";
-	private static final Byte OPCODE_MSG = 0xD;
 //	private static int count = 0;
 	
 	/**
@@ -61,6 +57,7 @@ public class MessageWebsocketWorker implements Runnable{
 					WebSocketMap.unackMessageSendingMap.remove(ctx);
 					MessageBus.getInstance().disableRealTimeReceiving(WebsocketUtil.getIdForWebsocket(ctx, WebSocketMap.messageWebsocketMap));
 					WebsocketUtil.removeWebsocketContextFromMap(ctx, WebSocketMap.messageWebsocketMap);	
+					WebSocketMap.messageCodecMap.remove(ctx);
 					StatusReporter.setLocalApiStatus().setOpenConfigSocketsCount(WebSocketMap.messageWebsocketMap.size());
 					return;
 				}
@@ -81,18 +78,7 @@ public class MessageWebsocketWorker implements Runnable{
 		Message message = messageContextAndCount.getMessage();
 		tryCount = tryCount + 1;
 		WebSocketMap.unackMessageSendingMap.put(ctx, new MessageSentInfo(message, tryCount, System.currentTimeMillis()));
-		ByteBuf buffer1 = ctx.alloc().buffer();
-
-		//Send Opcode
-		buffer1.writeByte(OPCODE_MSG);
-
-		byte[] bytesMsg = message.getBytes();
-		int totalMsgLength = bytesMsg.length;
-		//Total Length
-		buffer1.writeBytes(BytesUtil.integerToBytes(totalMsgLength));
-		//Message
-		buffer1.writeBytes(bytesMsg);
-		ctx.channel().writeAndFlush(new BinaryWebSocketFrame(buffer1));
+		MessageWebsocketHandler.writeMessage(ctx, message);
 		LoggingService.logInfo(MODULE_NAME, "Finished sending real-time messages");
 	}
 }
@@ -17,28 +17,32 @@ import io.netty.handler.codec.http.*;
 
 import org.eclipse.iofog.exception.AgentSystemException;
 import org.eclipse.iofog.exception.AgentUserException;
-import org.eclipse.iofog.message_bus.Message;
+import org.eclipse.iofog.message_bus.MessageArchiveIterator;
+import org.eclipse.iofog.message_bus.MessageArchivePosition;
 import org.eclipse.iofog.message_bus.MessageBusUtil;
+import org.eclipse.iofog.message_bus.MessageFilter;
 import org.eclipse.iofog.utils.logging.LoggingService;
 
 import javax.json.*;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
 
 import static io.netty.handler.codec.http.HttpMethod.POST;
-import static io.netty.handler.codec.http.HttpResponseStatus.OK;
-import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
  * Handler to deliver the messages to the receiver, if found any. Messages are
  * delivered for the particular query from the receiver.
+ * Response is streamed in chunks as messages are read from archive.
+ * A query which is cut by its limit can be continued with the cursor of its response.
+ * Messages can be filtered by tag, info type and info format, which the archive evaluates.
  * 
  * @author ashita
  * @since 2016
  */
-public class QueryMessageReceiverHandler implements Callable<FullHttpResponse> {
+public class QueryMessageReceiverHandler implements Callable<HttpResponse> {
 	private static final String MODULE_NAME = "Local API : QueryMessageReceiverHandler";
 
 	private final HttpRequest req;
@@ -57,7 +61,7 @@ public class QueryMessageReceiverHandler implements Callable<FullHttpResponse> {
 	 *
 	 * @return Object
 	 */
-	private FullHttpResponse handleQueryMessageRequest() {
+	private HttpResponse handleQueryMessageRequest() {
 		LoggingService.logInfo(MODULE_NAME, "Starting handle query message request");
 		if (!ApiHandlerHelpers.validateMethod(this.req, POST)) {
 			LoggingService.logError(MODULE_NAME, "Request method not allowed", 
@@ -88,42 +92,41 @@ public class QueryMessageReceiverHandler implements Callable<FullHttpResponse> {
 		String receiverId = jsonObject.getString("id");
 		long timeframeStart = Long.parseLong(jsonObject.get("timeframestart").toString());
 		long timeframeEnd = Long.parseLong(jsonObject.get("timeframeend").toString());
-		long actualTimeframeEnd = timeframeEnd;
+		int limit = jsonObject.containsKey("limit") ? Integer.parseInt(jsonObject.get("limit").toString()) : 0;
+		MessageQueryCursor cursor = jsonObject.containsKey("cursor") ? MessageQueryCursor.decode(jsonObject.getString("cursor")) : null;
+		MessageFilter filter = null;
+		if (jsonObject.containsKey("tag") || jsonObject.containsKey("infotype") || jsonObject.containsKey("infoformat"))
+			filter = new MessageFilter(jsonObject.getString("tag", null), jsonObject.getString("infotype", null),
+					jsonObject.getString("infoformat", null));
 		
 		JsonArray publishersArray = jsonObject.getJsonArray("publishers");
 
-		JsonBuilderFactory factory = Json.createBuilderFactory(null);
-		JsonObjectBuilder builder = factory.createObjectBuilder();
-		JsonArrayBuilder messagesArray = factory.createArrayBuilder();
-
 		MessageBusUtil bus = new MessageBusUtil();
-		int msgCount = 0;
+		List<String> publishers = new ArrayList<>();
+		List<MessageArchiveIterator> iterators = new ArrayList<>();
 
+		// publishers before the one of cursor are already read
+		boolean reached = cursor == null;
 		for (int i = 0; i < publishersArray.size(); i++) {
 			String publisherId = publishersArray.getString(i);
+			MessageArchivePosition start = null;
+			if (!reached) {
+				if (!cursor.getPublisher().equals(publisherId))
+					continue;
+				reached = true;
+				start = cursor.getPosition();
+			}
 
-			List<Message> messageList = bus.messageQuery(publisherId, receiverId, timeframeStart, timeframeEnd);
-
-			if (messageList != null) {
-				for (Message msg : messageList) {
-					JsonObject msgJson = msg.toJson();
-					messagesArray.add(msgJson);
-					msgCount++;
-				}
-				
-				actualTimeframeEnd = messageList.get(messageList.size()-1).getTimestamp();
+			MessageArchiveIterator iterator = bus.messageIterator(publisherId, receiverId, timeframeStart, timeframeEnd, start, filter);
+			if (iterator != null) {
+				publishers.add(publisherId);
+				iterators.add(iterator);
 			}
 		}
 
-		builder.add("status", "okay");
-		builder.add("count", msgCount);
-		builder.add("timeframestart", timeframeStart);
-		builder.add("timeframeend", actualTimeframeEnd);
-		builder.add("messages", messagesArray);
-
-		String result = builder.build().toString();
+		outputBuffer.release();
 		LoggingService.logInfo(MODULE_NAME, "Finished handle query message request");
-		return ApiHandlerHelpers.successResponse(outputBuffer, result);
+		return new ChunkedHttpResponse(new MessageQueryChunkedInput(publishers, iterators, timeframeStart, timeframeEnd, limit));
 	}
 
 	/**
@@ -168,6 +171,46 @@ public class QueryMessageReceiverHandler implements Callable<FullHttpResponse> {
 			throw err;
 		}
 
+		if (message.containsKey("limit")) {
+			int limit;
+			try {
+				limit = Integer.parseInt(message.get("limit").toString());
+			} catch (Exception e) {
+				limit = 0;
+			}
+			if (limit < 1) {
+				AgentUserException err = new AgentUserException("Error: Invalid value of limit", new Exception());
+				LoggingService.logError(MODULE_NAME, err.getMessage(), err);
+				throw err;
+			}
+		}
+
+		if (message.containsKey("cursor")) {
+			String publisher;
+			try {
+				publisher = MessageQueryCursor.decode(message.getString("cursor")).getPublisher();
+			} catch (Exception e) {
+				publisher = null;
+			}
+			JsonArray publishers = message.getJsonArray("publishers");
+			boolean found = false;
+			for (int i = 0; publisher != null && !found && i < publishers.size(); i++)
+				found = publisher.equals(publishers.getString(i, null));
+			if (!found) {
+				AgentUserException err = new AgentUserException("Error: Invalid value of cursor", new Exception());
+				LoggingService.logError(MODULE_NAME, err.getMessage(), err);
+				throw err;
+			}
+		}
+
+		for (String field : new String[] { "tag", "infotype", "infoformat" }) {
+			if (message.containsKey(field) && message.get(field).getValueType() != JsonValue.ValueType.STRING) {
+				AgentUserException err = new AgentUserException("Error: Invalid value of " + field, new Exception());
+				LoggingService.logError(MODULE_NAME, err.getMessage(), err);
+				throw err;
+			}
+		}
+
 		if ((message.getString("id").trim().equals(""))) {
 			AgentUserException err = new AgentUserException("Error: Missing input field value id", new Exception());
 			LoggingService.logError(MODULE_NAME, err.getMessage(), err);
@@ -184,7 +227,7 @@ public class QueryMessageReceiverHandler implements Callable<FullHttpResponse> {
 	 * @return Object
 	 */
 	@Override
-	public FullHttpResponse call() {
+	public HttpResponse call() {
 		return handleQueryMessageRequest();
 	}
 }
\ No newline at end of file
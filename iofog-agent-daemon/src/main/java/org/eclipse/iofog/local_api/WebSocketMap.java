@@ -32,6 +32,8 @@ public final class WebSocketMap {
 	static final Map<ChannelHandlerContext, MessageSentInfo> unackMessageSendingMap = new ConcurrentHashMap<>();
 	static final Map<ChannelHandlerContext, ControlSignalSentInfo> unackControlSignalsMap = new ConcurrentHashMap<>();
 
+	static final Map<ChannelHandlerContext, MessageSocketCodec> messageCodecMap = new ConcurrentHashMap<>();
+
 
 
 	private WebSocketMap(){
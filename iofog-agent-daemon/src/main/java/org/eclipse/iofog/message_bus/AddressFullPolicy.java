@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Edgeworx, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ * Saeid Baghbidi
+ * Kilton Hopkins
+ *  Ashita Nagar
+ *******************************************************************************/
+package org.eclipse.iofog.message_bus;
+
+/**
+ * policy applied to a receiver microservice whose subscription queue is full
+ * DROP skips the message for that receiver only, BLOCK holds the publisher until
+ * the receiver catches up and PAGE spills messages of the publisher to paging directory
+ * 
+ * @author saeid
+ *
+ */
+public enum AddressFullPolicy {
+	DROP("drop"),
+	BLOCK("block"),
+	PAGE("page");
+
+	private final String name;
+
+	AddressFullPolicy(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @param name - name of policy
+	 * @return {@link AddressFullPolicy}, null if name is unknown
+	 */
+	public static AddressFullPolicy fromName(String name) {
+		for (AddressFullPolicy policy : values()) {
+			if (policy.name.equalsIgnoreCase(name))
+				return policy;
+		}
+		return null;
+	}
+}
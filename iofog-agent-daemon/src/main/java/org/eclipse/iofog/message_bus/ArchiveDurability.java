@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Edgeworx, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ * Saeid Baghbidi
+ * Kilton Hopkins
+ *  Ashita Nagar
+ *******************************************************************************/
+package org.eclipse.iofog.message_bus;
+
+/**
+ * durability mode of {@link MessageArchive}
+ * NONE leaves writes to the operating system, GROUP forces them to storage device
+ * every configured number of milliseconds or messages and MESSAGE forces every write
+ * before the publisher gets its receipt
+ * 
+ * @author saeid
+ *
+ */
+public enum ArchiveDurability {
+	NONE("none"),
+	GROUP("group"),
+	MESSAGE("message");
+
+	private final String name;
+
+	ArchiveDurability(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @param name - name of durability mode
+	 * @return {@link ArchiveDurability}, null if name is unknown
+	 */
+	public static ArchiveDurability fromName(String name) {
+		for (ArchiveDurability durability : values()) {
+			if (durability.name.equalsIgnoreCase(name))
+				return durability;
+		}
+		return null;
+	}
+}
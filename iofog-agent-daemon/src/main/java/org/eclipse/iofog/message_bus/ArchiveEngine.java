@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Edgeworx, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ * Saeid Baghbidi
+ * Kilton Hopkins
+ *  Ashita Nagar
+ *******************************************************************************/
+package org.eclipse.iofog.message_bus;
+
+/**
+ * storage engine of {@link MessageArchive} segments
+ * FILE appends to segment files with positional writes and MAPPED preallocates
+ * segment files to their maximum size and appends through memory mapping
+ * 
+ * @author saeid
+ *
+ */
+public enum ArchiveEngine {
+	FILE("file"),
+	MAPPED("mmap");
+
+	private final String name;
+
+	ArchiveEngine(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @param name - name of storage engine
+	 * @return {@link ArchiveEngine}, null if name is unknown
+	 */
+	public static ArchiveEngine fromName(String name) {
+		for (ArchiveEngine engine : values()) {
+			if (engine.name.equalsIgnoreCase(name))
+				return engine;
+		}
+		return null;
+	}
+}
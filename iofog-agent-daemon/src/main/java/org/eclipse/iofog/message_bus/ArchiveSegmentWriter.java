@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Edgeworx, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ * Saeid Baghbidi
+ * Kilton Hopkins
+ *  Ashita Nagar
+ *******************************************************************************/
+package org.eclipse.iofog.message_bus;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+
+/**
+ * writer of index and data files of the {@link MessageArchive} segment being appended
+ * keeps track of where written content of both files ends, as files may be longer
+ * than their content
+ * 
+ * @author saeid
+ *
+ */
+interface ArchiveSegmentWriter extends AutoCloseable {
+
+	/**
+	 * @return number of index records written to the segment
+	 */
+	int getMessageCount();
+
+	/**
+	 * @return number of bytes written to data file of the segment
+	 */
+	long getDataSize();
+
+	/**
+	 * appends encoded messages and then their index records
+	 * 
+	 * @param data - encoded messages
+	 * @param index - index records of messages
+	 * @throws IOException
+	 */
+	void append(ByteBuf data, ByteBuf index) throws IOException;
+
+	/**
+	 * forces written content of data and index files to storage device
+	 * 
+	 * @throws IOException
+	 */
+	void force() throws IOException;
+
+	@Override
+	void close() throws IOException;
+}
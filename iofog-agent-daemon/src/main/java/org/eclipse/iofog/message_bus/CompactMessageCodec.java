@@ -0,0 +1,350 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Edgeworx, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ * Saeid Baghbidi
+ * Kilton Hopkins
+ *  Ashita Nagar
+ *******************************************************************************/
+package org.eclipse.iofog.message_bus;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+
+import java.util.zip.DataFormatException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * codec of compact ioMessage v5 wire format
+ *
+ * [2 bytes] version (5), so that v4 readers can tell it apart
+ * [1 byte]  flags, 0x01 if content data is compressed, other bits are reserved
+ * fields in the same order as v4, each one encoded as
+ *   numbers - unsigned varint (priority is a single byte)
+ *   strings - varint code followed by UTF-8 bytes, where code is
+ *             0 for null,
+ *             (length &lt;&lt; 2) | 1 for a literal which is appended to dictionary,
+ *             (index &lt;&lt; 2) | 2 for a dictionary reference,
+ *             (length &lt;&lt; 2) | 3 for a literal which is not added to dictionary
+ *   bytes   - varint length followed by data, 0 for null
+ *             compressed content data is a varint of its original length followed by zlib stream
+ *
+ * tag, publisher, auth id, auth group, info type and info format go through
+ * the dictionary, all other strings are always written as literals
+ *
+ * @author saeid
+ *
+ */
+public final class CompactMessageCodec {
+	public static final short VERSION = 5;
+	public static final int FLAG_COMPRESSED = 0x01;
+
+	private static final int NULL = 0;
+	private static final int DEFINITION = 1;
+	private static final int REFERENCE = 2;
+	private static final int LITERAL = 3;
+
+	private CompactMessageCodec() {
+	}
+
+	/**
+	 * writes {@link Message} at writer index of buffer
+	 *
+	 * @param message - {@link Message} to be encoded
+	 * @param out - destination buffer
+	 * @param dictionary - dictionary of repeated strings, null to write all strings as literals
+	 * @param inlineDefinitions - if true, new entries are defined in the message itself, otherwise
+	 *                          they are added to dictionary silently and caller has to store them
+	 */
+	public static void write(Message message, ByteBuf out, MessageDictionary dictionary, boolean inlineDefinitions) {
+		byte[] compressedContent = message.getCompressedContent();
+
+		out.writeShort(VERSION);
+		out.writeByte(compressedContent != null ? FLAG_COMPRESSED : 0);
+		writeString(out, message.getId(), null, false);
+		writeString(out, message.getTag(), dictionary, inlineDefinitions);
+		writeString(out, message.getMessageGroupId(), null, false);
+		writeVarint(out, message.getSequenceNumber() & 0xFFFFFFFFL);
+		writeVarint(out, message.getSequenceTotal() & 0xFFFFFFFFL);
+		out.writeByte(message.getPriority());
+		writeVarint(out, message.getTimestamp());
+		writeString(out, message.getPublisher(), dictionary, inlineDefinitions);
+		writeString(out, message.getAuthIdentifier(), dictionary, inlineDefinitions);
+		writeString(out, message.getAuthGroup(), dictionary, inlineDefinitions);
+		writeVarint(out, message.getChainPosition());
+		writeString(out, message.getHash(), null, false);
+		writeString(out, message.getPreviousHash(), null, false);
+		writeString(out, message.getNonce(), null, false);
+		writeVarint(out, message.getDifficultyTarget() & 0xFFFFFFFFL);
+		writeString(out, message.getInfoType(), dictionary, inlineDefinitions);
+		writeString(out, message.getInfoFormat(), dictionary, inlineDefinitions);
+		writeBytes(out, message.getContextData());
+		if (compressedContent != null) {
+			int size = message.getCompressedContentSize();
+			writeVarint(out, compressedContent.length + varintSize(size));
+			writeVarint(out, size);
+			out.writeBytes(compressedContent);
+		} else {
+			writeBytes(out, message.getContentData());
+		}
+	}
+
+	/**
+	 * encodes {@link Message} without dictionary, compressing content if message is marked so
+	 *
+	 * @param message - {@link Message} to be encoded
+	 * @return encoded bytes
+	 */
+	public static byte[] encode(Message message) {
+		ByteBuf out = Unpooled.buffer(MessageWriter.getEncodedSize(message));
+		write(message, out, null, false);
+		return ByteBufUtil.getBytes(out);
+	}
+
+	/**
+	 * decodes {@link Message} of either v4 or v5 format, which does not refer to a dictionary
+	 * v4 messages are decoded lazily
+	 *
+	 * @param bytes - encoded {@link Message}
+	 * @return decoded {@link Message}
+	 */
+	public static Message decode(byte[] bytes) {
+		if (bytes != null && bytes.length >= Short.BYTES && (short) (((bytes[0] & 0xFF) << 8) | (bytes[1] & 0xFF)) == VERSION)
+			return read(Unpooled.wrappedBuffer(bytes), null);
+		return new Message(bytes);
+	}
+
+	/**
+	 * reads {@link Message} from reader index of buffer and advances reader index
+	 *
+	 * @param in - source buffer
+	 * @param dictionary - dictionary of repeated strings, null if message can not refer to one
+	 * @return decoded {@link Message}
+	 */
+	public static Message read(ByteBuf in, MessageDictionary dictionary) {
+		short version = in.readShort();
+		if (version != VERSION)
+			throw new IllegalArgumentException("unsupported message version " + version);
+		int flags = in.readUnsignedByte();
+		if ((flags & ~FLAG_COMPRESSED) != 0)
+			throw new IllegalArgumentException("unsupported message flags " + flags);
+
+		Message message = new Message();
+		message.setId(readString(in, dictionary));
+		message.setTag(readString(in, dictionary));
+		message.setMessageGroupId(readString(in, dictionary));
+		message.setSequenceNumber((int) readVarint(in));
+		message.setSequenceTotal((int) readVarint(in));
+		message.setPriority(in.readByte());
+		message.setTimestamp(readVarint(in));
+		message.setPublisher(readString(in, dictionary));
+		message.setAuthIdentifier(readString(in, dictionary));
+		message.setAuthGroup(readString(in, dictionary));
+		message.setChainPosition(readVarint(in));
+		message.setHash(readString(in, dictionary));
+		message.setPreviousHash(readString(in, dictionary));
+		message.setNonce(readString(in, dictionary));
+		message.setDifficultyTarget((int) readVarint(in));
+		message.setInfoType(readString(in, dictionary));
+		message.setInfoFormat(readString(in, dictionary));
+		message.setContextData(readBytes(in));
+		if ((flags & FLAG_COMPRESSED) != 0) {
+			readCompressedContent(in, message);
+		} else {
+			message.setContentData(readBytes(in));
+		}
+		return message;
+	}
+
+	/**
+	 * tells if message at reader index of buffer matches filter, without decoding its other fields
+	 * reader index is advanced up to the last field compared
+	 *
+	 * @param in - source buffer
+	 * @param dictionary - dictionary of repeated strings, null if message can not refer to one
+	 * @param filter - {@link MessageFilter} to be evaluated
+	 * @return true if message matches
+	 */
+	static boolean matches(ByteBuf in, MessageDictionary dictionary, MessageFilter filter) {
+		short version = in.readShort();
+		if (version != VERSION)
+			throw new IllegalArgumentException("unsupported message version " + version);
+		in.skipBytes(1);
+		skipString(in, dictionary);
+		if (!MessageFilter.matches(filter.getTag(), readString(in, dictionary)))
+			return false;
+		if (filter.getInfoType() == null && filter.getInfoFormat() == null)
+			return true;
+		skipString(in, dictionary);
+		readVarint(in);
+		readVarint(in);
+		in.skipBytes(1);
+		readVarint(in);
+		skipString(in, dictionary);
+		skipString(in, dictionary);
+		skipString(in, dictionary);
+		readVarint(in);
+		skipString(in, dictionary);
+		skipString(in, dictionary);
+		skipString(in, dictionary);
+		readVarint(in);
+		return MessageFilter.matches(filter.getInfoType(), readString(in, dictionary))
+				&& MessageFilter.matches(filter.getInfoFormat(), readString(in, dictionary));
+	}
+
+	/**
+	 * @param in - buffer containing an encoded message at its reader index
+	 * @return true if message at reader index is in v5 format
+	 */
+	public static boolean isCompact(ByteBuf in) {
+		return in.readableBytes() >= Short.BYTES && in.getShort(in.readerIndex()) == VERSION;
+	}
+
+	static void writeVarint(ByteBuf out, long value) {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	static int varintSize(long value) {
+		int size = 1;
+		while ((value & ~0x7FL) != 0) {
+			value >>>= 7;
+			size++;
+		}
+		return size;
+	}
+
+	static long readVarint(ByteBuf in) {
+		long result = 0;
+		for (int shift = 0; shift < Long.SIZE; shift += 7) {
+			byte b = in.readByte();
+			result |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return result;
+		}
+		throw new IllegalArgumentException("malformed varint");
+	}
+
+	private static void writeString(ByteBuf out, String value, MessageDictionary dictionary, boolean inlineDefinitions) {
+		if (value == null) {
+			writeVarint(out, NULL);
+			return;
+		}
+
+		if (dictionary != null) {
+			int index = dictionary.indexOf(value);
+			if (index >= 0) {
+				writeVarint(out, ((long) index << 2) | REFERENCE);
+				return;
+			}
+			index = dictionary.add(value);
+			if (index >= 0 && !inlineDefinitions) {
+				writeVarint(out, ((long) index << 2) | REFERENCE);
+				return;
+			}
+			if (index >= 0) {
+				writeLiteral(out, value, DEFINITION);
+				return;
+			}
+		}
+		writeLiteral(out, value, LITERAL);
+	}
+
+	private static void writeLiteral(ByteBuf out, String value, int type) {
+		int length = ByteBufUtil.utf8Bytes(value);
+		writeVarint(out, ((long) length << 2) | type);
+		ByteBufUtil.reserveAndWriteUtf8(out, value, length);
+	}
+
+	private static String readString(ByteBuf in, MessageDictionary dictionary) {
+		long code = readVarint(in);
+		int type = (int) (code & 3);
+		int value = (int) (code >>> 2);
+		switch (type) {
+			case REFERENCE:
+				if (dictionary == null)
+					throw new IllegalArgumentException("dictionary reference without dictionary");
+				return dictionary.get(value);
+			case DEFINITION:
+			case LITERAL:
+				String result = in.readCharSequence(value, UTF_8).toString();
+				if (type == DEFINITION) {
+					if (dictionary == null)
+						throw new IllegalArgumentException("dictionary definition without dictionary");
+					dictionary.add(result);
+				}
+				return result;
+			default:
+				if (value != 0)
+					throw new IllegalArgumentException("malformed string field");
+				return null;
+		}
+	}
+
+	private static void skipString(ByteBuf in, MessageDictionary dictionary) {
+		int start = in.readerIndex();
+		long code = readVarint(in);
+		switch ((int) (code & 3)) {
+			case LITERAL:
+				in.skipBytes((int) (code >>> 2));
+				break;
+			case DEFINITION:
+				in.readerIndex(start);
+				readString(in, dictionary);
+				break;
+			default:
+				break;
+		}
+	}
+
+	private static void writeBytes(ByteBuf out, byte[] value) {
+		if (value == null) {
+			writeVarint(out, 0);
+			return;
+		}
+		writeVarint(out, value.length);
+		out.writeBytes(value);
+	}
+
+	private static byte[] readBytes(ByteBuf in) {
+		long length = readVarint(in);
+		if (length == 0)
+			return null;
+		if (length > in.readableBytes())
+			throw new IllegalArgumentException("malformed bytes field");
+		byte[] result = new byte[(int) length];
+		in.readBytes(result);
+		return result;
+	}
+
+	/**
+	 * reads compressed content data and keeps its compressed form in message,
+	 * so that it is not compressed again when message is written in compact format
+	 */
+	private static void readCompressedContent(ByteBuf in, Message message) {
+		long length = readVarint(in);
+		int start = in.readerIndex();
+		long size = readVarint(in);
+		length -= in.readerIndex() - start;
+		if (length < 0 || length > in.readableBytes() || size > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("malformed compressed bytes field");
+		byte[] compressed = new byte[(int) length];
+		in.readBytes(compressed);
+		try {
+			message.setContentData(MessageCompressor.decompress(compressed, (int) size));
+			message.setCompressContent(true);
+			message.setCompressedContent(compressed, (int) size);
+		} catch (DataFormatException e) {
+			throw new IllegalArgumentException(e.getMessage(), e);
+		}
+	}
+}
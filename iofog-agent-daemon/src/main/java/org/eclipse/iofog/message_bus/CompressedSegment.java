@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Edgeworx, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ * Saeid Baghbidi
+ * Kilton Hopkins
+ *  Ashita Nagar
+ *******************************************************************************/
+package org.eclipse.iofog.message_bus;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+
+/**
+ * block compressed data file of a sealed v5 archive segment
+ *
+ * [2 bytes] version (1)
+ * [4 bytes] block size
+ * [8 bytes] size of original data
+ * [4 bytes] number of blocks
+ * [8 bytes] per block and one more, offset of block in file, the last one is the end of file
+ * blocks of original data, each one compressed separately with zlib, or stored as is
+ * if it does not compress, which is told by its size being equal to original size
+ *
+ * data is read by decompressing only the blocks which hold it. The last decompressed
+ * block is kept, so that messages of a block cost a single decompression.
+ *
+ * @author saeid
+ *
+ */
+final class CompressedSegment implements AutoCloseable {
+	static final short VERSION = 1;
+	static final int BLOCK_SIZE = 64 * 1024;
+
+	private static final int HEADER_SIZE = Short.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+	private MappedByteBuffer buffer;
+	private int blockSize;
+	private long dataSize;
+	private int blocks;
+	private int cachedBlock = -1;
+	private byte[] cache;
+
+	/**
+	 * maps compressed data file for reading
+	 *
+	 * @param file - compressed data file
+	 * @throws IOException if file can not be read or is not in this format
+	 */
+	CompressedSegment(File file) throws IOException {
+		buffer = MessageArchive.map(file);
+		if (buffer.limit() >= HEADER_SIZE && buffer.getShort(0) == VERSION) {
+			blockSize = buffer.getInt(Short.BYTES);
+			dataSize = buffer.getLong(Short.BYTES + Integer.BYTES);
+			blocks = buffer.getInt(Short.BYTES + Integer.BYTES + Long.BYTES);
+			if (blockSize > 0 && blocks >= 0 && (long) blocks == (dataSize + blockSize - 1) / blockSize
+					&& HEADER_SIZE + (blocks + 1L) * Long.BYTES <= buffer.limit())
+				return;
+		}
+		close();
+		throw new IOException("invalid compressed data file format");
+	}
+
+	/**
+	 * @return size of original data
+	 */
+	long getDataSize() {
+		return dataSize;
+	}
+
+	/**
+	 * reads original data
+	 *
+	 * @param position - position in original data
+	 * @param length - number of bytes
+	 * @return buffer of data
+	 * @throws DataFormatException if a block is corrupted
+	 */
+	ByteBuf read(long position, int length) throws DataFormatException {
+		if (length == 0)
+			return Unpooled.EMPTY_BUFFER;
+		int first = (int) (position / blockSize);
+		int last = (int) ((position + length - 1) / blockSize);
+		if (first == last)
+			return Unpooled.wrappedBuffer(getBlock(first), (int) (position - (long) first * blockSize), length);
+
+		byte[] result = new byte[length];
+		int copied = 0;
+		for (int i = first; i <= last; i++) {
+			byte[] block = getBlock(i);
+			int offset = i == first ? (int) (position - (long) first * blockSize) : 0;
+			int count = Math.min(block.length - offset, length - copied);
+			System.arraycopy(block, offset, result, copied, count);
+			copied += count;
+		}
+		return Unpooled.wrappedBuffer(result);
+	}
+
+	private byte[] getBlock(int index) throws DataFormatException {
+		if (index == cachedBlock)
+			return cache;
+		if (index < 0 || index >= blocks)
+			throw new DataFormatException("block " + index + " is out of compressed data");
+		long start = buffer.getLong(HEADER_SIZE + index * Long.BYTES);
+		long end = buffer.getLong(HEADER_SIZE + (index + 1) * Long.BYTES);
+		int size = (int) Math.min(blockSize, dataSize - (long) index * blockSize);
+		if (start < HEADER_SIZE || end < start || end > buffer.limit() || end - start > size)
+			throw new DataFormatException("invalid offset of compressed block " + index);
+
+		byte[] block = new byte[(int) (end - start)];
+		ByteBuffer source = buffer.duplicate();
+		source.position((int) start);
+		source.get(block);
+		if (block.length < size)
+			block = MessageCompressor.decompress(block, size);
+		cachedBlock = index;
+		cache = block;
+		return block;
+	}
+
+	/**
+	 * releases mapping of file
+	 */
+	@Override
+	public void close() {
+		MessageArchive.unmap(buffer);
+		buffer = null;
+		cache = null;
+		cachedBlock = -1;
+	}
+
+	/**
+	 * compresses a data file
+	 * compressed file is written under a temporary name and renamed once it is complete
+	 * and forced to storage device, so that an existing target is always complete
+	 *
+	 * @param source - data file to be compressed
+	 * @param target - compressed data file
+	 * @throws IOException
+	 */
+	static void write(File source, File target) throws IOException {
+		File temporary = new File(target.getPath() + ".tmp");
+		MappedByteBuffer data = MessageArchive.map(source);
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+		try (FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			long dataSize = data.limit();
+			int blocks = (int) ((dataSize + BLOCK_SIZE - 1) / BLOCK_SIZE);
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + (blocks + 1) * Long.BYTES);
+			header.putShort(VERSION).putInt(BLOCK_SIZE).putLong(dataSize).putInt(blocks);
+
+			byte[] input = new byte[BLOCK_SIZE];
+			byte[] output = new byte[BLOCK_SIZE];
+			long offset = header.capacity();
+			for (int i = 0; i < blocks; i++) {
+				int size = (int) Math.min(BLOCK_SIZE, dataSize - (long) i * BLOCK_SIZE);
+				data.get(input, 0, size);
+				deflater.reset();
+				deflater.setInput(input, 0, size);
+				deflater.finish();
+				int compressedSize = 0;
+				while (!deflater.finished() && compressedSize < size)
+					compressedSize += deflater.deflate(output, compressedSize, size - compressedSize);
+
+				ByteBuffer block = deflater.finished() && compressedSize < size
+						? ByteBuffer.wrap(output, 0, compressedSize) : ByteBuffer.wrap(input, 0, size);
+				header.putLong(offset);
+				offset = write(channel, offset, block);
+			}
+			header.putLong(offset);
+			header.flip();
+			write(channel, 0, header);
+			channel.force(false);
+		} finally {
+			deflater.end();
+			MessageArchive.unmap(data);
+		}
+		Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static long write(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining())
+			position += channel.write(buffer, position);
+		return position;
+	}
+}
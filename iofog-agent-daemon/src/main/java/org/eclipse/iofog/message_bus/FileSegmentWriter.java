@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Edgeworx, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ * Saeid Baghbidi
+ * Kilton Hopkins
+ *  Ashita Nagar
+ *******************************************************************************/
+package org.eclipse.iofog.message_bus;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+import static org.eclipse.iofog.message_bus.MessageArchive.INDEX_RECORD_SIZE;
+
+/**
+ * {@link ArchiveSegmentWriter} of {@link ArchiveEngine#FILE} engine
+ * appends to segment files with positional writes
+ * 
+ * @author saeid
+ *
+ */
+final class FileSegmentWriter implements ArchiveSegmentWriter {
+	private final RandomAccessFile indexFile;
+	private final RandomAccessFile dataFile;
+	private int messageCount;
+	private long dataSize;
+
+	/**
+	 * opens segment files, anything after written content (preallocated space
+	 * of a mapped segment or a torn write) is cut off
+	 * 
+	 * @param index - index file
+	 * @param data - data file
+	 * @param messageCount - number of index records already written
+	 * @param dataSize - number of data bytes already written
+	 * @throws IOException
+	 */
+	FileSegmentWriter(File index, File data, int messageCount, long dataSize) throws IOException {
+		this.messageCount = messageCount;
+		this.dataSize = dataSize;
+		indexFile = new RandomAccessFile(index, "rw");
+		try {
+			dataFile = new RandomAccessFile(data, "rw");
+			indexFile.setLength((long) messageCount * INDEX_RECORD_SIZE);
+			dataFile.setLength(dataSize);
+		} catch (IOException e) {
+			indexFile.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public int getMessageCount() {
+		return messageCount;
+	}
+
+	@Override
+	public long getDataSize() {
+		return dataSize;
+	}
+
+	@Override
+	public void append(ByteBuf data, ByteBuf index) throws IOException {
+		int records = index.readableBytes() / INDEX_RECORD_SIZE;
+		dataSize = write(dataFile, dataSize, data);
+		write(indexFile, (long) messageCount * INDEX_RECORD_SIZE, index);
+		messageCount += records;
+	}
+
+	private static long write(RandomAccessFile file, long position, ByteBuf buffer) throws IOException {
+		FileChannel channel = file.getChannel();
+		while (buffer.isReadable())
+			position += buffer.readBytes(channel, position, buffer.readableBytes());
+		return position;
+	}
+
+	@Override
+	public void force() throws IOException {
+		dataFile.getChannel().force(false);
+		indexFile.getChannel().force(false);
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			indexFile.close();
+		} finally {
+			dataFile.close();
+		}
+	}
+}
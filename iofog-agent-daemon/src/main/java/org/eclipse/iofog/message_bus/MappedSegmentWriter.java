@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Edgeworx, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ * Saeid Baghbidi
+ * Kilton Hopkins
+ *  Ashita Nagar
+ *******************************************************************************/
+package org.eclipse.iofog.message_bus;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static org.eclipse.iofog.message_bus.MessageArchive.INDEX_RECORD_SIZE;
+
+/**
+ * {@link ArchiveSegmentWriter} of {@link ArchiveEngine#MAPPED} engine
+ * segment files are preallocated to their maximum size and mapped to memory, so that
+ * appending is a memory copy. Unwritten index records are zero, which readers take as the end
+ * of segment. Files are cut to their written content when segment is closed.
+ * 
+ * @author saeid
+ *
+ */
+final class MappedSegmentWriter implements ArchiveSegmentWriter {
+	private final RandomAccessFile indexFile;
+	private final RandomAccessFile dataFile;
+	private MappedByteBuffer indexBuffer;
+	private MappedByteBuffer dataBuffer;
+	private int messageCount;
+	private long dataSize;
+
+	/**
+	 * opens and maps segment files
+	 * 
+	 * @param index - index file
+	 * @param data - data file
+	 * @param messageCount - number of index records already written
+	 * @param dataSize - number of data bytes already written
+	 * @param maximumMessages - number of index records to preallocate
+	 * @param maximumDataSize - number of data bytes to preallocate
+	 * @throws IOException
+	 */
+	MappedSegmentWriter(File index, File data, int messageCount, long dataSize,
+						int maximumMessages, long maximumDataSize) throws IOException {
+		this.messageCount = messageCount;
+		this.dataSize = dataSize;
+		indexFile = new RandomAccessFile(index, "rw");
+		try {
+			dataFile = new RandomAccessFile(data, "rw");
+			try {
+				indexBuffer = map(indexFile, (long) Math.max(messageCount, maximumMessages) * INDEX_RECORD_SIZE);
+				dataBuffer = map(dataFile, Math.max(dataSize, maximumDataSize));
+			} catch (IOException e) {
+				MessageArchive.unmap(indexBuffer);
+				dataFile.close();
+				throw e;
+			}
+		} catch (IOException e) {
+			indexFile.close();
+			throw e;
+		}
+	}
+
+	private static MappedByteBuffer map(RandomAccessFile file, long size) throws IOException {
+		if (size > Integer.MAX_VALUE)
+			throw new IOException("segment file can not be larger than " + Integer.MAX_VALUE + " bytes");
+		if (file.length() < size)
+			file.setLength(size);
+		return file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+	}
+
+	/**
+	 * maps file again with at least required size, in case a single message
+	 * does not fit in preallocated space
+	 */
+	private static MappedByteBuffer ensureCapacity(RandomAccessFile file, MappedByteBuffer buffer, long required) throws IOException {
+		if (required <= buffer.capacity())
+			return buffer;
+		MappedByteBuffer result = map(file, Math.min(Math.max(required, 2L * buffer.capacity()), Integer.MAX_VALUE));
+		MessageArchive.unmap(buffer);
+		return result;
+	}
+
+	@Override
+	public int getMessageCount() {
+		return messageCount;
+	}
+
+	@Override
+	public long getDataSize() {
+		return dataSize;
+	}
+
+	@Override
+	public void append(ByteBuf data, ByteBuf index) throws IOException {
+		int records = index.readableBytes() / INDEX_RECORD_SIZE;
+		long indexSize = (long) messageCount * INDEX_RECORD_SIZE;
+		dataBuffer = ensureCapacity(dataFile, dataBuffer, dataSize + data.readableBytes());
+		indexBuffer = ensureCapacity(indexFile, indexBuffer, indexSize + index.readableBytes());
+		dataSize = write(dataBuffer, (int) dataSize, data);
+		write(indexBuffer, (int) indexSize, index);
+		messageCount += records;
+	}
+
+	private static long write(MappedByteBuffer buffer, int position, ByteBuf source) {
+		ByteBuffer target = buffer.duplicate();
+		target.position(position);
+		target.limit(position + source.readableBytes());
+		source.readBytes(target);
+		return target.position();
+	}
+
+	@Override
+	public void force() {
+		dataBuffer.force();
+		indexBuffer.force();
+	}
+
+	/**
+	 * unmaps segment files and cuts them to written content
+	 * 
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException {
+		MessageArchive.unmap(indexBuffer);
+		MessageArchive.unmap(dataBuffer);
+		indexBuffer = null;
+		dataBuffer = null;
+		try {
+			indexFile.setLength((long) messageCount * INDEX_RECORD_SIZE);
+			dataFile.setLength(dataSize);
+		} finally {
+			try {
+				indexFile.close();
+			} finally {
+				dataFile.close();
+			}
+		}
+	}
+}
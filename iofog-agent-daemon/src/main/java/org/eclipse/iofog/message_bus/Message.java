@@ -12,15 +12,13 @@
  *******************************************************************************/
 package org.eclipse.iofog.message_bus;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
 import java.util.Base64;
 import javax.json.Json;
 import javax.json.JsonObject;
 
-import org.eclipse.iofog.utils.BytesUtil;
-import org.eclipse.iofog.utils.logging.LoggingService;
-
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.eclipse.iofog.utils.logging.LoggingService.logError;
 import static org.eclipse.iofog.utils.logging.LoggingService.logWarning;
@@ -32,7 +30,7 @@ import static org.eclipse.iofog.utils.logging.LoggingService.logWarning;
  *
  */
 public class Message {
-	private static final short VERSION = 4;
+	private static final short VERSION = MessageReader.VERSION;
 	private static final String MODULE_NAME = "Message";
 
 	private String id;
@@ -56,6 +54,32 @@ public class Message {
 	private byte[] contextData;
 	private byte[] contentData;
 
+	/**
+	 * original encoded bytes and reader over them, kept while message is not modified
+	 * fields are decoded from reader only when a getter is called
+	 */
+	private byte[] rawBytes;
+	private MessageReader reader;
+
+	/**
+	 * hint that content data should be compressed wherever message is encoded in a format
+	 * which supports compression, it is not a field of the message itself
+	 */
+	private boolean compressContent;
+
+	/**
+	 * content data compressed by {@link MessageCompressor} and size of original content,
+	 * compressed once and reused by every writer of compact format
+	 */
+	private byte[] compressedContent;
+	private int compressedContentSize = -1;
+
+	/**
+	 * time-to-live in milliseconds after timestamp, 0 for no expiry
+	 * it applies on message bus only and is not a field of the message itself
+	 */
+	private long ttl;
+
 	public Message() {
 		version = VERSION;
 		id = null;
@@ -100,6 +124,8 @@ public class Message {
 			setPriority((byte) json.getInt("priority"));
 		if (json.containsKey("timestamp"))
 			setTimestamp(json.getJsonNumber("timestamp").longValue());
+		if (json.containsKey("ttl"))
+			setTtl(json.getJsonNumber("ttl").longValue());
 		if (json.containsKey("publisher"))
 			setPublisher(json.getString("publisher"));
 		if (json.containsKey("authid"))
@@ -130,527 +156,333 @@ public class Message {
 		}
 	}
 
+	/**
+	 * creates a lazily decoded view over encoded {@link Message}
+	 * fields are decoded on demand and {@link #getBytes()} returns
+	 * rawBytes as long as no setter has been called
+	 *
+	 * @param rawBytes - encoded {@link Message}
+	 */
 	public Message(byte[] rawBytes) {
 		super();
-
-		version = BytesUtil.bytesToShort(BytesUtil.copyOfRange(rawBytes, 0, 2));
-		if (version != VERSION) {
-			// TODO: incompatible version
-			return;
-		}
-
-		int pos = 33;
-
-		int size = rawBytes[2];
-		if (size > 0) {
-			id = BytesUtil.bytesToString(BytesUtil.copyOfRange(rawBytes, pos, pos + size));
-			pos += size;
-		}
-
-		size = BytesUtil.bytesToShort(BytesUtil.copyOfRange(rawBytes, 3, 5));
-		if (size > 0) {
-			tag = BytesUtil.bytesToString(BytesUtil.copyOfRange(rawBytes, pos, pos + size));
-			pos += size;
-		}
-
-		size = rawBytes[5];
-		if (size > 0) {
-			messageGroupId = BytesUtil.bytesToString(BytesUtil.copyOfRange(rawBytes, pos, pos + size));
-			pos += size;
-		}
-
-		size = rawBytes[6];
-		if (size > 0) {
-			sequenceNumber = BytesUtil.bytesToInteger(BytesUtil.copyOfRange(rawBytes, pos, pos + size));
-			pos += size;
-		}
-
-		size = rawBytes[7];
-		if (size > 0) {
-			sequenceTotal = BytesUtil.bytesToInteger(BytesUtil.copyOfRange(rawBytes, pos, pos + size));
-			pos += size;
-		}
-
-		size = rawBytes[8];
-		if (size > 0) {
-			priority = rawBytes[pos];
-			pos += size;
-		}
-
-		size = rawBytes[9];
-		if (size > 0) {
-			timestamp = BytesUtil.bytesToLong(BytesUtil.copyOfRange(rawBytes, pos, pos + size));
-			pos += size;
-		}
-
-		size = rawBytes[10];
-		if (size > 0) {
-			publisher = BytesUtil.bytesToString(BytesUtil.copyOfRange(rawBytes, pos, pos + size));
-			pos += size;
-		}
-
-		size = BytesUtil.bytesToShort(BytesUtil.copyOfRange(rawBytes, 11, 13));
-		if (size > 0) {
-			authIdentifier = BytesUtil.bytesToString(BytesUtil.copyOfRange(rawBytes, pos, pos + size));
-			pos += size;
-		}
-
-		size = BytesUtil.bytesToShort(BytesUtil.copyOfRange(rawBytes, 13, 15));
-		if (size > 0) {
-			authGroup = BytesUtil.bytesToString(BytesUtil.copyOfRange(rawBytes, pos, pos + size));
-			pos += size;
-		}
-
-		size = rawBytes[15];
-		if (size > 0) {
-			chainPosition = BytesUtil.bytesToLong(BytesUtil.copyOfRange(rawBytes, pos, pos + size));
-			pos += size;
-		}
-
-		size = BytesUtil.bytesToShort(BytesUtil.copyOfRange(rawBytes, 16, 18));
-		if (size > 0) {
-			hash = BytesUtil.bytesToString(BytesUtil.copyOfRange(rawBytes, pos, pos + size));
-			pos += size;
-		}
-
-		size = BytesUtil.bytesToShort(BytesUtil.copyOfRange(rawBytes, 18, 20));
-		if (size > 0) {
-			previousHash = BytesUtil.bytesToString(BytesUtil.copyOfRange(rawBytes, pos, pos + size));
-			pos += size;
-		}
-
-		size = BytesUtil.bytesToShort(BytesUtil.copyOfRange(rawBytes, 20, 22));
-		if (size > 0) {
-			nonce = BytesUtil.bytesToString(BytesUtil.copyOfRange(rawBytes, pos, pos + size));
-			pos += size;
-		}
-
-		size = rawBytes[22];
-		if (size > 0) {
-			difficultyTarget = BytesUtil.bytesToInteger(BytesUtil.copyOfRange(rawBytes, pos, pos + size));
-			pos += size;
-		}
-
-		size = rawBytes[23];
-		if (size > 0) {
-			infoType = BytesUtil.bytesToString(BytesUtil.copyOfRange(rawBytes, pos, pos + size));
-			pos += size;
-		}
-
-		size = rawBytes[24];
-		if (size > 0) {
-			infoFormat = BytesUtil.bytesToString(BytesUtil.copyOfRange(rawBytes, pos, pos + size));
-			pos += size;
-		}
-
-		size = BytesUtil.bytesToInteger(BytesUtil.copyOfRange(rawBytes, 25, 29));
-		if (size > 0) {
-			contextData = BytesUtil.copyOfRange(rawBytes, pos, pos + size);
-			pos += size;
-		}
-
-		size = BytesUtil.bytesToInteger(BytesUtil.copyOfRange(rawBytes, 29, 33));
-		if (size > 0) {
-			contentData = BytesUtil.copyOfRange(rawBytes, pos, pos + size);
-		}
+		wrap(rawBytes);
 	}
 
 	public Message(byte[] header, byte[] data) {
+		this(new MessageReader().wrap(header, data));
+	}
+
+	/**
+	 * decodes fields of {@link Message} from a wrapped buffer
+	 *
+	 * @param reader - {@link MessageReader} wrapping encoded bytes
+	 */
+	Message(MessageReader reader) {
 		super();
 
-		version = BytesUtil.bytesToShort(BytesUtil.copyOfRange(header, 0, 2));
-		if (version != VERSION) {
+		version = reader.getVersion();
+		if (!reader.isValid()) {
 			// TODO: incompatible version
 			return;
 		}
 
-		int pos = 0;
-
-		int size = header[2];
-		if (size > 0) {
-			id = BytesUtil.bytesToString(BytesUtil.copyOfRange(data, pos, pos + size));
-			pos += size;
-		}
-
-		size = BytesUtil.bytesToShort(BytesUtil.copyOfRange(header, 3, 5));
-		if (size > 0) {
-			tag = BytesUtil.bytesToString(BytesUtil.copyOfRange(data, pos, pos + size));
-			pos += size;
-		}
-
-		size = header[5];
-		if (size > 0) {
-			messageGroupId = BytesUtil.bytesToString(BytesUtil.copyOfRange(data, pos, pos + size));
-			pos += size;
-		}
-
-		size = header[6];
-		if (size > 0) {
-			sequenceNumber = BytesUtil.bytesToInteger(BytesUtil.copyOfRange(data, pos, pos + size));
-			pos += size;
-		}
-
-		size = header[7];
-		if (size > 0) {
-			sequenceTotal = BytesUtil.bytesToInteger(BytesUtil.copyOfRange(data, pos, pos + size));
-			pos += size;
-		}
-
-		size = header[8];
-		if (size > 0) {
-			priority = data[pos];
-			pos += size;
-		}
-
-		size = header[9];
-		if (size > 0) {
-			timestamp = BytesUtil.bytesToLong(BytesUtil.copyOfRange(data, pos, pos + size));
-			pos += size;
-		}
-
-		size = header[10];
-		if (size > 0) {
-			publisher = BytesUtil.bytesToString(BytesUtil.copyOfRange(data, pos, pos + size));
-			pos += size;
-		}
-
-		size = BytesUtil.bytesToShort(BytesUtil.copyOfRange(header, 11, 13));
-		if (size > 0) {
-			authIdentifier = BytesUtil.bytesToString(BytesUtil.copyOfRange(data, pos, pos + size));
-			pos += size;
-		}
-
-		size = BytesUtil.bytesToShort(BytesUtil.copyOfRange(header, 13, 15));
-		if (size > 0) {
-			authGroup = BytesUtil.bytesToString(BytesUtil.copyOfRange(data, pos, pos + size));
-			pos += size;
-		}
-
-		size = header[15];
-		if (size > 0) {
-			chainPosition = BytesUtil.bytesToLong(BytesUtil.copyOfRange(data, pos, pos + size));
-			pos += size;
-		}
-
-		size = BytesUtil.bytesToShort(BytesUtil.copyOfRange(header, 16, 18));
-		if (size > 0) {
-			hash = BytesUtil.bytesToString(BytesUtil.copyOfRange(data, pos, pos + size));
-			pos += size;
-		}
-
-		size = BytesUtil.bytesToShort(BytesUtil.copyOfRange(header, 18, 20));
-		if (size > 0) {
-			previousHash = BytesUtil.bytesToString(BytesUtil.copyOfRange(data, pos, pos + size));
-			pos += size;
-		}
-
-		size = BytesUtil.bytesToShort(BytesUtil.copyOfRange(header, 20, 22));
-		if (size > 0) {
-			nonce = BytesUtil.bytesToString(BytesUtil.copyOfRange(data, pos, pos + size));
-			pos += size;
-		}
-
-		size = header[22];
-		if (size > 0) {
-			difficultyTarget = BytesUtil.bytesToInteger(BytesUtil.copyOfRange(data, pos, pos + size));
-			pos += size;
-		}
-
-		size = header[23];
-		if (size > 0) {
-			infoType = BytesUtil.bytesToString(BytesUtil.copyOfRange(data, pos, pos + size));
-			pos += size;
-		}
-
-		size = header[24];
-		if (size > 0) {
-			infoFormat = BytesUtil.bytesToString(BytesUtil.copyOfRange(data, pos, pos + size));
-			pos += size;
-		}
+		decode(reader);
+	}
 
-		size = BytesUtil.bytesToInteger(BytesUtil.copyOfRange(header, 25, 29));
-		if (size > 0) {
-			contextData = BytesUtil.copyOfRange(data, pos, pos + size);
-			pos += size;
-		}
+	private void decode(MessageReader reader) {
+		id = reader.getId();
+		tag = reader.getTag();
+		messageGroupId = reader.getMessageGroupId();
+		sequenceNumber = reader.getSequenceNumber();
+		sequenceTotal = reader.getSequenceTotal();
+		priority = reader.getPriority();
+		timestamp = reader.getTimestamp();
+		publisher = reader.getPublisher();
+		authIdentifier = reader.getAuthIdentifier();
+		authGroup = reader.getAuthGroup();
+		chainPosition = reader.getChainPosition();
+		hash = reader.getHash();
+		previousHash = reader.getPreviousHash();
+		nonce = reader.getNonce();
+		difficultyTarget = reader.getDifficultyTarget();
+		infoType = reader.getInfoType();
+		infoFormat = reader.getInfoFormat();
+		contextData = toBytes(reader.getContextData());
+		contentData = toBytes(reader.getContentData());
+	}
 
-		size = BytesUtil.bytesToInteger(BytesUtil.copyOfRange(header, 29, 33));
-		if (size > 0) {
-			contentData = BytesUtil.copyOfRange(data, pos, pos + size);
-		}
+	private static byte[] toBytes(ByteBuf slice) {
+		return slice == null ? null : ByteBufUtil.getBytes(slice);
 	}
 
 	public String getId() {
+		if (reader != null)
+			return reader.getId();
 		return id;
 	}
 	public void setId(String id) {
+		decode();
 		this.id = id;
 	}
 	public String getTag() {
+		if (reader != null)
+			return reader.getTag();
 		return tag;
 	}
 	public void setTag(String tag) {
+		decode();
 		this.tag = tag;
 	}
 	public String getMessageGroupId() {
+		if (reader != null)
+			return reader.getMessageGroupId();
 		return messageGroupId;
 	}
 	public void setMessageGroupId(String messageGroupId) {
+		decode();
 		this.messageGroupId = messageGroupId;
 	}
 	public int getSequenceNumber() {
+		if (reader != null)
+			return reader.getSequenceNumber();
 		return sequenceNumber;
 	}
 	public void setSequenceNumber(int sequenceNumber) {
+		decode();
 		this.sequenceNumber = sequenceNumber;
 	}
 	public int getSequenceTotal() {
+		if (reader != null)
+			return reader.getSequenceTotal();
 		return sequenceTotal;
 	}
 	public void setSequenceTotal(int sequenceTotal) {
+		decode();
 		this.sequenceTotal = sequenceTotal;
 	}
 	public byte getPriority() {
+		if (reader != null)
+			return reader.getPriority();
 		return priority;
 	}
 	public void setPriority(byte priority) {
+		decode();
 		this.priority = priority;
 	}
 	public long getTimestamp() {
+		if (reader != null)
+			return reader.getTimestamp();
 		return timestamp;
 	}
 	public void setTimestamp(long timestamp) {
+		decode();
 		this.timestamp = timestamp;
 	}
 	public String getPublisher() {
+		if (reader != null)
+			return reader.getPublisher();
 		return publisher;
 	}
 	public void setPublisher(String publisher) {
+		decode();
 		this.publisher = publisher;
 	}
 	public String getAuthIdentifier() {
+		if (reader != null)
+			return reader.getAuthIdentifier();
 		return authIdentifier;
 	}
 	public void setAuthIdentifier(String authIdentifier) {
+		decode();
 		this.authIdentifier = authIdentifier;
 	}
 	public String getAuthGroup() {
+		if (reader != null)
+			return reader.getAuthGroup();
 		return authGroup;
 	}
 	public void setAuthGroup(String authGroup) {
+		decode();
 		this.authGroup = authGroup;
 	}
 	public short getVersion() {
 		return version;
 	}
 	public long getChainPosition() {
+		if (reader != null)
+			return reader.getChainPosition();
 		return chainPosition;
 	}
 	public void setChainPosition(long chainPosition) {
+		decode();
 		this.chainPosition = chainPosition;
 	}
 	public String getHash() {
+		if (reader != null)
+			return reader.getHash();
 		return hash;
 	}
 	public void setHash(String hash) {
+		decode();
 		this.hash = hash;
 	}
 	public String getPreviousHash() {
+		if (reader != null)
+			return reader.getPreviousHash();
 		return previousHash;
 	}
 	public void setPreviousHash(String previousHash) {
+		decode();
 		this.previousHash = previousHash;
 	}
 	public String getNonce() {
+		if (reader != null)
+			return reader.getNonce();
 		return nonce;
 	}
 	public void setNonce(String nonce) {
+		decode();
 		this.nonce = nonce;
 	}
 	public int getDifficultyTarget() {
+		if (reader != null)
+			return reader.getDifficultyTarget();
 		return difficultyTarget;
 	}
 	public void setDifficultyTarget(int difficultyTarget) {
+		decode();
 		this.difficultyTarget = difficultyTarget;
 	}
 	public String getInfoType() {
+		if (reader != null)
+			return reader.getInfoType();
 		return infoType;
 	}
 	public void setInfoType(String infoType) {
+		decode();
 		this.infoType = infoType;
 	}
 	public String getInfoFormat() {
+		if (reader != null)
+			return reader.getInfoFormat();
 		return infoFormat;
 	}
 	public void setInfoFormat(String infoFormat) {
+		decode();
 		this.infoFormat = infoFormat;
 	}
 	public byte[] getContextData() {
+		if (reader != null)
+			return toBytes(reader.getContextData());
 		return contextData;
 	}
 	public void setContextData(byte[] contextData) {
+		decode();
 		this.contextData = contextData;
 	}
 	public byte[] getContentData() {
+		if (reader != null)
+			return toBytes(reader.getContentData());
 		return contentData;
 	}
 	public void setContentData(byte[] contentData) {
+		decode();
 		this.contentData = contentData;
+		this.compressedContent = null;
+		this.compressedContentSize = -1;
 	}
 
-	private int getLength(String str) {
-		if (str == null)
-			return 0;
-		else
-			return str.length();
+	/**
+	 * wraps encoded bytes without decoding any field
+	 *
+	 * @param rawBytes - encoded {@link Message}
+	 */
+	private void wrap(byte[] rawBytes) {
+		MessageReader reader = new MessageReader().wrap(rawBytes);
+		version = reader.getVersion();
+		if (reader.isValid()) {
+			this.rawBytes = rawBytes;
+			this.reader = reader;
+		}
 	}
 
-	public byte[] getBytes() {
-		try (ByteArrayOutputStream headerBaos = new ByteArrayOutputStream();
-			 ByteArrayOutputStream dataBaos = new ByteArrayOutputStream()){
-			//version
-			headerBaos.write(BytesUtil.shortToBytes(VERSION));
-
-			// id
-			int len = getLength(getId());
-			headerBaos.write((byte) (len & 0xff));
-			if (len > 0)
-				dataBaos.write(BytesUtil.stringToBytes(getId()));
-
-			// tag
-			len = getLength(getTag());
-			headerBaos.write(BytesUtil.shortToBytes((short) (len & 0xffff)));
-			if (len > 0)
-				dataBaos.write(BytesUtil.stringToBytes(getTag()));
-
-			//groupid
-			len = getLength(getMessageGroupId());
-			headerBaos.write((byte) (len & 0xff));
-			if (len > 0)
-				dataBaos.write(BytesUtil.stringToBytes(getMessageGroupId()));
-
-			// seq no
-			if (getSequenceNumber() == 0)
-				headerBaos.write(0);
-			else {
-				dataBaos.write(BytesUtil.integerToBytes(getSequenceNumber()));
-				headerBaos.write(4);
-			}
-
-			// seq total
-			if (getSequenceTotal() == 0)
-				headerBaos.write(0);
-			else {
-				dataBaos.write(BytesUtil.integerToBytes(getSequenceTotal()));
-				headerBaos.write(4);
-			}
-
-
-			// priority
-			if (getPriority() == 0)
-				headerBaos.write(0);
-			else {
-				headerBaos.write(1);
-				dataBaos.write(getPriority());
-			}
-
-			//timestamp
-			if (getTimestamp() == 0)
-				headerBaos.write(0);
-			else {
-				headerBaos.write(8);
-				dataBaos.write(BytesUtil.longToBytes(getTimestamp()));
-			}
-
-			// publisher
-			len = getLength(getPublisher());
-			headerBaos.write((byte) (len & 0xff));
-			if (len > 0)
-				dataBaos.write(BytesUtil.stringToBytes(getPublisher()));
-
-			// authIdentifier
-			len = getLength(getAuthIdentifier());
-			headerBaos.write(BytesUtil.shortToBytes((short) (len & 0xffff)));
-			if (len > 0)
-				dataBaos.write(BytesUtil.stringToBytes(getAuthIdentifier()));
-
-			// authGroup
-			len = getLength(getAuthGroup());
-			headerBaos.write(BytesUtil.shortToBytes((short) (len & 0xffff)));
-			if (len > 0)
-				dataBaos.write(BytesUtil.stringToBytes(getAuthGroup()));
-
-			// chainPosition
-			if (getChainPosition() == 0)
-				headerBaos.write(0);
-			else {
-				headerBaos.write(8);
-				dataBaos.write(BytesUtil.longToBytes(getChainPosition()));
-			}
-
-			// hash
-			len = getLength(getHash());
-			headerBaos.write(BytesUtil.shortToBytes((short) (len & 0xffff)));
-			if (len > 0)
-				dataBaos.write(BytesUtil.stringToBytes(getHash()));
-
-			// previousHash
-			len = getLength(getPreviousHash());
-			headerBaos.write(BytesUtil.shortToBytes((short) (len & 0xffff)));
-			if (len > 0)
-				dataBaos.write(BytesUtil.stringToBytes(getPreviousHash()));
-
-			// nonce
-			len = getLength(getNonce());
-			headerBaos.write(BytesUtil.shortToBytes((short) (len & 0xffff)));
-			if (len > 0) 
-				dataBaos.write(BytesUtil.stringToBytes(getNonce()));
-
-			// difficultyTarget
-			if (getDifficultyTarget() == 0)
-				headerBaos.write(0);
-			else {
-				headerBaos.write(4);
-				dataBaos.write(BytesUtil.integerToBytes(getDifficultyTarget()));
-			}
-
-			// infoType
-			len = getLength(getInfoType());
-			headerBaos.write((byte) (len & 0xff));
-			if (len > 0)
-				dataBaos.write(BytesUtil.stringToBytes(getInfoType()));
-
-			// infoFormat
-			len = getLength(getInfoFormat());
-			headerBaos.write((byte) (len & 0xff));
-			if (len > 0)
-				dataBaos.write(BytesUtil.stringToBytes(getInfoFormat()));
-
-			// contextData
-			if (getContextData() == null)
-				headerBaos.write(BytesUtil.integerToBytes(0));
-			else {
-				headerBaos.write(BytesUtil.integerToBytes(getContextData().length));
-				dataBaos.write(getContextData());
-			}
-
-			// contentData
-			if (getContentData() == null)
-				headerBaos.write(BytesUtil.integerToBytes(0));
-			else {
-				headerBaos.write(BytesUtil.integerToBytes(getContentData().length));
-				dataBaos.write(getContentData());
-			}
-
-			ByteArrayOutputStream result = new ByteArrayOutputStream();
-			headerBaos.writeTo(result);
-			dataBaos.writeTo(result);
-			return result.toByteArray();
-		} catch (IOException exc) {
-			logError(MODULE_NAME, exc.getMessage(), exc);
+	/**
+	 * decodes all fields from original encoded bytes before message is modified
+	 */
+	private void decode() {
+		if (reader == null)
+			return;
+		MessageReader reader = this.reader;
+		this.reader = null;
+		this.rawBytes = null;
+		decode(reader);
+	}
+
+	public boolean isCompressContent() {
+		return compressContent;
+	}
+	public void setCompressContent(boolean compressContent) {
+		this.compressContent = compressContent;
+	}
+
+	/**
+	 * compresses content data on first call if message is marked for compression
+	 *
+	 * @return compressed content data or null if it is not marked or does not compress well
+	 */
+	byte[] getCompressedContent() {
+		if (!compressContent)
+			return null;
+		if (compressedContentSize < 0) {
+			byte[] contentData = getContentData();
+			compressedContent = MessageCompressor.compress(contentData);
+			compressedContentSize = contentData == null ? 0 : contentData.length;
 		}
+		return compressedContent;
+	}
+
+	/**
+	 * @return size of original content data, valid when compressed content is not null
+	 */
+	int getCompressedContentSize() {
+		return compressedContentSize;
+	}
+
+	/**
+	 * keeps compressed form of content data which has been read from compact format
+	 *
+	 * @param compressedContent - compressed content data
+	 * @param size - size of original content data
+	 */
+	void setCompressedContent(byte[] compressedContent, int size) {
+		this.compressedContent = compressedContent;
+		this.compressedContentSize = size;
+	}
 
-		return new byte[] {};
+	public long getTtl() {
+		return ttl;
+	}
+	public void setTtl(long ttl) {
+		this.ttl = ttl;
+	}
+
+	/**
+	 * @return original encoded bytes or null if message has been modified or built from fields
+	 */
+	byte[] getRawBytes() {
+		return rawBytes;
+	}
+
+	/**
+	 * returns encoded {@link Message}
+	 * if message has not been modified since it was decoded, original bytes are returned
+	 *
+	 * @return encoded bytes
+	 */
+	public byte[] getBytes() {
+		if (rawBytes != null)
+			return rawBytes;
+		return MessageWriter.encode(this);
 	}
 
 	@Override
@@ -659,52 +491,49 @@ public class Message {
 	}
 
 	public void decodeBase64(byte[] bytes) {
-		Message result;
 		try {
-			result = new Message(Base64.getDecoder().decode(bytes));
-			id = result.id;
-			tag = result.tag;
-			messageGroupId = result.messageGroupId;
-			sequenceNumber = result.sequenceNumber;
-			sequenceTotal = result.sequenceTotal;
-			priority = result.priority;
-			timestamp = result.timestamp;
-			publisher = result.publisher;
-			authIdentifier = result.authIdentifier;
-			authGroup = result.authGroup;
-			version = result.version;
-			chainPosition = result.chainPosition;
-			hash = result.hash;
-			previousHash = result.previousHash;
-			nonce = result.nonce;
-			difficultyTarget = result.difficultyTarget;
-			infoType = result.infoType;
-			infoFormat = result.infoFormat;
-			contextData = result.contextData;
-			contentData = result.contentData;
+			byte[] rawBytes = Base64.getDecoder().decode(bytes);
+			MessageReader reader = new MessageReader().wrap(rawBytes);
+			this.reader = null;
+			this.rawBytes = null;
+			version = reader.getVersion();
+			decode(reader);
 		} catch (Exception exp) {
 			logError(MODULE_NAME, exp.getMessage(), exp);
 		}
 	}
 
 	public JsonObject toJson() {
+		String id = getId();
+		String tag = getTag();
+		String messageGroupId = getMessageGroupId();
+		String publisher = getPublisher();
+		String authIdentifier = getAuthIdentifier();
+		String authGroup = getAuthGroup();
+		String hash = getHash();
+		String previousHash = getPreviousHash();
+		String nonce = getNonce();
+		String infoType = getInfoType();
+		String infoFormat = getInfoFormat();
+		byte[] contextData = getContextData();
+		byte[] contentData = getContentData();
 		return Json.createObjectBuilder()
 				.add("id", id == null ? "" : id)
 				.add("tag", tag == null ? "" : tag)
 				.add("groupid", messageGroupId == null ? "" : messageGroupId)
-				.add("sequencenumber", sequenceNumber)
-				.add("sequencetotal", sequenceTotal)
-				.add("priority", priority)
-				.add("timestamp", timestamp)
+				.add("sequencenumber", getSequenceNumber())
+				.add("sequencetotal", getSequenceTotal())
+				.add("priority", getPriority())
+				.add("timestamp", getTimestamp())
 				.add("publisher", publisher == null ? "" : publisher)
 				.add("authid", authIdentifier == null ? "" : authIdentifier)
 				.add("authgroup", authGroup == null ? "" : authGroup)
 				.add("version", version)
-				.add("chainposition", chainPosition)
+				.add("chainposition", getChainPosition())
 				.add("hash", hash == null ? "" : hash)
 				.add("previoushash", previousHash == null ? "" : previousHash)
 				.add("nonce", nonce == null ? "" : nonce)
-				.add("difficultytarget", difficultyTarget)
+				.add("difficultytarget", getDifficultyTarget())
 				.add("infotype", infoType == null ? "" : infoType)
 				.add("infoformat", infoFormat == null ? "" : infoFormat)
 				.add("contextdata", contextData == null ? "" : new String(Base64.getEncoder().encode(contextData)))
@@ -14,41 +14,115 @@ package org.eclipse.iofog.message_bus;
 
 import java.io.File;
 import java.io.FilenameFilter;
+import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Stack;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
 
 import org.eclipse.iofog.microservice.Microservice;
-import org.eclipse.iofog.utils.BytesUtil;
 import org.eclipse.iofog.utils.Constants;
 import org.eclipse.iofog.utils.configuration.Configuration;
 import org.eclipse.iofog.utils.logging.LoggingService;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.internal.PlatformDependent;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 /**
  * archives received {@link Message} from {@link Microservice}
  * 
+ * new segments are written in ioMessage v5 format. Index file of such segment holds
+ * fixed size records (version, timestamp, data position, data length, checksum) and strings
+ * shared by messages of the segment are kept in its dictionary file. Checksum of a record
+ * covers the record and data of its message, see {@link #checksum(ByteBuf, int, ByteBuf)}.
+ * segments with index records without checksum and segments written in v4 format
+ * (index records of v4 header and data position) are still read.
+ * format of a segment is told by the version in the first 2 bytes of its index file
+ * 
+ * segment files are written by configured {@link ArchiveEngine} and read through memory mapping.
+ * a new segment is started once the current one reaches configured size, number of messages or age
+ * 
+ * v5 segments have a sparse time index file with a record (minimum timestamp of block, maximum timestamp
+ * of segment up to the end of block) per block of index records, so that queries find the first
+ * block within time frame by binary search and skip blocks which start after it.
+ * segments without time index file are read record by record
+ * 
+ * written messages are forced to storage device according to configured {@link ArchiveDurability}
+ * 
+ * after an unclean shutdown, torn records at the end of the latest segment are cut off
+ * before it is resumed, and readers skip records which fail their checksum.
+ * 
+ * sealed segments are removed once archive exceeds its retention quotas, and runs of small
+ * sealed segments are merged, see {@link #removeExpiredSegments(long, long)} and {@link #compact()}.
+ * data files of cold segments are then compressed block by block, see {@link CompressedSegment}
+ * 
+ * messages are looked up by ID through a {@link MessageIdIndex} per segment. Index of the segment
+ * being written is kept in memory and stored when it is sealed, other segments without one are
+ * indexed in background, see {@link #indexSegment()}
+ * 
  * @author saeid
  *
  */
 public class MessageArchive implements AutoCloseable{
 	private static final String MODULE_NAME = "MessageArchive";
 
-	private static final byte HEADER_SIZE = 33;
-	private static final short MAXIMUM_MESSAGE_PER_FILE = 1000;
-	private static final int MAXIMUM_ARCHIVE_SIZE_MB = 1;
+	static final short SEGMENT_VERSION = 6;
+	static final int INDEX_RECORD_SIZE = Short.BYTES + Long.BYTES + Long.BYTES + Integer.BYTES + Integer.BYTES;
+	static final int LEGACY_INDEX_RECORD_SIZE = INDEX_RECORD_SIZE - Integer.BYTES;
+	static final int TIME_INDEX_INTERVAL = 64;
+	static final int TIME_INDEX_RECORD_SIZE = Long.BYTES + Long.BYTES;
+	private static final int MAXIMUM_REMOVALS = 16;
+	private static final int COMPACTION_BATCH_SIZE = 1000;
+	private static final ThreadLocal<CRC32> CRC = ThreadLocal.withInitial(CRC32::new);
+	static final int MERGED_RECORD_SIZE = Long.BYTES + Integer.BYTES;
+	private static final String[] SEGMENT_EXTENSIONS = { ".idx", ".iomsg", ".iomsgz", ".iomsgz.tmp", ".dict", ".tidx", ".midx", ".midx.tmp", ".merged" };
 
 	private final String name;
 	private String diskDirectory;
 	private String currentFileName;
-	private RandomAccessFile indexFile;
-	private RandomAccessFile dataFile;
+	private long segmentTimestamp;
+	private ArchiveSegmentWriter segment;
+	private RandomAccessFile dictionaryFile;
+	private MessageDictionary dictionary;
+	private RandomAccessFile timeIndexFile;
+	private long blockMinimumTimestamp;
+	private long maximumTimestamp;
+	private int unsyncedMessages;
+	private long firstUnsyncedTime;
+	private MessageIdIndex idIndex;
+	private final AtomicInteger openIterators = new AtomicInteger();
 	
 	public MessageArchive(String name) {
 		this.name = name;
 		init();
 	}
+
+	/**
+	 * creates archive which appends to a sealed segment, so that segments are merged
+	 * without closing segment being written
+	 * 
+	 * @param name - name of publisher
+	 * @param diskDirectory - directory of archive
+	 * @param indexFileName - index file of segment to be appended to
+	 */
+	private MessageArchive(String name, String diskDirectory, String indexFileName) {
+		this.name = name;
+		this.diskDirectory = diskDirectory;
+		this.currentFileName = indexFileName;
+	}
 	
 	/**
 	 * sets the file name for {@link Message} to be archived
@@ -81,12 +155,258 @@ public class MessageArchive implements AutoCloseable{
 			}
 		}
 		
-		if (lastFileTimestamp > 0 && lastFile.length() < ((HEADER_SIZE + Long.BYTES) * MAXIMUM_MESSAGE_PER_FILE))
+		if (lastFileTimestamp > 0 && getSegmentVersion(lastFile) == SEGMENT_VERSION
+				&& new File(getSegmentFileName(lastFile.getPath(), ".iomsg")).exists()) {
 			currentFileName = lastFile.getPath();
+			try {
+				recoverSegment(lastFile);
+			} catch (Exception e) {
+				LoggingService.logError(MODULE_NAME, "unable to recover segment " + lastFile.getName(), e);
+				currentFileName = "";
+			}
+		}
+	}
+
+	/**
+	 * cuts torn records off the end of a segment which may not have been closed cleanly,
+	 * along with their data and a partially written dictionary entry
+	 * 
+	 * @param indexFile - index file of segment
+	 * @throws Exception
+	 */
+	private static void recoverSegment(File indexFile) throws Exception {
+		File dataFile = new File(getSegmentFileName(indexFile.getPath(), ".iomsg"));
+		int messageCount;
+		long dataSize = 0;
+		MappedByteBuffer index = map(indexFile);
+		MappedByteBuffer data = map(dataFile);
+		try {
+			messageCount = getRecoveredMessageCount(index, data);
+			if (messageCount > 0)
+				dataSize = getDataEnd(index, (messageCount - 1) * INDEX_RECORD_SIZE);
+		} finally {
+			unmap(index);
+			unmap(data);
+		}
+
+		if (indexFile.length() > (long) messageCount * INDEX_RECORD_SIZE || dataFile.length() > dataSize)
+			LoggingService.logWarning(MODULE_NAME, "recovered segment " + indexFile.getName() + " with " + messageCount + " messages");
+		truncate(indexFile, (long) messageCount * INDEX_RECORD_SIZE);
+		truncate(dataFile, dataSize);
+		try (RandomAccessFile dictionaryFile = new RandomAccessFile(new File(getSegmentFileName(indexFile.getPath(), ".dict")), "rw")) {
+			loadDictionary(dictionaryFile);
+			dictionaryFile.setLength(dictionaryFile.getFilePointer());
+		}
+	}
+
+	private static void truncate(File file, long length) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+			if (channel.size() > length)
+				channel.truncate(length);
+		}
+	}
+
+	/**
+	 * reads format version of a segment from the beginning of its index file
+	 * 
+	 * @param indexFile - index file of segment
+	 * @return version or 0 if index file is empty or can not be read
+	 */
+	static short getSegmentVersion(File indexFile) {
+		try (RandomAccessFile file = new RandomAccessFile(indexFile, "r")) {
+			return file.length() < Short.BYTES ? 0 : file.readShort();
+		} catch (Exception e) {
+			LoggingService.logError(MODULE_NAME, e.getMessage(), e);
+			return 0;
+		}
+	}
+
+	static String getSegmentFileName(String indexFileName, String extension) {
+		return indexFileName.substring(0, indexFileName.lastIndexOf(".")) + extension;
+	}
+
+	/**
+	 * loads dictionary of a v5 segment
+	 * an entry which is not completely written yet is left out, and file is positioned before it
+	 * 
+	 * @param file - dictionary file
+	 * @return {@link MessageDictionary}
+	 * @throws Exception
+	 */
+	static MessageDictionary loadDictionary(RandomAccessFile file) throws Exception {
+		MessageDictionary dictionary = new MessageDictionary();
+		long length = file.length();
+		file.seek(0);
+		long end = 0;
+		while (end + Short.BYTES <= length) {
+			int size = file.readUnsignedShort();
+			if (file.getFilePointer() + size > length)
+				break;
+			byte[] entry = new byte[size];
+			file.readFully(entry);
+			dictionary.add(new String(entry, UTF_8));
+			end = file.getFilePointer();
+		}
+		file.seek(end);
+		return dictionary;
 	}
 	
 	/**
-	 * opens index and data file
+	 * maps a segment file read-only
+	 * returned buffer has to be released by {@link #unmap(ByteBuffer)}
+	 * 
+	 * @param file - segment file
+	 * @return {@link MappedByteBuffer} of whole file
+	 * @throws IOException
+	 */
+	static MappedByteBuffer map(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
+	/**
+	 * releases mapping of a segment file without waiting for garbage collector
+	 * buffer must not be used afterwards
+	 * 
+	 * @param buffer - buffer returned by {@link FileChannel#map}, not a slice or duplicate of it
+	 */
+	static void unmap(ByteBuffer buffer) {
+		if (buffer != null)
+			PlatformDependent.freeDirectBuffer(buffer);
+	}
+
+	/**
+	 * @param version - version of a v5 segment
+	 * @return size of its index records
+	 */
+	static int getIndexRecordSize(short version) {
+		return version == SEGMENT_VERSION ? INDEX_RECORD_SIZE : LEGACY_INDEX_RECORD_SIZE;
+	}
+
+	/**
+	 * @param version - version of a segment
+	 * @return true if segment is written in v5 format, with or without checksums
+	 */
+	static boolean isCompactSegment(short version) {
+		return version == SEGMENT_VERSION || version == CompactMessageCodec.VERSION;
+	}
+
+	/**
+	 * counts index records of a v5 segment up to the last written one
+	 * unwritten (zero) records at the end of a preallocated index file are left out
+	 * 
+	 * @param index - content of index file
+	 * @param recordSize - size of index records of segment
+	 * @return number of records in segment
+	 */
+	static int getRecordCount(ByteBuffer index, int recordSize) {
+		int count = index.limit() / recordSize;
+		while (count > 0 && index.getShort((count - 1) * recordSize) == 0)
+			count--;
+		return count;
+	}
+
+	/**
+	 * counts index records of a segment up to the last one which is completely written
+	 * records are verified from the end, so that only torn records of an unclean shutdown are read
+	 * 
+	 * @param index - content of index file
+	 * @param data - content of data file
+	 * @return number of messages in segment
+	 */
+	static int getRecoveredMessageCount(ByteBuffer index, ByteBuffer data) {
+		int count = getRecordCount(index, INDEX_RECORD_SIZE);
+		while (count > 0 && !isValidRecord(index, (count - 1) * INDEX_RECORD_SIZE, data))
+			count--;
+		return count;
+	}
+
+	private static boolean isValidRecord(ByteBuffer index, int position, ByteBuffer data) {
+		long dataPos = index.getLong(position + Short.BYTES + Long.BYTES);
+		int dataSize = index.getInt(position + Short.BYTES + Long.BYTES + Long.BYTES);
+		if (index.getShort(position) != SEGMENT_VERSION || dataPos < 0 || dataSize < 0 || dataPos + dataSize > data.limit())
+			return false;
+		ByteBuf record = Unpooled.wrappedBuffer(index);
+		ByteBuf message = Unpooled.wrappedBuffer(data).slice((int) dataPos, dataSize);
+		return checksum(record, position, message) == index.getInt(position + LEGACY_INDEX_RECORD_SIZE);
+	}
+
+	private static long getDataEnd(ByteBuffer index, int position) {
+		return index.getLong(position + Short.BYTES + Long.BYTES) + index.getInt(position + Short.BYTES + Long.BYTES + Long.BYTES);
+	}
+
+	/**
+	 * calculates checksum of an index record and data of its message
+	 * CRC-32 is used, as CRC-32C is not available before Java 9
+	 * 
+	 * @param index - buffer holding index record
+	 * @param position - position of record in buffer
+	 * @param message - data of message
+	 * @return checksum
+	 */
+	static int checksum(ByteBuf index, int position, ByteBuf message) {
+		CRC32 crc = CRC.get();
+		crc.reset();
+		crc.update(index.nioBuffer(position, LEGACY_INDEX_RECORD_SIZE));
+		crc.update(message.nioBuffer(message.readerIndex(), message.readableBytes()));
+		return (int) crc.getValue();
+	}
+
+	static long getSegmentTimestamp(String name, String indexFileName) {
+		return Long.parseLong(indexFileName.substring(name.length() + 1, indexFileName.indexOf(".")));
+	}
+
+	/**
+	 * @return index files of segments of this archive in order of their timestamps
+	 */
+	private File[] listSegments() {
+		FilenameFilter filter = (dir, fileName) -> fileName.startsWith(name + "_")
+				&& fileName.substring(fileName.indexOf(".")).equals(".idx");
+		File[] files = new File(diskDirectory).listFiles(filter);
+		if (files == null)
+			return new File[0];
+		Arrays.sort(files);
+		return files;
+	}
+
+	/**
+	 * @return name of index file of segment being written or to be resumed, null if there is none
+	 */
+	private String getActiveSegment() {
+		return currentFileName.equals("") ? null : new File(currentFileName).getName();
+	}
+
+	/**
+	 * @param indexFile - index file of segment
+	 * @return total size of files of segment in bytes
+	 */
+	static long getSegmentSize(File indexFile) {
+		long size = 0;
+		for (String extension : SEGMENT_EXTENSIONS)
+			size += new File(getSegmentFileName(indexFile.getPath(), extension)).length();
+		return size;
+	}
+
+	/**
+	 * deletes files of a segment, index file first so that segment is not listed anymore
+	 * 
+	 * @param indexFile - index file of segment
+	 * @return number of freed bytes
+	 */
+	static long deleteSegment(File indexFile) {
+		long size = 0;
+		for (String extension : SEGMENT_EXTENSIONS) {
+			File file = new File(getSegmentFileName(indexFile.getPath(), extension));
+			long length = file.length();
+			if (file.delete())
+				size += length;
+		}
+		return size;
+	}
+
+	/**
+	 * opens files of current segment with configured {@link ArchiveEngine}
 	 * 
 	 * @param timestamp- timestamp of first {@link Message} in the file
 	 * @throws Exception
@@ -94,33 +414,531 @@ public class MessageArchive implements AutoCloseable{
 	private void openFiles(long timestamp) throws Exception {
 		if (currentFileName.equals(""))
 			currentFileName = diskDirectory + name + "_" + timestamp + ".idx";
-		indexFile = new RandomAccessFile(new File(currentFileName), "rw");
-		dataFile = new RandomAccessFile(new File(currentFileName.substring(0, currentFileName.indexOf(".")) + ".iomsg"), "rw");
+		File indexFile = new File(currentFileName);
+		File dataFile = new File(getSegmentFileName(currentFileName, ".iomsg"));
+		segmentTimestamp = getSegmentTimestamp(name, indexFile.getName());
+
+		// ID index of a sealed segment becomes stale once it is appended to
+		new File(getSegmentFileName(currentFileName, ".midx")).delete();
+		int messageCount = 0;
+		long dataSize = 0;
+		if (indexFile.exists() && dataFile.exists()) {
+			MappedByteBuffer index = map(indexFile);
+			MappedByteBuffer data = map(dataFile);
+			try {
+				messageCount = getRecoveredMessageCount(index, data);
+				if (messageCount > 0)
+					dataSize = getDataEnd(index, (messageCount - 1) * INDEX_RECORD_SIZE);
+			} finally {
+				unmap(index);
+				unmap(data);
+			}
+		}
+
+		if (Configuration.getArchiveEngine() == ArchiveEngine.MAPPED)
+			segment = new MappedSegmentWriter(indexFile, dataFile, messageCount, dataSize,
+					Configuration.getArchiveSegmentMessages(), (long) Configuration.getArchiveSegmentSize() * Constants.MiB);
+		else
+			segment = new FileSegmentWriter(indexFile, dataFile, messageCount, dataSize);
+		dictionaryFile = new RandomAccessFile(new File(getSegmentFileName(currentFileName, ".dict")), "rw");
+		dictionary = loadDictionary(dictionaryFile);
+		openTimeIndex(messageCount);
+		idIndex = messageCount > 0 ? buildIdIndex(indexFile, indexFile.getName(), messageCount) : new MessageIdIndex();
+	}
+
+	/**
+	 * reads IDs of messages of a segment into a new {@link MessageIdIndex}
+	 * 
+	 * @param indexFile - index file of segment
+	 * @param activeSegment - name of index file of segment being written, null if there is none
+	 * @param activeMessageCount - number of messages in segment being written
+	 * @return {@link MessageIdIndex}
+	 */
+	private MessageIdIndex buildIdIndex(File indexFile, String activeSegment, int activeMessageCount) {
+		MessageIdIndex result = new MessageIdIndex();
+		try (MessageArchiveIterator iterator = new MessageArchiveIterator(name, Collections.singletonList(indexFile),
+				activeSegment, activeMessageCount, Long.MIN_VALUE, Long.MAX_VALUE, null, null, null)) {
+			while (iterator.hasNext()) {
+				int offset = iterator.getPosition().getOffset();
+				result.add(iterator.next().getId(), offset);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * opens time index file of current segment and loads record of the last block
+	 * time index of a segment which does not cover all of its messages is removed,
+	 * so that the segment is read record by record
+	 * 
+	 * @param messageCount - number of messages in segment
+	 * @throws IOException
+	 */
+	private void openTimeIndex(int messageCount) throws IOException {
+		File file = new File(getSegmentFileName(currentFileName, ".tidx"));
+		long position = (long) ((messageCount - 1) / TIME_INDEX_INTERVAL) * TIME_INDEX_RECORD_SIZE;
+		if (messageCount > 0 && (!file.exists() || file.length() < position + TIME_INDEX_RECORD_SIZE)) {
+			file.delete();
+			return;
+		}
+
+		timeIndexFile = new RandomAccessFile(file, "rw");
+		blockMinimumTimestamp = Long.MAX_VALUE;
+		maximumTimestamp = Long.MIN_VALUE;
+		if (messageCount > 0) {
+			timeIndexFile.seek(position);
+			blockMinimumTimestamp = timeIndexFile.readLong();
+			maximumTimestamp = timeIndexFile.readLong();
+		}
+	}
+
+	/**
+	 * tells if {@link Message} has to go to a new segment according to configured rollover policy
+	 * a segment is never rolled over within the millisecond it was started in, as the new one
+	 * would get the same name
+	 * 
+	 * @param pendingMessages - number of messages to be written to segment before this one
+	 * @param pendingDataSize - size of data to be written to segment including this message
+	 * @param timestamp - timestamp of {@link Message}
+	 * @return true if current segment is full
+	 */
+	private boolean isSegmentFull(int pendingMessages, long pendingDataSize, long timestamp) {
+		int messageCount = segment.getMessageCount() + pendingMessages;
+		if (messageCount == 0 || timestamp == segmentTimestamp)
+			return false;
+		long maximumAge = Configuration.getArchiveSegmentAge() * 60_000L;
+		return messageCount >= Configuration.getArchiveSegmentMessages()
+				|| segment.getDataSize() + pendingDataSize > (long) Configuration.getArchiveSegmentSize() * Constants.MiB
+				|| (maximumAge > 0 && timestamp - segmentTimestamp >= maximumAge);
 	}
 	
 	/**
-	 * archives {@link Message} to file. If size of the data file becomes more than
-	 * defined value, creates a new file 
+	 * archives list of {@link Message} to file with a single write of data and index.
+	 * If current segment becomes full, creates a new one
 	 * 
-	 * @param message - {@link Message} to be archived
-	 * @param timestamp - timestamp of the {@link Message}
+	 * @param messages - list of {@link Message} to be archived, indexed by their timestamps
 	 * @throws Exception
 	 */
-	void save(byte[] message, long timestamp) throws Exception {
-		if (indexFile == null)
-			openFiles(timestamp);
+	void save(List<Message> messages) throws Exception {
+		save(messages, true);
+	}
+
+	/**
+	 * @param messages - list of {@link Message} to be archived
+	 * @param rollover - false to append to current segment regardless of rollover policy
+	 * @throws Exception
+	 */
+	private void save(List<Message> messages, boolean rollover) throws Exception {
+		if (messages.isEmpty())
+			return;
+		if (segment == null)
+			openFiles(messages.get(0).getTimestamp());
 		
-		if ((message.length + dataFile.length()) >= (MAXIMUM_ARCHIVE_SIZE_MB * 1_000_000)) {
-			close();
-			openFiles(timestamp);
+		ByteBuf data = ByteBufAllocator.DEFAULT.buffer();
+		ByteBuf index = ByteBufAllocator.DEFAULT.buffer(messages.size() * INDEX_RECORD_SIZE);
+		try {
+			int dictionarySize = dictionary.size();
+			for (Message message : messages) {
+				int start = data.writerIndex();
+				CompactMessageCodec.write(message, data, dictionary, false);
+				if (rollover && isSegmentFull(index.readableBytes() / INDEX_RECORD_SIZE, data.writerIndex(), message.getTimestamp())) {
+					data.writerIndex(start);
+					write(data, index, dictionarySize);
+					close();
+					openFiles(message.getTimestamp());
+					dictionarySize = dictionary.size();
+					data.clear();
+					index.clear();
+					start = 0;
+					CompactMessageCodec.write(message, data, dictionary, false);
+				}
+
+				int record = index.writerIndex();
+				index.writeShort(SEGMENT_VERSION);
+				index.writeLong(message.getTimestamp());
+				index.writeLong(segment.getDataSize() + start);
+				index.writeInt(data.writerIndex() - start);
+				index.writeInt(checksum(index, record, data.slice(start, data.writerIndex() - start)));
+				idIndex.add(message.getId(), segment.getMessageCount() * INDEX_RECORD_SIZE + record);
+			}
+			write(data, index, dictionarySize);
+			sync(false);
+		} finally {
+			data.release();
+			index.release();
 		}
-		indexFile.seek(indexFile.length());
-		dataFile.seek(dataFile.length());
-		long dataPos = dataFile.getFilePointer();
-		
-		indexFile.write(message, 0, HEADER_SIZE);
-		indexFile.writeLong(dataPos);
-		dataFile.write(message, HEADER_SIZE, message.length - HEADER_SIZE);
+	}
+
+	/**
+	 * forces written messages to storage device according to {@link ArchiveDurability}
+	 * in GROUP mode they are forced once there are enough of them or the oldest one
+	 * has waited long enough
+	 * 
+	 * @param always - true to force regardless of group commit thresholds
+	 * @throws IOException
+	 */
+	void sync(boolean always) throws IOException {
+		ArchiveDurability durability = Configuration.getArchiveDurability();
+		if (segment == null || unsyncedMessages == 0 || durability == ArchiveDurability.NONE)
+			return;
+		if (!always && durability == ArchiveDurability.GROUP
+				&& unsyncedMessages < Configuration.getArchiveSyncMessages()
+				&& System.currentTimeMillis() - firstUnsyncedTime < Configuration.getArchiveSyncIntervalMillis())
+			return;
+		force();
+	}
+
+	private void force() throws IOException {
+		if (segment == null)
+			return;
+		dictionaryFile.getChannel().force(false);
+		if (timeIndexFile != null)
+			timeIndexFile.getChannel().force(false);
+		segment.force();
+		unsyncedMessages = 0;
+	}
+
+	/**
+	 * removes the oldest sealed segments while archive is larger than its quota or their messages
+	 * are older than allowed. Age of a segment is told by the timestamp of the next one.
+	 * segment being written is never removed and only a few segments are removed per call,
+	 * so that retention is enforced incrementally. An open iterator skips removed segments.
+	 * 
+	 * @param maximumSize - maximum size of archive in bytes, 0 for no limit
+	 * @param maximumAge - maximum age of messages in milliseconds, 0 for no limit
+	 * @return number of freed bytes
+	 */
+	long removeExpiredSegments(long maximumSize, long maximumAge) {
+		if (maximumSize <= 0 && maximumAge <= 0)
+			return 0;
+		File[] segments = listSegments();
+		String activeSegment = getActiveSegment();
+		long size = 0;
+		if (maximumSize > 0)
+			for (File file : segments)
+				size += getSegmentSize(file);
+
+		long now = System.currentTimeMillis();
+		long freed = 0;
+		for (int i = 0; i < segments.length && i < MAXIMUM_REMOVALS; i++) {
+			File file = segments[i];
+			if (file.getName().equals(activeSegment))
+				break;
+			long newest = i + 1 < segments.length ? getSegmentTimestamp(name, segments[i + 1].getName()) : file.lastModified();
+			boolean expired = maximumAge > 0 && now - newest > maximumAge;
+			if (!expired && (maximumSize <= 0 || size <= maximumSize))
+				break;
+			long segmentSize = deleteSegment(file);
+			size -= segmentSize;
+			freed += segmentSize;
+		}
+		return freed;
+	}
+
+	/**
+	 * removes the oldest sealed segment
+	 * 
+	 * @return number of freed bytes, 0 if there is no sealed segment
+	 */
+	long removeOldestSegment() {
+		File[] segments = listSegments();
+		if (segments.length == 0 || segments[0].getName().equals(getActiveSegment()))
+			return 0;
+		return deleteSegment(segments[0]);
+	}
+
+	/**
+	 * merges the first run of small sealed v5 segments with checksums into the first segment of run, so that
+	 * a quiet publisher does not leave a tiny segment per rollover period. A segment is small
+	 * if it is below a quarter of configured segment size and messages, and merged segment
+	 * stays within them.
+	 * messages are appended and forced to storage before later segments are removed, so that
+	 * a crash may leave messages twice but never loses them. Nothing is merged while an iterator
+	 * of this archive is open, as it may be reading the segments.
+	 * offset at which records of each merged segment start is kept with the first segment,
+	 * so that positions handed out as cursors still resume at the same message, see
+	 * {@link #resolvePosition(File[], MessageArchivePosition)}. Segment being written is not touched.
+	 * 
+	 * @return true if segments were merged
+	 * @throws Exception
+	 */
+	boolean compact() throws Exception {
+		if (openIterators.get() > 0)
+			return false;
+		List<File> run = findCompactionRun();
+		if (run.size() < 2)
+			return false;
+
+		File target = run.get(0);
+		MessageArchive writer = new MessageArchive(name, diskDirectory, target.getPath());
+		List<File> merged = new ArrayList<>();
+		ByteBuf mergedRecords = Unpooled.buffer();
+		try {
+			writer.openFiles(getSegmentTimestamp(name, target.getName()));
+			for (File source : run.subList(1, run.size())) {
+				int base = writer.segment.getMessageCount() * INDEX_RECORD_SIZE;
+				int count = 0;
+				try (MessageArchiveIterator iterator = new MessageArchiveIterator(name, Collections.singletonList(source),
+						null, 0, Long.MIN_VALUE, Long.MAX_VALUE, null, null, null)) {
+					List<Message> batch = new ArrayList<>();
+					while (iterator.hasNext()) {
+						batch.add(iterator.next());
+						if (batch.size() == COMPACTION_BATCH_SIZE) {
+							writer.save(batch, false);
+							count += batch.size();
+							batch.clear();
+						}
+					}
+					writer.save(batch, false);
+					count += batch.size();
+				}
+				// a segment which could not be read completely is kept rather than lost
+				if (count == getMessageCount(source)) {
+					merged.add(source);
+					mergedRecords.writeLong(getSegmentTimestamp(name, source.getName())).writeInt(base);
+					// segments merged into this one earlier move along with it
+					ByteBuffer earlier = readMergedSegments(source);
+					while (earlier.remaining() >= MERGED_RECORD_SIZE)
+						mergedRecords.writeLong(earlier.getLong()).writeInt(base + earlier.getInt());
+				} else {
+					LoggingService.logWarning(MODULE_NAME, "unable to read whole segment " + source.getName() + " for compaction");
+				}
+			}
+			writer.force();
+		} finally {
+			writer.close();
+		}
+		try (RandomAccessFile mergedFile = new RandomAccessFile(getSegmentFileName(target.getPath(), ".merged"), "rw")) {
+			append(mergedFile, mergedRecords);
+			mergedFile.getChannel().force(false);
+		}
+		merged.forEach(MessageArchive::deleteSegment);
+		return true;
+	}
+
+	/**
+	 * @param indexFile - index file of segment
+	 * @return records of segments merged into it, timestamp of merged segment followed by
+	 * offset of its first index record, empty if there are none
+	 * @throws IOException
+	 */
+	private static ByteBuffer readMergedSegments(File indexFile) throws IOException {
+		File file = new File(getSegmentFileName(indexFile.getPath(), ".merged"));
+		if (!file.exists())
+			return ByteBuffer.allocate(0);
+		return ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+	}
+
+	/**
+	 * translates position in a segment which has been merged into an earlier one by {@link #compact()}
+	 * to the same message in merged segment
+	 * 
+	 * @param segments - index files of segments in order of their timestamps
+	 * @param position - position to be resolved
+	 * @return position in an existing segment, or position as is if its segment exists or was removed
+	 */
+	private MessageArchivePosition resolvePosition(File[] segments, MessageArchivePosition position) {
+		File target = null;
+		for (File file : segments) {
+			long timestamp = getSegmentTimestamp(name, file.getName());
+			if (timestamp == position.getSegment())
+				return position;
+			if (timestamp > position.getSegment())
+				break;
+			target = file;
+		}
+		if (target == null)
+			return position;
+		try {
+			ByteBuffer records = readMergedSegments(target);
+			while (records.remaining() >= MERGED_RECORD_SIZE) {
+				long timestamp = records.getLong();
+				int base = records.getInt();
+				if (timestamp == position.getSegment())
+					return new MessageArchivePosition(getSegmentTimestamp(name, target.getName()), base + position.getOffset());
+			}
+		} catch (IOException e) {
+			LoggingService.logError(MODULE_NAME, "unable to read merged segments of " + target.getName(), e);
+		}
+		return position;
+	}
+
+	/**
+	 * compresses data file of the oldest uncompressed sealed v5 segment. The last sealed segment
+	 * is left as is, as it may still be merged with the next one by {@link #compact()}.
+	 * original data file is removed once compressed one is complete. An iterator which has
+	 * mapped it goes on reading it, others read compressed one.
+	 * 
+	 * @return true if a segment was compressed
+	 * @throws IOException
+	 */
+	boolean compressColdSegment() throws IOException {
+		File[] segments = listSegments();
+		String activeSegment = getActiveSegment();
+		int sealed = segments.length;
+		for (int i = 0; i < segments.length; i++) {
+			if (segments[i].getName().equals(activeSegment)) {
+				sealed = i;
+				break;
+			}
+		}
+
+		for (int i = 0; i < sealed - 1; i++) {
+			File dataFile = new File(getSegmentFileName(segments[i].getPath(), ".iomsg"));
+			if (!dataFile.exists() || !isCompactSegment(getSegmentVersion(segments[i])))
+				continue;
+			File compressedFile = new File(getSegmentFileName(segments[i].getPath(), ".iomsgz"));
+			if (!compressedFile.exists())
+				CompressedSegment.write(dataFile, compressedFile);
+			dataFile.delete();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * writes {@link MessageIdIndex} of the oldest sealed segment which has none, such as
+	 * a segment written by an earlier version, merged by {@link #compact()} or sealed by a crash
+	 * 
+	 * @return true if a segment was indexed
+	 * @throws IOException
+	 */
+	boolean indexSegment() throws IOException {
+		String activeSegment = getActiveSegment();
+		for (File file : listSegments()) {
+			if (file.getName().equals(activeSegment))
+				break;
+			File idIndexFile = new File(getSegmentFileName(file.getPath(), ".midx"));
+			if (idIndexFile.exists() || getSegmentVersion(file) == 0)
+				continue;
+			buildIdIndex(file, null, 0).write(idIndexFile);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return index files of the first run of small sealed v5 segments
+	 */
+	private List<File> findCompactionRun() {
+		long maximumSize = (long) Configuration.getArchiveSegmentSize() * Constants.MiB;
+		long maximumMessages = Configuration.getArchiveSegmentMessages();
+		String activeSegment = getActiveSegment();
+		List<File> run = new ArrayList<>();
+		long size = 0;
+		long messages = 0;
+		for (File file : listSegments()) {
+			if (file.getName().equals(activeSegment))
+				break;
+			File dataFile = new File(getSegmentFileName(file.getPath(), ".iomsg"));
+			long segmentSize = dataFile.length();
+			long segmentMessages = file.length() / INDEX_RECORD_SIZE;
+			boolean small = segmentSize * 4 < maximumSize && segmentMessages * 4 < maximumMessages
+					&& dataFile.exists() && getSegmentVersion(file) == SEGMENT_VERSION;
+			if (small && size + segmentSize <= maximumSize && messages + segmentMessages <= maximumMessages) {
+				run.add(file);
+				size += segmentSize;
+				messages += segmentMessages;
+				continue;
+			}
+			if (run.size() > 1)
+				break;
+			run.clear();
+			size = 0;
+			messages = 0;
+			if (small) {
+				run.add(file);
+				size = segmentSize;
+				messages = segmentMessages;
+			}
+		}
+		return run;
+	}
+
+	/**
+	 * @param indexFile - index file of a sealed v5 segment
+	 * @return number of messages in segment
+	 * @throws IOException
+	 */
+	private static int getMessageCount(File indexFile) throws IOException {
+		MappedByteBuffer index = map(indexFile);
+		try {
+			return getRecordCount(index, INDEX_RECORD_SIZE);
+		} finally {
+			unmap(index);
+		}
+	}
+
+	/**
+	 * appends encoded messages to the current segment with a single write per file
+	 * new dictionary entries go first, so that an indexed message never refers to a missing entry,
+	 * and so does time index, so that it never leaves an indexed message out
+	 * 
+	 * @param data - encoded messages
+	 * @param index - index records of messages
+	 * @param dictionarySize - number of dictionary entries already stored
+	 * @throws Exception
+	 */
+	private void write(ByteBuf data, ByteBuf index, int dictionarySize) throws Exception {
+		if (dictionarySize < dictionary.size()) {
+			ByteBuf entries = ByteBufAllocator.DEFAULT.buffer();
+			try {
+				for (int i = dictionarySize; i < dictionary.size(); i++) {
+					byte[] entry = dictionary.get(i).getBytes(UTF_8);
+					entries.writeShort(entry.length);
+					entries.writeBytes(entry);
+				}
+				append(dictionaryFile, entries);
+			} finally {
+				entries.release();
+			}
+		}
+
+		if (timeIndexFile != null)
+			writeTimeIndex(index);
+
+		if (unsyncedMessages == 0)
+			firstUnsyncedTime = System.currentTimeMillis();
+		unsyncedMessages += index.readableBytes() / INDEX_RECORD_SIZE;
+		segment.append(data, index);
+	}
+
+	/**
+	 * updates time index records of blocks which index records are appended to
+	 * record of the last block is rewritten until the block is full
+	 * 
+	 * @param index - index records to be appended
+	 * @throws IOException
+	 */
+	private void writeTimeIndex(ByteBuf index) throws IOException {
+		int first = segment.getMessageCount();
+		int records = index.readableBytes() / INDEX_RECORD_SIZE;
+		ByteBuf blocks = ByteBufAllocator.DEFAULT.buffer((records / TIME_INDEX_INTERVAL + 2) * TIME_INDEX_RECORD_SIZE);
+		try {
+			for (int i = 0; i < records; i++) {
+				long timestamp = index.getLong(index.readerIndex() + i * INDEX_RECORD_SIZE + Short.BYTES);
+				int record = first + i;
+				blockMinimumTimestamp = record % TIME_INDEX_INTERVAL == 0 ? timestamp : Math.min(blockMinimumTimestamp, timestamp);
+				maximumTimestamp = Math.max(maximumTimestamp, timestamp);
+				if ((record + 1) % TIME_INDEX_INTERVAL == 0 || i == records - 1) {
+					blocks.writeLong(blockMinimumTimestamp);
+					blocks.writeLong(maximumTimestamp);
+				}
+			}
+			write(timeIndexFile, (long) (first / TIME_INDEX_INTERVAL) * TIME_INDEX_RECORD_SIZE, blocks);
+		} finally {
+			blocks.release();
+		}
+	}
+
+	private static void append(RandomAccessFile file, ByteBuf buffer) throws IOException {
+		write(file, file.getChannel().size(), buffer);
+	}
+
+	private static void write(RandomAccessFile file, long position, ByteBuf buffer) throws IOException {
+		FileChannel channel = file.getChannel();
+		while (buffer.isReadable())
+			position += buffer.readBytes(channel, position, buffer.readableBytes());
 	}
 	
 	/**
@@ -128,48 +946,37 @@ public class MessageArchive implements AutoCloseable{
 	 * 
 	 */
 	public void close() {
+		try {
+			sync(true);
+		} catch (Exception exp) {
+			LoggingService.logError(MODULE_NAME, exp.getMessage(), exp);
+		}
+		try {
+			if (segment != null && idIndex != null && idIndex.size() == segment.getMessageCount())
+				idIndex.write(new File(getSegmentFileName(currentFileName, ".midx")));
+		} catch (Exception exp) {
+			LoggingService.logError(MODULE_NAME, exp.getMessage(), exp);
+		}
 		try {
 			currentFileName = "";
-			if (indexFile != null)
-				indexFile.close();
-			if (dataFile != null)
-				dataFile.close();
+			if (segment != null)
+				segment.close();
+			if (dictionaryFile != null)
+				dictionaryFile.close();
+			if (timeIndexFile != null)
+				timeIndexFile.close();
+			segment = null;
+			dictionaryFile = null;
+			timeIndexFile = null;
+			dictionary = null;
+			idIndex = null;
+			unsyncedMessages = 0;
 			currentFileName = "";
 		} catch (Exception exp) {
 			LoggingService.logError(MODULE_NAME, exp.getMessage(), exp);
 		}
 	}
 	
-	/**
-	 * computes {@link Message} size
-	 * 
-	 * @param header - header of the {@link Message}
-	 * @return int
-	 */
-	private int getDataSize(byte[] header) {
-		int size;
-		size = header[2];
-		size += BytesUtil.bytesToShort(BytesUtil.copyOfRange(header, 3, 5));
-		size += header[5];
-		size += header[6];
-		size += header[7];
-		size += header[8];
-		size += header[9];
-		size += header[10];
-		size += BytesUtil.bytesToShort(BytesUtil.copyOfRange(header, 11, 13));
-		size += BytesUtil.bytesToShort(BytesUtil.copyOfRange(header, 13, 15));
-		size += header[15];
-		size += BytesUtil.bytesToShort(BytesUtil.copyOfRange(header, 16, 18));
-		size += BytesUtil.bytesToShort(BytesUtil.copyOfRange(header, 18, 20));
-		size += BytesUtil.bytesToShort(BytesUtil.copyOfRange(header, 20, 22));
-		size += header[22];
-		size += header[23];
-		size += header[24];
-		size += BytesUtil.bytesToInteger(BytesUtil.copyOfRange(header, 25, 29));
-		size += BytesUtil.bytesToInteger(BytesUtil.copyOfRange(header, 29, 33));
-		return size;
-	}
-
 	/**
 	 *
 	 *
@@ -182,20 +989,49 @@ public class MessageArchive implements AutoCloseable{
 
 	/**
 	 * retrieves list of {@link Message} sent by this {@link Microservice} within the time frame
+	 * reading stops when free memory runs low
 	 * 
 	 * @param from - beginning of time frame in milliseconds
 	 * @param to - end of time frame in milliseconds
 	 * @return list of {@link Message}
 	 */
 	public List<Message> messageQuery(long from, long to) {
-		boolean outOfMemory = false;
 		List<Message> result = new ArrayList<>();
-		
-		File workingDirectory = new File(diskDirectory);
-		FilenameFilter filter = (dir, fileName) -> fileName.substring(0, name.length()).equals(name)
-				&& fileName.substring(fileName.indexOf(".")).equals(".idx");
-		File[] listOfFiles = workingDirectory.listFiles(filter);
-		Arrays.sort(listOfFiles);
+		try (MessageArchiveIterator iterator = messageIterator(from, to)) {
+			while (freeMemory() >= 32 * Constants.MiB && iterator.hasNext())
+				result.add(iterator.next());
+		}
+		return result;
+	}
+
+	/**
+	 * creates iterator of {@link Message} sent by this {@link Microservice} within the time frame
+	 * messages archived after this call are not iterated
+	 * 
+	 * @param from - beginning of time frame in milliseconds
+	 * @param to - end of time frame in milliseconds
+	 * @return {@link MessageArchiveIterator}
+	 */
+	public MessageArchiveIterator messageIterator(long from, long to) {
+		return messageIterator(from, to, null, null);
+	}
+
+	/**
+	 * creates iterator of {@link Message} sent by this {@link Microservice} within the time frame
+	 * which match filter, and resumes reading at a position returned by {@link MessageArchiveIterator#getPosition()}
+	 * if segment of position has been merged into an earlier one, reading resumes at the same message there,
+	 * if it has been removed, reading resumes at the next segment
+	 * 
+	 * @param from - beginning of time frame in milliseconds
+	 * @param to - end of time frame in milliseconds
+	 * @param start - position to resume at, null to read from the beginning of time frame
+	 * @param messageFilter - {@link MessageFilter} of messages, null for all messages
+	 * @return {@link MessageArchiveIterator}
+	 */
+	public MessageArchiveIterator messageIterator(long from, long to, MessageArchivePosition start, MessageFilter messageFilter) {
+		File[] listOfFiles = listSegments();
+		if (start != null)
+			start = resolvePosition(listOfFiles, start);
 		
 		Stack<File> resultSet = new Stack<>();
 		int i = listOfFiles.length - 1;
@@ -203,7 +1039,7 @@ public class MessageArchive implements AutoCloseable{
 			File file = listOfFiles[i];
 			if (!file.isFile())
 				continue;
-			long timestamp = Long.parseLong(file.getName().substring(name.length() + 1, file.getName().indexOf(".")));
+			long timestamp = getSegmentTimestamp(name, file.getName());
 			if (timestamp < from)
 				break;
 			if (timestamp >= from && timestamp <= to)
@@ -211,40 +1047,33 @@ public class MessageArchive implements AutoCloseable{
 		}
 		if (i >= 0)
 			resultSet.push(listOfFiles[i]);
-		
-		byte[] header = new byte[HEADER_SIZE];
-		while (!resultSet.isEmpty() && !outOfMemory) {
-			File file = resultSet.pop();
-			String fileName = file.getName();
-			String dataFileName = diskDirectory + fileName.substring(0, fileName.indexOf(".")) + ".iomsg";
-			try (RandomAccessFile indexFile = new RandomAccessFile(new File(diskDirectory + fileName), "r");
-				RandomAccessFile dataFile = new RandomAccessFile(new File(dataFileName), "r")){
-				long dataFileLength = dataFile.length();
-				while (indexFile.getFilePointer() < indexFile.length()) {
-					if (freeMemory() < 32 * Constants.MiB) {
-						outOfMemory = true;
-						break;
-					}
 
-					indexFile.read(header, 0, HEADER_SIZE);
-					if (((header[0] * 256) + header[1]) != 4)
-						throw new Exception("invalid index file format");
-					long dataPos = indexFile.readLong();
-					int dataSize = getDataSize(header);
-					if (dataPos + dataSize > dataFileLength || dataSize > dataFileLength)
-						throw new Exception("invalid data file format");
-					byte[] data = new byte[dataSize];
-					dataFile.read(data, 0, dataSize);
-					Message message = new Message(header, data);
-					if (message.getTimestamp() < from || message.getTimestamp() > to)
-						continue;
-					result.add(message);
-				}
-			} catch (Exception e) {
-				LoggingService.logError("Message Archive", e.getMessage(), e);
-			}
+		List<File> segments = new ArrayList<>();
+		while (!resultSet.isEmpty()) {
+			File file = resultSet.pop();
+			if (start == null || getSegmentTimestamp(name, file.getName()) >= start.getSegment())
+				segments.add(file);
 		}
-		
-		return result;
+		String activeSegment = segment != null ? new File(currentFileName).getName() : null;
+		openIterators.incrementAndGet();
+		return new MessageArchiveIterator(name, segments, activeSegment, segment != null ? segment.getMessageCount() : 0,
+				from, to, start, messageFilter, openIterators::decrementAndGet);
+	}
+
+	/**
+	 * creates lookup of {@link Message} sent by this {@link Microservice} by its ID
+	 * messages archived after this call are not looked up
+	 * 
+	 * @param id - ID of message
+	 * @return {@link MessageIdLookup}
+	 */
+	MessageIdLookup messageLookup(String id) {
+		List<File> segments = new ArrayList<>(Arrays.asList(listSegments()));
+		Collections.reverse(segments);
+		String activeSegment = segment != null ? new File(currentFileName).getName() : null;
+		int[] activeOffsets = segment != null ? idIndex.find(id) : null;
+		openIterators.incrementAndGet();
+		return new MessageIdLookup(name, segments, activeSegment, segment != null ? segment.getMessageCount() : 0,
+				activeOffsets, id, openIterators::decrementAndGet);
 	}
 }
@@ -0,0 +1,367 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Edgeworx, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ * Saeid Baghbidi
+ * Kilton Hopkins
+ *  Ashita Nagar
+ *******************************************************************************/
+package org.eclipse.iofog.message_bus;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.eclipse.iofog.utils.logging.LoggingService;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.eclipse.iofog.message_bus.MessageArchive.INDEX_RECORD_SIZE;
+import static org.eclipse.iofog.message_bus.MessageArchive.TIME_INDEX_INTERVAL;
+import static org.eclipse.iofog.message_bus.MessageArchive.TIME_INDEX_RECORD_SIZE;
+
+/**
+ * iterator of archived {@link Message} within a time frame
+ * 
+ * segments are read one at a time through memory mapping and messages are decoded as they
+ * are iterated, so memory use does not depend on the time frame. Segment being written when
+ * iterator was created is read up to the messages it had at that time, so that iterator does
+ * not need to hold the archive.
+ * a segment which can not be read is logged and skipped, and so is a record which fails its checksum
+ * or refers to data beyond end of segment, so that a corrupted record does not hide the rest of archive.
+ * position of the next message can be taken, so that a later iterator resumes there
+ * data of compressed segments is read through {@link CompressedSegment}, block by block as needed.
+ * messages can be filtered by tag, info type and info format. v5 segments whose dictionary
+ * tells they can not hold a match are skipped and other messages are only decoded if they match
+ * iterator has to be closed to release mapping of its current segment
+ * 
+ * @author saeid
+ *
+ */
+public final class MessageArchiveIterator implements Iterator<Message>, AutoCloseable {
+	private static final String MODULE_NAME = "MessageArchive";
+	private static final int HEADER_SIZE = MessageReader.HEADER_SIZE;
+
+	private final String name;
+	private final Deque<File> segments;
+	private final String activeSegment;
+	private final int activeMessageCount;
+	private final long from;
+	private final long to;
+	private final MessageArchivePosition start;
+	private final MessageFilter filter;
+	private Runnable onClose;
+
+	private MappedByteBuffer indexBuffer;
+	private MappedByteBuffer dataBuffer;
+	private MappedByteBuffer timeIndexBuffer;
+	private ByteBuf index;
+	private ByteBuf data;
+	private CompressedSegment compressedData;
+	private int blocks;
+	private int recordSize;
+	private MessageDictionary dictionary;
+	private MessageReader reader;
+	private long segmentTimestamp;
+	private int recordOffset;
+	private Message next;
+	private MessageArchivePosition nextPosition;
+
+	/**
+	 * @param name - name of archive
+	 * @param segments - index files of segments to be read, in order
+	 * @param activeSegment - name of index file of segment being written, null if there is none
+	 * @param activeMessageCount - number of messages in segment being written
+	 * @param from - beginning of time frame in milliseconds
+	 * @param to - end of time frame in milliseconds
+	 * @param start - position to resume at, null to read from the beginning of time frame
+	 * @param filter - {@link MessageFilter} of messages, null for all messages
+	 * @param onClose - called once iterator is closed, may be null
+	 */
+	MessageArchiveIterator(String name, List<File> segments, String activeSegment, int activeMessageCount,
+						   long from, long to, MessageArchivePosition start, MessageFilter filter, Runnable onClose) {
+		this.name = name;
+		this.segments = new ArrayDeque<>(segments);
+		this.activeSegment = activeSegment;
+		this.activeMessageCount = activeMessageCount;
+		this.from = from;
+		this.to = to;
+		this.start = start;
+		this.filter = filter;
+		this.onClose = onClose;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (next == null) {
+			if (index == null && !openNextSegment())
+				return false;
+			try {
+				next = reader != null ? readNextV4() : readNext();
+			} catch (Exception e) {
+				LoggingService.logError(MODULE_NAME, e.getMessage(), e);
+			}
+			if (next == null)
+				closeSegment();
+			else
+				nextPosition = new MessageArchivePosition(segmentTimestamp, recordOffset);
+		}
+		return true;
+	}
+
+	@Override
+	public Message next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		Message result = next;
+		next = null;
+		return result;
+	}
+
+	/**
+	 * @return position of the message to be returned by {@link #next()}, null if there is no more
+	 */
+	public MessageArchivePosition getPosition() {
+		return hasNext() ? nextPosition : null;
+	}
+
+	private boolean openNextSegment() {
+		while (!segments.isEmpty()) {
+			File file = segments.poll();
+			try {
+				if (openSegment(file))
+					return true;
+				closeSegment();
+			} catch (Exception e) {
+				LoggingService.logError(MODULE_NAME, e.getMessage(), e);
+				closeSegment();
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * maps files of segment and positions index at the first block of time index
+	 * which may hold messages within time frame, or at start position if it is later
+	 * 
+	 * @param file - index file of segment
+	 * @return false if segment is empty or can not hold messages matching filter
+	 * @throws Exception
+	 */
+	private boolean openSegment(File file) throws Exception {
+		String indexFileName = file.getPath();
+		// segment may have been removed by retention since iterator was created
+		if (!file.exists())
+			return false;
+		short version = MessageArchive.getSegmentVersion(file);
+		if (version == 0)
+			return false;
+
+		segmentTimestamp = MessageArchive.getSegmentTimestamp(name, file.getName());
+		indexBuffer = MessageArchive.map(file);
+		index = Unpooled.wrappedBuffer(indexBuffer);
+		File dataFile = new File(MessageArchive.getSegmentFileName(indexFileName, ".iomsg"));
+		if (!MessageArchive.isCompactSegment(version)) {
+			dataBuffer = MessageArchive.map(dataFile);
+			data = Unpooled.wrappedBuffer(dataBuffer);
+			reader = new MessageReader();
+			seek(0, HEADER_SIZE + Long.BYTES);
+			return true;
+		}
+
+		try {
+			dataBuffer = MessageArchive.map(dataFile);
+			data = Unpooled.wrappedBuffer(dataBuffer);
+		} catch (NoSuchFileException e) {
+			// sealed segment has been compressed
+			compressedData = new CompressedSegment(new File(MessageArchive.getSegmentFileName(indexFileName, ".iomsgz")));
+		}
+
+		try (RandomAccessFile dictionaryFile = new RandomAccessFile(new File(MessageArchive.getSegmentFileName(indexFileName, ".dict")), "r")) {
+			dictionary = MessageArchive.loadDictionary(dictionaryFile);
+		}
+		if (filter != null && filter.excludes(dictionary))
+			return false;
+		boolean active = file.getName().equals(activeSegment);
+		recordSize = MessageArchive.getIndexRecordSize(version);
+		int messageCount = active ? activeMessageCount : MessageArchive.getRecordCount(indexBuffer, recordSize);
+		index.writerIndex(Math.min(messageCount * recordSize, index.writerIndex() - index.writerIndex() % recordSize));
+
+		File timeIndexFile = new File(MessageArchive.getSegmentFileName(indexFileName, ".tidx"));
+		if (timeIndexFile.exists()) {
+			timeIndexBuffer = MessageArchive.map(timeIndexFile);
+			blocks = timeIndexBuffer.limit() / TIME_INDEX_RECORD_SIZE;
+			// record of the last block of segment being written may be rewritten meanwhile
+			if (active)
+				blocks = Math.min(blocks, messageCount / TIME_INDEX_INTERVAL);
+		}
+		seek((long) findFirstBlock(timeIndexBuffer, blocks, from) * TIME_INDEX_INTERVAL * recordSize, recordSize);
+		return true;
+	}
+
+	/**
+	 * positions index at offset or at start position if it is in this segment and later
+	 * 
+	 * @param offset - offset of index record
+	 * @param recordSize - size of index records of segment
+	 */
+	private void seek(long offset, int recordSize) {
+		if (start != null && start.getSegment() == segmentTimestamp && start.getOffset() > offset)
+			offset = start.getOffset() - start.getOffset() % recordSize;
+		index.readerIndex((int) Math.min(offset, index.writerIndex()));
+	}
+
+	/**
+	 * binary searches time index for the first block which may hold messages within time frame
+	 * maximum timestamps of time index records never decrease, even if timestamps of messages do
+	 * 
+	 * @param timeIndex - content of time index file
+	 * @param blocks - number of time index records
+	 * @param from - beginning of time frame in milliseconds
+	 * @return index of block, number of blocks if all of them are before time frame
+	 */
+	private static int findFirstBlock(ByteBuffer timeIndex, int blocks, long from) {
+		int low = 0;
+		int high = blocks;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (timeIndex.getLong(middle * TIME_INDEX_RECORD_SIZE + Long.BYTES) < from)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	/**
+	 * reads the next message of a v5 segment within the time frame which matches filter
+	 * blocks starting after time frame are skipped and other messages out of time frame
+	 * are skipped using timestamps of index records
+	 * 
+	 * @return {@link Message} or null if there is no more in segment
+	 * @throws Exception
+	 */
+	private Message readNext() throws Exception {
+		while (index.readableBytes() >= recordSize) {
+			int record = index.readerIndex() / recordSize;
+			int block = record / TIME_INDEX_INTERVAL;
+			if (record % TIME_INDEX_INTERVAL == 0 && block < blocks
+					&& timeIndexBuffer.getLong(block * TIME_INDEX_RECORD_SIZE) > to) {
+				index.skipBytes(Math.min(TIME_INDEX_INTERVAL * recordSize, index.readableBytes()));
+				continue;
+			}
+
+			recordOffset = index.readerIndex();
+			short version = index.readShort();
+			long timestamp = index.readLong();
+			long dataPos = index.readLong();
+			int dataSize = index.readInt();
+			int checksum = recordSize == INDEX_RECORD_SIZE ? index.readInt() : 0;
+			if (version != MessageArchive.SEGMENT_VERSION && version != CompactMessageCodec.VERSION
+					|| dataPos < 0 || dataSize < 0 || dataPos + dataSize > getDataSize()) {
+				skipCorruptedRecord();
+				continue;
+			}
+			if (timestamp < from || timestamp > to)
+				continue;
+			ByteBuf message = readData(dataPos, dataSize);
+			if (recordSize == INDEX_RECORD_SIZE && MessageArchive.checksum(index, recordOffset, message) != checksum) {
+				skipCorruptedRecord();
+				continue;
+			}
+			try {
+				if (filter != null && !CompactMessageCodec.matches(message.duplicate(), dictionary, filter))
+					continue;
+				return CompactMessageCodec.read(message, dictionary);
+			} catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+				// record of a segment without checksums may refer to garbage
+				skipCorruptedRecord();
+			}
+		}
+		return null;
+	}
+
+	private void skipCorruptedRecord() {
+		LoggingService.logWarning(MODULE_NAME, "skipping corrupted record at " + recordOffset + " of segment " + name + "_" + segmentTimestamp);
+	}
+
+	/**
+	 * reads the next message of a v4 segment within the time frame which matches filter
+	 * a corrupted record is skipped like in v5 segments, as records have fixed size
+	 * 
+	 * @return {@link Message} or null if there is no more in segment
+	 * @throws Exception
+	 */
+	private Message readNextV4() throws Exception {
+		while (index.readableBytes() >= HEADER_SIZE + Long.BYTES) {
+			recordOffset = index.readerIndex();
+			byte[] header = new byte[HEADER_SIZE];
+			index.readBytes(header);
+			long dataPos = index.readLong();
+			int dataSize = reader.wrap(header, null).getDataSize();
+			if (reader.getVersion() != MessageReader.VERSION || dataPos < 0 || dataSize < 0
+					|| dataPos + dataSize > data.capacity()) {
+				skipCorruptedRecord();
+				continue;
+			}
+			byte[] bytes = new byte[dataSize];
+			data.getBytes((int) dataPos, bytes);
+			Message message = new Message(reader.wrap(header, bytes));
+			if (message.getTimestamp() >= from && message.getTimestamp() <= to
+					&& (filter == null || filter.matches(message)))
+				return message;
+		}
+		return null;
+	}
+
+	private long getDataSize() {
+		return compressedData != null ? compressedData.getDataSize() : data.capacity();
+	}
+
+	private ByteBuf readData(long position, int size) throws Exception {
+		return compressedData != null ? compressedData.read(position, size) : data.slice((int) position, size);
+	}
+
+	private void closeSegment() {
+		if (compressedData != null)
+			compressedData.close();
+		compressedData = null;
+		MessageArchive.unmap(indexBuffer);
+		MessageArchive.unmap(dataBuffer);
+		MessageArchive.unmap(timeIndexBuffer);
+		indexBuffer = null;
+		dataBuffer = null;
+		timeIndexBuffer = null;
+		index = null;
+		data = null;
+		blocks = 0;
+		dictionary = null;
+		reader = null;
+	}
+
+	/**
+	 * releases mapping of current segment, iterator has no more messages afterwards
+	 */
+	@Override
+	public void close() {
+		closeSegment();
+		segments.clear();
+		next = null;
+		nextPosition = null;
+		if (onClose != null) {
+			onClose.run();
+			onClose = null;
+		}
+	}
+}
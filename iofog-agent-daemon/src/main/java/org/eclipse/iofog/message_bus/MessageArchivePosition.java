@@ -0,0 +1,38 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Edgeworx, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ * Saeid Baghbidi
+ * Kilton Hopkins
+ *  Ashita Nagar
+ *******************************************************************************/
+package org.eclipse.iofog.message_bus;
+
+/**
+ * position of a message in {@link MessageArchive}, so that reading can be resumed there
+ * segment is told by its timestamp and message by offset of its index record
+ * 
+ * @author saeid
+ *
+ */
+public final class MessageArchivePosition {
+	private final long segment;
+	private final int offset;
+
+	public MessageArchivePosition(long segment, int offset) {
+		this.segment = segment;
+		this.offset = offset;
+	}
+
+	public long getSegment() {
+		return segment;
+	}
+
+	public int getOffset() {
+		return offset;
+	}
+}
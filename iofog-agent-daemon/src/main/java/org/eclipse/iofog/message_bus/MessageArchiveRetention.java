@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Edgeworx, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ * Saeid Baghbidi
+ * Kilton Hopkins
+ *  Ashita Nagar
+ *******************************************************************************/
+package org.eclipse.iofog.message_bus;
+
+import org.eclipse.iofog.utils.configuration.Configuration;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * frees disk space of message archives when disk consumption limit is exceeded
+ * 
+ * segments are removed from the largest archive first, so that a single busy publisher gives up
+ * its history before others lose theirs. Segments of publishers are removed through their
+ * {@link MessagePublisher}, so that segments being written are kept, and archives which have
+ * no publisher anymore are removed directly.
+ * 
+ * @author saeid
+ *
+ */
+final class MessageArchiveRetention {
+	private static final int MAXIMUM_REMOVALS = 64;
+
+	private MessageArchiveRetention() {
+	}
+
+	/**
+	 * removes segments until amount of disk space is freed or a few of them are removed,
+	 * so that space is freed incrementally
+	 * 
+	 * @param amount - disk space to be freed in bytes
+	 * @param publishers - {@link MessagePublisher} by name of their archives
+	 * @return number of freed bytes
+	 */
+	static long releaseSpace(long amount, Map<String, MessagePublisher> publishers) {
+		File[] files = new File(Configuration.getDiskDirectory() + "messages/archive/").listFiles((dir, fileName) ->
+				fileName.indexOf('_') > 0 && fileName.substring(fileName.indexOf(".")).equals(".idx"));
+		if (files == null)
+			return 0;
+		Arrays.sort(files);
+
+		Map<String, Deque<File>> segments = new HashMap<>();
+		Map<String, Long> sizes = new HashMap<>();
+		for (File file : files) {
+			String name = file.getName().substring(0, file.getName().lastIndexOf('_'));
+			segments.computeIfAbsent(name, key -> new ArrayDeque<>()).add(file);
+			sizes.merge(name, MessageArchive.getSegmentSize(file), Long::sum);
+		}
+
+		long freed = 0;
+		for (int removals = 0; freed < amount && removals < MAXIMUM_REMOVALS && !sizes.isEmpty(); removals++) {
+			String name = sizes.entrySet().stream().max(Map.Entry.comparingByValue()).get().getKey();
+			MessagePublisher publisher = publishers.get(name);
+			File oldest = segments.get(name).poll();
+			long size = publisher != null ? publisher.removeOldestArchiveSegment() : MessageArchive.deleteSegment(oldest);
+			if (size == 0 || segments.get(name).isEmpty()) {
+				sizes.remove(name);
+			} else {
+				sizes.put(name, sizes.get(name) - size);
+			}
+			freed += size;
+		}
+		return freed;
+	}
+}
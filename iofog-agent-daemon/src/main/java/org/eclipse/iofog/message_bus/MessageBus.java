@@ -24,9 +24,13 @@ import org.eclipse.iofog.utils.configuration.Configuration;
 import org.eclipse.iofog.utils.logging.LoggingService;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import static org.eclipse.iofog.utils.Constants.MESSAGE_BUS;
@@ -42,6 +46,8 @@ import static org.eclipse.iofog.utils.logging.LoggingService.logError;
 public class MessageBus implements IOFogModule {
 	
 	final static String MODULE_NAME = "Message Bus";
+	private static final long ARCHIVE_IDLE_WAIT_MILLIS = 10;
+	private static final long ARCHIVE_RETENTION_INTERVAL_MILLIS = 10_000;
 
 	private MessageBusServer messageBusServer;
 	private Map<String, Route> routes;
@@ -51,6 +57,7 @@ public class MessageBus implements IOFogModule {
 	private static MessageBus instance;
 	private MicroserviceManager microserviceManager;
 	private final Object updateLock = new Object();
+	private final AtomicLong archiveSpaceToRelease = new AtomicLong();
 	
 	private long lastSpeedTime, lastSpeedMessageCount;
 
@@ -132,24 +139,42 @@ public class MessageBus implements IOFogModule {
 						logError(MODULE_NAME,
 								new AgentSystemException("unable to start publisher module :" + publisher, e));
 					}
-					publishers.put(publisher, new MessagePublisher(publisher, route, messageBusServer.getProducer(publisher)));
-
-					receivers.putAll(entry.getValue().getReceivers()
-							.stream()
-							.filter(item -> !receivers.containsKey(item))
-							.collect(Collectors.toMap(item -> item, item -> {
-								try {
-									messageBusServer.createConsumer(item);
-								} catch (Exception e) {
-									logError(MODULE_NAME,
-											new AgentSystemException("unable to start receiver module" + item, e));
-								}
-								return new MessageReceiver(item, messageBusServer.getConsumer(item));
-							})));
+					publishers.put(publisher, new MessagePublisher(publisher, route, messageBusServer, messageBusServer.getProducer(publisher),
+							messageBusServer.getProducerSession(publisher)));
+
+					route.getReceivers()
+							.forEach(item -> subscribe(receivers.computeIfAbsent(item, MessageReceiver::new), publisher));
 			});
 		logInfo("Finished initialization of message bus publisher and receiver");
 
 	}
+
+	/**
+	 * subscribes receiver {@link Microservice} to messages of a publisher {@link Microservice}
+	 * 
+	 * @param receiver - {@link MessageReceiver}
+	 * @param publisher - ID of publisher {@link Microservice}
+	 */
+	private void subscribe(MessageReceiver receiver, String publisher) {
+		try {
+			messageBusServer.createConsumer(publisher, receiver.getName());
+			receiver.addConsumer(publisher, messageBusServer.getConsumer(publisher, receiver.getName()));
+		} catch (Exception e) {
+			logError(MODULE_NAME,
+					new AgentSystemException("unable to start receiver module " + receiver.getName() + " for " + publisher, e));
+		}
+	}
+
+	/**
+	 * removes subscription of receiver {@link Microservice} to messages of a publisher {@link Microservice}
+	 * 
+	 * @param receiver - {@link MessageReceiver}
+	 * @param publisher - ID of publisher {@link Microservice}
+	 */
+	private void unsubscribe(MessageReceiver receiver, String publisher) {
+		receiver.removeConsumer(publisher);
+		messageBusServer.removeConsumer(publisher, receiver.getName());
+	}
 	
 	/**
 	 * calculates the average speed of {@link Message} moving through ioFog
@@ -178,6 +203,62 @@ public class MessageBus implements IOFogModule {
 		}
 	};
 	
+	/**
+	 * writes messages queued by publishers to their archives
+	 * 
+	 */
+	private final Runnable archiveMessages = () -> {
+		while (true) {
+			try {
+				int archived = 0;
+				for (MessagePublisher publisher : publishers.values())
+					archived += publisher.archivePending();
+				if (archived == 0)
+					Thread.sleep(ARCHIVE_IDLE_WAIT_MILLIS);
+			} catch (Exception exp) {
+				logError(MODULE_NAME,
+						new AgentSystemException("unable to archive messages", exp));
+			}
+		}
+	};
+	
+	/**
+	 * enforces retention quotas of archives and frees disk space requested by
+	 * {@link #releaseArchiveSpace(long)}, a few segments per round
+	 * 
+	 */
+	private final Runnable enforceArchiveRetention = () -> {
+		while (true) {
+			try {
+				Thread.sleep(ARCHIVE_RETENTION_INTERVAL_MILLIS);
+
+				long maximumSize = (long) Configuration.getArchiveRetentionSize() * Constants.MiB;
+				long maximumAge = Configuration.getArchiveRetentionAge() * 3_600_000L;
+				for (MessagePublisher publisher : publishers.values())
+					publisher.enforceRetention(maximumSize, maximumAge);
+
+				long amount = archiveSpaceToRelease.get();
+				if (amount > 0) {
+					long freed = MessageArchiveRetention.releaseSpace(amount, publishers);
+					archiveSpaceToRelease.compareAndSet(amount, freed > 0 ? Math.max(amount - freed, 0) : 0);
+				}
+			} catch (Exception exp) {
+				logError(MODULE_NAME,
+						new AgentSystemException("unable to enforce archive retention", exp));
+			}
+		}
+	};
+
+	/**
+	 * requests disk space to be freed by removing the oldest segments of the largest archives
+	 * space is freed in background, a later request replaces the pending one
+	 * 
+	 * @param amount - disk space to be freed in bytes
+	 */
+	public void releaseArchiveSpace(long amount) {
+		archiveSpaceToRelease.set(amount);
+	}
+
 	/**
 	 * monitors ActiveMQ server
 	 * 
@@ -212,7 +293,8 @@ public class MessageBus implements IOFogModule {
 						} else {
 							try {
 								messageBusServer.createProducer(publisher);
-								publishers.put(publisher, new MessagePublisher(publisher, route, messageBusServer.getProducer(publisher)));
+								publishers.put(publisher, new MessagePublisher(publisher, route, messageBusServer, messageBusServer.getProducer(publisher),
+										messageBusServer.getProducerSession(publisher)));
 								logInfo("Producer module restarted");
 							} catch (Exception e) {
 								logError("", new AgentSystemException("Unable to restart producer module for " + publisher, e));
@@ -221,19 +303,13 @@ public class MessageBus implements IOFogModule {
 					}
 				});
 
-				receivers.forEach((receiver, value) -> {
-					if (messageBusServer.isConsumerClosed(receiver)) {
+				receivers.forEach((receiver, value) -> new ArrayList<>(value.getPublishers()).forEach(publisher -> {
+					if (messageBusServer.isConsumerClosed(publisher, receiver)) {
 						logWarning("Consumer module for " + receiver + " stopped. restarting...");
-						value.close();
-						try {
-							messageBusServer.createConsumer(receiver);
-							receivers.put(receiver, new MessageReceiver(receiver, messageBusServer.getConsumer(receiver)));
-							logInfo("Consumer module restarted");
-						} catch (Exception e) {
-							logError("", new AgentSystemException("Unable to restart consumer module for " + receiver, e));
-						}
+						subscribe(value, publisher);
+						logInfo("Consumer module restarted");
 					}
-				});
+				}));
 			} catch (Exception exp) {
 				logError("", new AgentSystemException("Error Checking message bus server status", exp));
 			}
@@ -251,7 +327,7 @@ public class MessageBus implements IOFogModule {
 		synchronized (updateLock) {
 			Map<String, Route> newRoutes = microserviceManager.getRoutes();
 			List<String> newPublishers = new ArrayList<>();
-			List<String> newReceivers = new ArrayList<>();
+			Map<String, Set<String>> newSubscriptions = new HashMap<>();
 			
 			newRoutes.entrySet()
 					.stream()
@@ -259,9 +335,8 @@ public class MessageBus implements IOFogModule {
 					.filter(route -> route.getValue().getReceivers() != null)
 					.forEach(entry -> {
 						newPublishers.add(entry.getKey());
-						newReceivers.addAll(entry.getValue().getReceivers()
-								.stream().filter(item -> !newReceivers.contains(item))
-								.collect(Collectors.toList()));
+						entry.getValue().getReceivers()
+								.forEach(item -> newSubscriptions.computeIfAbsent(item, key -> new HashSet<>()).add(entry.getKey()));
 					});
 
 			publishers.forEach((key, value) -> {
@@ -277,20 +352,29 @@ public class MessageBus implements IOFogModule {
 					newPublishers.stream()
 					.filter(publisher -> !publishers.containsKey(publisher))
 					.collect(Collectors.toMap(publisher -> publisher, 
-							publisher -> new MessagePublisher(publisher, newRoutes.get(publisher), messageBusServer.getProducer(publisher)))));
+							publisher -> new MessagePublisher(publisher, newRoutes.get(publisher), messageBusServer, messageBusServer.getProducer(publisher),
+									messageBusServer.getProducerSession(publisher)))));
 
 			receivers.forEach((key, value) -> {
-				if (!newReceivers.contains(key)) {
+				Set<String> subscribed = newSubscriptions.get(key);
+				if (subscribed == null) {
+					List<String> oldPublishers = new ArrayList<>(value.getPublishers());
 					value.close();
-					messageBusServer.removeConsumer(key);
+					oldPublishers.forEach(publisher -> messageBusServer.removeConsumer(publisher, key));
+					StatusReporter.setMessageBusStatus().removeReceiver(key);
+				} else {
+					new ArrayList<>(value.getPublishers()).stream()
+							.filter(publisher -> !subscribed.contains(publisher))
+							.forEach(publisher -> unsubscribe(value, publisher));
 				}
 			});
-			receivers.entrySet().removeIf(entry -> !newReceivers.contains(entry.getKey()));
-			receivers.putAll(
-					newReceivers.stream()
-					.filter(receiver -> !receivers.containsKey(receiver))
-					.collect(Collectors.toMap(receiver -> receiver, 
-							receiver -> new MessageReceiver(receiver, messageBusServer.getConsumer(receiver)))));
+			receivers.entrySet().removeIf(entry -> !newSubscriptions.containsKey(entry.getKey()));
+			newSubscriptions.forEach((key, subscribed) -> {
+				MessageReceiver receiver = receivers.computeIfAbsent(key, MessageReceiver::new);
+				subscribed.stream()
+						.filter(publisher -> !receiver.getPublishers().contains(publisher))
+						.forEach(publisher -> subscribe(receiver, publisher));
+			});
 
 			routes = newRoutes;
 
@@ -307,7 +391,7 @@ public class MessageBus implements IOFogModule {
 	}
 	
 	/**
-	 * sets  memory usage limit of ActiveMQ
+	 * sets  memory usage limit and address full policy of ActiveMQ
 	 * {@link Configuration} calls this method when any changes applied
 	 * 
 	 */
@@ -345,6 +429,8 @@ public class MessageBus implements IOFogModule {
 
 		new Thread(calculateSpeed, Constants.MESSAGE_BUS_CALCULATE_SPEED).start();
 		new Thread(checkMessageServerStatus, Constants.MESSAGE_BUS_CHECK_MESSAGE_SERVER_STATUS).start();
+		new Thread(archiveMessages, Constants.MESSAGE_BUS_ARCHIVE_MESSAGES).start();
+		new Thread(enforceArchiveRetention, Constants.MESSAGE_BUS_ARCHIVE_RETENTION).start();
 	}
 	
 	/**
@@ -391,7 +477,7 @@ public class MessageBus implements IOFogModule {
 	 * 
 	 * @return
 	 */
-	public synchronized String getNextId() {
+	public String getNextId() {
 		return idGenerator.getNextId();
 	}
 	
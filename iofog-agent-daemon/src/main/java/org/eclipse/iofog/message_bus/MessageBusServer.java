@@ -13,33 +13,58 @@
 package org.eclipse.iofog.message_bus;
 
 import org.apache.activemq.artemis.api.core.ActiveMQException;
+import org.apache.activemq.artemis.api.core.RoutingType;
 import org.apache.activemq.artemis.api.core.SimpleString;
 import org.apache.activemq.artemis.api.core.TransportConfiguration;
 import org.apache.activemq.artemis.api.core.client.*;
 import org.apache.activemq.artemis.core.config.impl.ConfigurationImpl;
+import org.apache.activemq.artemis.core.paging.PagingStore;
 import org.apache.activemq.artemis.core.remoting.impl.invm.InVMAcceptorFactory;
 import org.apache.activemq.artemis.core.remoting.impl.invm.InVMConnectorFactory;
 import org.apache.activemq.artemis.core.remoting.impl.netty.NettyAcceptorFactory;
 import org.apache.activemq.artemis.core.remoting.impl.netty.TransportConstants;
 import org.apache.activemq.artemis.core.server.ActiveMQServer;
 import org.apache.activemq.artemis.core.server.JournalType;
+import org.apache.activemq.artemis.core.server.MessageReference;
+import org.apache.activemq.artemis.core.server.Queue;
+import org.apache.activemq.artemis.core.server.ServerConsumer;
 import org.apache.activemq.artemis.core.server.embedded.EmbeddedActiveMQ;
+import org.apache.activemq.artemis.core.server.impl.AckReason;
+import org.apache.activemq.artemis.core.server.plugin.ActiveMQServerPlugin;
 import org.apache.activemq.artemis.core.settings.impl.AddressFullMessagePolicy;
 import org.apache.activemq.artemis.core.settings.impl.AddressSettings;
 import org.eclipse.iofog.exception.AgentSystemException;
 import org.eclipse.iofog.microservice.Microservice;
+import org.eclipse.iofog.status_reporter.StatusReporter;
 import org.eclipse.iofog.utils.Constants;
 import org.eclipse.iofog.utils.configuration.Configuration;
 import org.eclipse.iofog.utils.logging.LoggingService;
 
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * ActiveMQ server
  * 
+ * every publisher sends to its own multicast address and every receiver of the publisher
+ * has a subscription queue bound to that address, so a message is sent once and
+ * the broker routes a reference of it to each subscription queue
+ * 
+ * every producer and consumer has its own {@link ClientSession}, so publishers and receivers
+ * do not contend with each other. the shared session guarded by messageBusSessionLock
+ * is only used for management of addresses and queues and for command line messages
+ * 
+ * subscription queues have no filters, so routing a message costs one reference per queue.
+ * a publisher skips a message for a receiver whose queue is full by listing the queues
+ * of the other receivers in its route, see {@link #setRouteToQueues}
+ * 
+ * expired messages are dropped from subscription queues without being delivered, either
+ * on delivery or by periodic expiry scan of the broker, and counted per receiver
+ * 
  * @author saeid
  *
  */
@@ -47,6 +72,7 @@ public class MessageBusServer {
 
 	public static final Object messageBusSessionLock = new Object();
 	private static final String MODULE_NAME = "Message Bus Server";
+	private static final long MESSAGE_EXPIRY_SCAN_MILLIS = 10_000;
 	private ClientSessionFactory sf;
 	private ActiveMQServer server;
 	private static ClientSession messageBusSession;
@@ -54,6 +80,8 @@ public class MessageBusServer {
 	private static ClientProducer commandlineProducer;
 	private Map<String, ClientConsumer> consumers;
 	private Map<String, ClientProducer> producers;
+	private final Map<String, ClientSession> consumerSessions = new ConcurrentHashMap<>();
+	private final Map<String, ClientSession> producerSessions = new ConcurrentHashMap<>();
 	private ServerLocator serverLocator;
 	
 	boolean isServerActive() {
@@ -67,16 +95,81 @@ public class MessageBusServer {
 	}
 	
 	boolean isProducerClosed(String name) {
-		synchronized (messageBusSessionLock) {
-			ClientProducer producer = producers.get(name);
-			return producer == null || producer.isClosed();
-		}
+		ClientProducer producer = producers.get(name);
+		return producer == null || producer.isClosed();
 	}
 	
-	boolean isConsumerClosed(String name) {
-		synchronized (messageBusSessionLock) {
-			ClientConsumer consumer = consumers.get(name);
-			return consumer == null || consumer.isClosed();
+	boolean isConsumerClosed(String publisher, String receiver) {
+		ClientConsumer consumer = consumers == null ? null : consumers.get(getSubscriptionQueue(publisher, receiver));
+		return consumer == null || consumer.isClosed();
+	}
+
+	/**
+	 * returns multicast address to which a publisher sends its messages
+	 * 
+	 * @param publisher - ID of {@link Microservice}
+	 * @return address
+	 */
+	static String getPublisherAddress(String publisher) {
+		return Constants.ADDRESS + "." + publisher;
+	}
+
+	/**
+	 * returns name of the queue which holds messages of a publisher for a receiver
+	 * 
+	 * @param publisher - ID of publisher {@link Microservice}
+	 * @param receiver - ID of receiver {@link Microservice}
+	 * @return queue name
+	 */
+	static String getSubscriptionQueue(String publisher, String receiver) {
+		return getPublisherAddress(publisher) + "." + receiver;
+	}
+
+	/**
+	 * makes broker route a message only to given queues of the address it is sent to,
+	 * instead of all of them. broker removes the list before the message is queued
+	 * 
+	 * @param message - {@link ClientMessage} to be sent
+	 * @param queues - subscription queues to route message to
+	 */
+	static void setRouteToQueues(ClientMessage message, List<Queue> queues) {
+		ByteBuffer ids = ByteBuffer.allocate(queues.size() * Long.BYTES);
+		queues.forEach(queue -> ids.putLong(queue.getID()));
+		message.putBytesProperty(org.apache.activemq.artemis.api.core.Message.HDR_ROUTE_TO_IDS, ids.array());
+	}
+
+	/**
+	 * creates multicast address of a publisher if it does not exist
+	 * 
+	 * @param publisher - ID of {@link Microservice}
+	 * @throws Exception
+	 */
+	private void createPublisherAddress(String publisher) throws Exception {
+		SimpleString address = new SimpleString(getPublisherAddress(publisher));
+		if (!messageBusSession.addressQuery(address).isExists())
+			messageBusSession.createAddress(address, RoutingType.MULTICAST, false);
+	}
+	
+	/**
+	 * creates a new {@link ClientSession} for a single producer or consumer
+	 * 
+	 * @return started {@link ClientSession}
+	 * @throws Exception
+	 */
+	private ClientSession createSession() throws Exception {
+		ClientSession session = sf.createSession(true, true, 0);
+		session.start();
+		return session;
+	}
+
+	private void closeSession(ClientSession session) {
+		if (session == null)
+			return;
+		try {
+			session.close();
+		} catch (ActiveMQException e) {
+			LoggingService.logError(MODULE_NAME, "Unable to close session",
+					new AgentSystemException(e.getMessage(), e));
 		}
 	}
 	
@@ -87,10 +180,6 @@ public class MessageBusServer {
 	 */
 	void startServer() throws Exception {
 		LoggingService.logInfo(MODULE_NAME, "starting server");
-		AddressSettings addressSettings = new AddressSettings();
-		long memoryLimit = (long) (Configuration.getMemoryLimit() * 1_000_000);
-		addressSettings.setMaxSizeBytes(memoryLimit);
-		addressSettings.setAddressFullMessagePolicy(AddressFullMessagePolicy.DROP);
 		String workingDirectory = Configuration.getDiskDirectory();
 
         org.apache.activemq.artemis.core.config.Configuration configuration = new ConfigurationImpl();
@@ -102,7 +191,20 @@ public class MessageBusServer {
 		configuration.setPersistenceEnabled(false);
         configuration.setSecurityEnabled(false);
         configuration.setPagingDirectory(workingDirectory + "messages/paging");
-        configuration.getAddressesSettings().put(Constants.ADDRESS, addressSettings);
+        configuration.getAddressesSettings().put(Constants.ADDRESS + ".#", createAddressSettings());
+        configuration.setMessageExpiryScanPeriod(MESSAGE_EXPIRY_SCAN_MILLIS);
+        configuration.registerBrokerPlugin(new ActiveMQServerPlugin() {
+            @Override
+            public void messageAcknowledged(MessageReference message, AckReason reason, ServerConsumer consumer) {
+                // expired messages are acknowledged with EXPIRED reason, both on delivery and by expiry scan
+                if (reason != AckReason.EXPIRED)
+                    return;
+                // subscription queue is named after publisher address and receiver
+                String queue = message.getQueue().getName().toString();
+                if (queue.startsWith(Constants.ADDRESS + "."))
+                    StatusReporter.setMessageBusStatus().increaseExpiredMessages(queue.substring(queue.lastIndexOf('.') + 1));
+            }
+        });
         
 		Map<String, Object> connectionParams = new HashMap<>();
 		connectionParams.put(TransportConstants.PORT_PROP_NAME, 55555);
@@ -137,13 +239,9 @@ public class MessageBusServer {
 		LoggingService.logInfo(MODULE_NAME, "starting initialization");
 		synchronized (messageBusSessionLock) {
 			messageBusSession = sf.createSession(true, true, 0);
-			ClientSession.QueueQuery queueQuery = messageBusSession.queueQuery(new SimpleString(Constants.ADDRESS));
-			if (queueQuery.isExists())
-				messageBusSession.deleteQueue(Constants.ADDRESS);
-			queueQuery = messageBusSession.queueQuery(new SimpleString(Constants.COMMAND_LINE_ADDRESS));
+			ClientSession.QueueQuery queueQuery = messageBusSession.queueQuery(new SimpleString(Constants.COMMAND_LINE_ADDRESS));
 			if (queueQuery.isExists())
 				messageBusSession.deleteQueue(Constants.COMMAND_LINE_ADDRESS);
-			messageBusSession.createQueue(Constants.ADDRESS, Constants.ADDRESS, false);
 			messageBusSession.createQueue(Constants.COMMAND_LINE_ADDRESS, Constants.COMMAND_LINE_ADDRESS, false);
 
 			commandlineProducer = messageBusSession.createProducer(Constants.COMMAND_LINE_ADDRESS);
@@ -156,56 +254,119 @@ public class MessageBusServer {
 	}
 	
 	/**
-	 * creates a new {@link ClientConsumer} for receiver {@link Microservice}
+	 * creates subscription queue of a receiver {@link Microservice} on address of
+	 * a publisher {@link Microservice} and a new {@link ClientConsumer} for it
 	 * 
-	 * @param name - ID of {@link Microservice}
+	 * @param publisher - ID of publisher {@link Microservice}
+	 * @param receiver - ID of receiver {@link Microservice}
 	 * @throws Exception
 	 */
-	void createConsumer(String name) throws Exception {
+	void createConsumer(String publisher, String receiver) throws Exception {
 		LoggingService.logInfo(MODULE_NAME, "Starting create consumer");
 		if (consumers == null) {
 			consumers = new ConcurrentHashMap<>();
 		}
 
-		ClientConsumer consumer;
+		String queueName = getSubscriptionQueue(publisher, receiver);
+		SimpleString queue = new SimpleString(queueName);
 		synchronized (messageBusSessionLock) {
-			consumer = messageBusSession.createConsumer(Constants.ADDRESS, String.format("receiver = '%s'", name));
+			createPublisherAddress(publisher);
+			if (!messageBusSession.queueQuery(queue).isExists())
+				messageBusSession.createQueue(new SimpleString(getPublisherAddress(publisher)), RoutingType.MULTICAST, queue, false);
+		}
+		ClientSession session = createSession();
+		ClientConsumer consumer;
+		try {
+			consumer = session.createConsumer(queue);
+		} catch (Exception e) {
+			closeSession(session);
+			throw e;
 		}
-		consumers.put(name, consumer);
+		consumers.put(queueName, consumer);
+		closeSession(consumerSessions.put(queueName, session));
 		LoggingService.logInfo(MODULE_NAME, "Finished create consumer");
 	}
 	
 	/**
-	 * returns {@link ClientConsumer} of a receiver {@link Microservice}
+	 * returns {@link ClientConsumer} of a receiver {@link Microservice} for messages of a publisher
 	 * 
-	 * @param receiver - ID of {@link Microservice}
+	 * @param publisher - ID of publisher {@link Microservice}
+	 * @param receiver - ID of receiver {@link Microservice}
 	 * @return {@link ClientConsumer}
 	 */
-	ClientConsumer getConsumer(String receiver) {
+	ClientConsumer getConsumer(String publisher, String receiver) {
 		LoggingService.logInfo(MODULE_NAME, "Start get consumer");
-		if (consumers == null || !consumers.containsKey(receiver))
+		String queueName = getSubscriptionQueue(publisher, receiver);
+		if (consumers == null || !consumers.containsKey(queueName))
 			try {
-				createConsumer(receiver);
+				createConsumer(publisher, receiver);
 			} catch (Exception e) {
 				return null;
 			}
 		LoggingService.logInfo(MODULE_NAME, "Finished get consumer");
-		return consumers.get(receiver);
+		return consumers.get(queueName);
 	}
 	
 	/**
-	 * removes {@link ClientConsumer} when a receiver {@link Microservice} has been removed
+	 * removes {@link ClientConsumer} and subscription queue when a route has been removed
+	 * consumer must be closed before
 	 * 
-	 * @param name - ID of {@link Microservice}
+	 * @param publisher - ID of publisher {@link Microservice}
+	 * @param receiver - ID of receiver {@link Microservice}
 	 */
-	void removeConsumer(String name) {
+	void removeConsumer(String publisher, String receiver) {
 		LoggingService.logInfo(MODULE_NAME, "Start remove consumer");
 		if (consumers == null)
 			return;
+		String queueName = getSubscriptionQueue(publisher, receiver);
+		consumers.remove(queueName);
+		closeSession(consumerSessions.remove(queueName));
+		try {
+			synchronized (messageBusSessionLock) {
+				if (messageBusSession.queueQuery(new SimpleString(queueName)).isExists())
+					messageBusSession.deleteQueue(queueName);
+			}
+		} catch (Exception e) {
+			LoggingService.logError(MODULE_NAME, "Unable to delete subscription queue " + queueName,
+					new AgentSystemException(e.getMessage(), e));
+		}
 		LoggingService.logInfo(MODULE_NAME, "Finished remove consumer");
-		consumers.remove(name);
 	}
 	
+	/**
+	 * returns subscription queue of a receiver {@link Microservice} on address of a publisher
+	 * 
+	 * @param publisher - ID of publisher {@link Microservice}
+	 * @param receiver - ID of receiver {@link Microservice}
+	 * @return {@link Queue}, null if there is no such queue
+	 */
+	Queue locateSubscriptionQueue(String publisher, String receiver) {
+		return server.locateQueue(new SimpleString(getSubscriptionQueue(publisher, receiver)));
+	}
+
+	/**
+	 * makes address of a publisher {@link Microservice} page its messages to disk
+	 * until its subscription queues are drained
+	 * 
+	 * @param publisher - ID of {@link Microservice}
+	 * @throws Exception
+	 */
+	void startPaging(String publisher) throws Exception {
+		PagingStore store = server.getPagingManager().getPageStore(new SimpleString(getPublisherAddress(publisher)));
+		if (store != null)
+			store.startPaging();
+	}
+
+	/**
+	 * @param publisher - ID of {@link Microservice}
+	 * @return true if address of a publisher {@link Microservice} is paging its messages to disk
+	 * @throws Exception
+	 */
+	boolean isPaging(String publisher) throws Exception {
+		PagingStore store = server.getPagingManager().getPageStore(new SimpleString(getPublisherAddress(publisher)));
+		return store != null && store.isPaging();
+	}
+
 	/**
 	 * creates a new {@link ClientProducer} for publisher {@link Microservice}
 	 * 
@@ -217,12 +378,21 @@ public class MessageBusServer {
 		if (producers == null) {
 			producers = new ConcurrentHashMap<>();
 		}
-		ClientProducer producer;
 		synchronized (messageBusSessionLock) {
-			producer = messageBusSession.createProducer(Constants.ADDRESS);
+			createPublisherAddress(name);
+		}
+		ClientSession session = createSession();
+		ClientProducer producer;
+		try {
+			producer = session.createProducer(getPublisherAddress(name));
+		} catch (Exception e) {
+			closeSession(session);
+			throw e;
 		}
 		LoggingService.logInfo(MODULE_NAME, "Finish create Producer");
 		producers.put(name, producer);
+		closeSession(producerSessions.put(name, session));
+		setMemoryLimit();
 	}
 	
 	/**
@@ -253,8 +423,20 @@ public class MessageBusServer {
 		if (producers == null)
 			return;
 		producers.remove(name);
+		closeSession(producerSessions.remove(name));
+		setMemoryLimit();
 		LoggingService.logInfo(MODULE_NAME, "Finish remove Producer");
 	}
+
+	/**
+	 * returns {@link ClientSession} of producer of a publisher {@link Microservice}
+	 * 
+	 * @param publisher - ID of {@link Microservice}
+	 * @return {@link ClientSession}
+	 */
+	ClientSession getProducerSession(String publisher) {
+		return producerSessions.get(publisher);
+	}
 	
 	static ClientSession getSession() {
 		return messageBusSession;
@@ -290,6 +472,10 @@ public class MessageBusServer {
 							new AgentSystemException(e.getMessage(), e));
 				}
 			});
+		consumerSessions.values().forEach(this::closeSession);
+		consumerSessions.clear();
+		producerSessions.values().forEach(this::closeSession);
+		producerSessions.clear();
 		if (serverLocator != null)
 			serverLocator.close();
 		if (sf != null)
@@ -300,17 +486,31 @@ public class MessageBusServer {
 	}
 
 	/**
-	 * sets memory usage limit of ActiveMQ server
+	 * creates settings of publisher addresses from memory limit and address full policy
+	 * broker applies the limit to every publisher address on its own, so it is shared
+	 * equally by publishers
 	 * 
+	 * @return {@link AddressSettings}
 	 */
-	void setMemoryLimit() {
-		LoggingService.logInfo(MODULE_NAME, "Start set memory limit");
+	private AddressSettings createAddressSettings() {
 		AddressSettings addressSettings = new AddressSettings();
 		long memoryLimit = (long) (Configuration.getMemoryLimit() * 1_000_000);
-		addressSettings.setMaxSizeBytes(memoryLimit);
-		addressSettings.setAddressFullMessagePolicy(AddressFullMessagePolicy.DROP);
+		int publishers = producers == null ? 0 : producers.size();
+		addressSettings.setMaxSizeBytes(Math.max(memoryLimit / Math.max(publishers, 1), 1));
+		addressSettings.setAddressFullMessagePolicy(AddressFullMessagePolicy.valueOf(Configuration.getAddressFullPolicy().name()));
+		addressSettings.setAutoCreateAddresses(false);
+		addressSettings.setAutoCreateQueues(false);
+		return addressSettings;
+	}
 
-		server.getAddressSettingsRepository().addMatch(Constants.ADDRESS, addressSettings);
+	/**
+	 * sets memory usage limit and address full policy of ActiveMQ server
+	 * called again whenever a publisher is added or removed, to share the limit anew
+	 * 
+	 */
+	void setMemoryLimit() {
+		LoggingService.logInfo(MODULE_NAME, "Start set memory limit");
+		server.getAddressSettingsRepository().addMatch(Constants.ADDRESS + ".#", createAddressSettings());
 		LoggingService.logInfo(MODULE_NAME, "Finished set memory limit");
 	}
 }
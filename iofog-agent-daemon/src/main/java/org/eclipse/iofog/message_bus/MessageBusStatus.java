@@ -14,6 +14,7 @@ package org.eclipse.iofog.message_bus;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.json.Json;
 import javax.json.JsonArrayBuilder;
@@ -29,6 +30,11 @@ public class MessageBusStatus {
 	private long processedMessages;
 	private final Map<String, Long> publishedMessagesPerMicroservice;
 	private float averageSpeed;
+	private final Map<String, Integer> archiveQueueDepthPerMicroservice = new ConcurrentHashMap<>();
+	private final Map<String, Long> archiveDroppedMessagesPerMicroservice = new ConcurrentHashMap<>();
+	private final Map<String, Long> droppedMessagesPerReceiver = new ConcurrentHashMap<>();
+	private final Map<String, Long> pagedMessagesPerReceiver = new ConcurrentHashMap<>();
+	private final Map<String, Long> expiredMessagesPerReceiver = new ConcurrentHashMap<>();
 	
 	public MessageBusStatus() {
 		publishedMessagesPerMicroservice = new HashMap<>();
@@ -67,6 +73,102 @@ public class MessageBusStatus {
 		return this;
 	}
 	
+	/**
+	 * sets number of messages of publisher waiting to be archived
+	 * 
+	 * @param microservice - ID of publisher
+	 * @param depth - number of messages in archive queue
+	 */
+	public MessageBusStatus setArchiveQueueDepth(String microservice, int depth) {
+		archiveQueueDepthPerMicroservice.put(microservice, depth);
+		return this;
+	}
+
+	public MessageBusStatus increaseArchiveDroppedMessages(String microservice) {
+		archiveDroppedMessagesPerMicroservice.merge(microservice, 1L, Long::sum);
+		return this;
+	}
+
+	public void removeArchiveQueue(String microservice) {
+		archiveQueueDepthPerMicroservice.remove(microservice);
+	}
+
+	/**
+	 * @return total number of messages waiting to be archived
+	 */
+	public long getArchiveQueueDepth() {
+		return archiveQueueDepthPerMicroservice.values().stream().mapToLong(Integer::longValue).sum();
+	}
+
+	public Map<String, Integer> getArchiveQueueDepthPerMicroservice() {
+		return archiveQueueDepthPerMicroservice;
+	}
+
+	/**
+	 * @return total number of messages delivered but not archived because archive queue was full
+	 */
+	public long getArchiveDroppedMessages() {
+		return archiveDroppedMessagesPerMicroservice.values().stream().mapToLong(Long::longValue).sum();
+	}
+
+	public Map<String, Long> getArchiveDroppedMessagesPerMicroservice() {
+		return archiveDroppedMessagesPerMicroservice;
+	}
+
+	public MessageBusStatus increaseDroppedMessages(String receiver) {
+		droppedMessagesPerReceiver.merge(receiver, 1L, Long::sum);
+		return this;
+	}
+
+	public MessageBusStatus increasePagedMessages(String receiver) {
+		pagedMessagesPerReceiver.merge(receiver, 1L, Long::sum);
+		return this;
+	}
+
+	public MessageBusStatus increaseExpiredMessages(String receiver) {
+		expiredMessagesPerReceiver.merge(receiver, 1L, Long::sum);
+		return this;
+	}
+
+	public void removeReceiver(String receiver) {
+		droppedMessagesPerReceiver.remove(receiver);
+		pagedMessagesPerReceiver.remove(receiver);
+		expiredMessagesPerReceiver.remove(receiver);
+	}
+
+	/**
+	 * @return total number of messages skipped for receivers because their subscription queue was full
+	 */
+	public long getDroppedMessages() {
+		return droppedMessagesPerReceiver.values().stream().mapToLong(Long::longValue).sum();
+	}
+
+	public Map<String, Long> getDroppedMessagesPerReceiver() {
+		return droppedMessagesPerReceiver;
+	}
+
+	/**
+	 * @return total number of messages paged to disk for receivers
+	 */
+	public long getPagedMessages() {
+		return pagedMessagesPerReceiver.values().stream().mapToLong(Long::longValue).sum();
+	}
+
+	public Map<String, Long> getPagedMessagesPerReceiver() {
+		return pagedMessagesPerReceiver;
+	}
+
+	/**
+	 * @return total number of messages which expired before they were delivered to receivers
+	 */
+	public long getExpiredMessages() {
+		return expiredMessagesPerReceiver.values().stream().mapToLong(Long::longValue).sum();
+	}
+
+	public Map<String, Long> getExpiredMessagesPerReceiver() {
+		return expiredMessagesPerReceiver;
+	}
+	
 	public void removePublishedMessagesPerMicroservice(String microservice) {
 		if (publishedMessagesPerMicroservice.containsKey(microservice))
 			publishedMessagesPerMicroservice.remove(microservice);
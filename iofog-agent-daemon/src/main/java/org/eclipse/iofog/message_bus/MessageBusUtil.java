@@ -13,8 +13,12 @@
 package org.eclipse.iofog.message_bus;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.eclipse.iofog.exception.AgentUserException;
 import org.eclipse.iofog.microservice.Microservice;
 import org.eclipse.iofog.microservice.Route;
 import org.eclipse.iofog.status_reporter.StatusReporter;
@@ -33,21 +37,40 @@ public class MessageBusUtil {
 	 * 
 	 * @param message - {@link Message} to be published
 	 * @return published {@link Message} containing the id and timestamp 
+	 * @throws AgentUserException if message can not be published because a receiver is full
 	 */
-	public void publishMessage(Message message) {
+	public void publishMessage(Message message) throws AgentUserException {
+		publishMessages(Collections.singletonList(message));
+	}
+
+	/**
+	 * sets messageId and timestamp of every {@link Message} of a batch and publishes them
+	 * in one pass per publisher. all messages of the batch get the same timestamp
+	 * either whole batch is published or none of it if a receiver is full
+	 * 
+	 * @param messages - list of {@link Message} to be published
+	 * @throws AgentUserException if batch can not be published because a receiver is full
+	 */
+	public void publishMessages(List<Message> messages) throws AgentUserException {
 		long timestamp = System.currentTimeMillis();
-		StatusReporter.setMessageBusStatus().increasePublishedMessagesPerMicroservice(message.getPublisher());
-		message.setId(messageBus.getNextId());
-		message.setTimestamp(timestamp);
+		Map<MessagePublisher, List<Message>> batches = new LinkedHashMap<>();
+		for (Message message : messages) {
+			message.setId(messageBus.getNextId());
+			message.setTimestamp(timestamp);
+			MessagePublisher publisher = messageBus.getPublisher(message.getPublisher());
+			if (publisher != null)
+				batches.computeIfAbsent(publisher, key -> new ArrayList<>()).add(message);
+		}
 		
-		MessagePublisher publisher = messageBus.getPublisher(message.getPublisher());
-		if (publisher != null) {
-			try {
-				publisher.publish(message);
-			} catch (Exception e) {
-				LoggingService.logError("Message Publisher (" + publisher.getName() + ")", "unable to send message", e);
-			}
+		try {
+			MessagePublisher.publish(batches);
+		} catch (AgentUserException e) {
+			LoggingService.logError("Message Publisher", "unable to send message", e);
+			throw e;
+		} catch (Exception e) {
+			LoggingService.logError("Message Publisher", "unable to send message", e);
 		}
+		messages.forEach(message -> StatusReporter.setMessageBusStatus().increasePublishedMessagesPerMicroservice(message.getPublisher()));
 	}
 	
 	/**
@@ -88,5 +111,47 @@ public class MessageBusUtil {
 			return null;
 		return messagePublisher.messageQuery(from, to);
 	}
+
+	/**
+	 * creates iterator of {@link Message} within a time frame
+	 * 
+	 * @param publisher - ID of {@link Microservice}
+	 * @param receiver - ID of {@link Microservice}
+	 * @param from - beginning of time frame
+	 * @param to - end of time frame
+	 * @param start - position to resume at, null to read from the beginning of time frame
+	 * @param filter - {@link MessageFilter} of messages, null for all messages
+	 * @return {@link MessageArchiveIterator} or null if receiver can not query publisher
+	 */
+	public MessageArchiveIterator messageIterator(String publisher, String receiver, long from, long to,
+												  MessageArchivePosition start, MessageFilter filter) {
+		Route route = messageBus.getRoutes().get(publisher); 
+		if (to < from || route == null || !route.getReceivers().contains(receiver))
+			return null;
+
+		MessagePublisher messagePublisher = messageBus.getPublisher(publisher);
+		if (messagePublisher == null)
+			return null;
+		return messagePublisher.messageIterator(from, to, start, filter);
+	}
+
+	/**
+	 * looks up an archived {@link Message} by its ID
+	 * 
+	 * @param publisher - ID of {@link Microservice}
+	 * @param receiver - ID of {@link Microservice}
+	 * @param id - ID of {@link Message}
+	 * @return {@link Message} or null if there is no such message or receiver can not query publisher
+	 */
+	public Message getMessage(String publisher, String receiver, String id) {
+		Route route = messageBus.getRoutes().get(publisher);
+		if (route == null || !route.getReceivers().contains(receiver))
+			return null;
+
+		MessagePublisher messagePublisher = messageBus.getPublisher(publisher);
+		if (messagePublisher == null)
+			return null;
+		return messagePublisher.getMessage(id);
+	}
 	
 }
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Edgeworx, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ * Saeid Baghbidi
+ * Kilton Hopkins
+ *  Ashita Nagar
+ *******************************************************************************/
+package org.eclipse.iofog.message_bus;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * compresses content of {@link Message} with JDK deflate (zlib format)
+ * compression is adaptive: small payloads and payloads which do not
+ * compress well are left as is
+ *
+ * @author saeid
+ *
+ */
+final class MessageCompressor {
+	static final int MINIMUM_SIZE = 256;
+
+	/**
+	 * deflate can not expand data by more than this ratio, larger declared sizes are malformed
+	 */
+	static final int MAXIMUM_RATIO = 1032;
+
+	private static final ThreadLocal<Deflater> deflater = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+	private static final ThreadLocal<Inflater> inflater = ThreadLocal.withInitial(Inflater::new);
+
+	private MessageCompressor() {
+	}
+
+	/**
+	 * compresses data if it is worth it
+	 *
+	 * @param data - data to be compressed
+	 * @return compressed data or null if data is too small or compressed form saves less than 1/8 of it
+	 */
+	static byte[] compress(byte[] data) {
+		if (data == null || data.length < MINIMUM_SIZE)
+			return null;
+
+		int limit = data.length - (data.length >> 3);
+		Deflater deflater = MessageCompressor.deflater.get();
+		deflater.reset();
+		deflater.setInput(data);
+		deflater.finish();
+		byte[] result = new byte[limit];
+		int size = 0;
+		while (!deflater.finished() && size < limit)
+			size += deflater.deflate(result, size, limit - size);
+		if (!deflater.finished())
+			return null;
+
+		byte[] compressed = new byte[size];
+		System.arraycopy(result, 0, compressed, 0, size);
+		return compressed;
+	}
+
+	/**
+	 * @param data - compressed data
+	 * @param size - size of original data
+	 * @return original data
+	 * @throws DataFormatException if data is not a valid zlib stream or does not match size
+	 */
+	static byte[] decompress(byte[] data, int size) throws DataFormatException {
+		if (size < 0 || size > (long) data.length * MAXIMUM_RATIO)
+			throw new DataFormatException("size of compressed content is out of range");
+		Inflater inflater = MessageCompressor.inflater.get();
+		inflater.reset();
+		inflater.setInput(data);
+		byte[] result = new byte[size];
+		int length = 0;
+		while (!inflater.finished() && length < size) {
+			int count = inflater.inflate(result, length, size - length);
+			if (count == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+				break;
+			length += count;
+		}
+		if (length != size || !inflater.finished())
+			throw new DataFormatException("compressed content does not match its size");
+		return result;
+	}
+}
@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Edgeworx, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ * Saeid Baghbidi
+ * Kilton Hopkins
+ *  Ashita Nagar
+ *******************************************************************************/
+package org.eclipse.iofog.message_bus;
+
+import io.netty.buffer.ByteBufUtil;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * dictionary of repeated strings of ioMessage v5 format
+ * entries are only appended, so index of an entry never changes
+ * writer and reader of a connection or archive segment keep their own
+ * dictionaries, which stay equal as long as they see the same messages in order
+ *
+ * @author saeid
+ *
+ */
+public final class MessageDictionary {
+	public static final int MAXIMUM_ENTRIES = 1024;
+	public static final int MAXIMUM_ENTRY_LENGTH = 255;
+
+	private final List<String> entries = new ArrayList<>();
+	private final Map<String, Integer> indexes = new HashMap<>();
+
+	/**
+	 * @param value - string to look up
+	 * @return index of entry or -1 if not found
+	 */
+	public int indexOf(String value) {
+		Integer index = indexes.get(value);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * appends new entry if dictionary is not full and value is short enough
+	 *
+	 * @param value - string to be added
+	 * @return index of entry or -1 if value can not be added
+	 */
+	public int add(String value) {
+		int index = indexOf(value);
+		if (index >= 0)
+			return index;
+		if (entries.size() >= MAXIMUM_ENTRIES || ByteBufUtil.utf8Bytes(value) > MAXIMUM_ENTRY_LENGTH)
+			return -1;
+		index = entries.size();
+		entries.add(value);
+		indexes.put(value, index);
+		return index;
+	}
+
+	public String get(int index) {
+		if (index < 0 || index >= entries.size())
+			throw new IllegalArgumentException("unknown dictionary entry " + index);
+		return entries.get(index);
+	}
+
+	public int size() {
+		return entries.size();
+	}
+}
@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Edgeworx, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ * Saeid Baghbidi
+ * Kilton Hopkins
+ *  Ashita Nagar
+ *******************************************************************************/
+package org.eclipse.iofog.message_bus;
+
+import io.netty.buffer.ByteBufUtil;
+
+/**
+ * filter of archived {@link Message} by tag, info type and info format
+ * null value of a field matches any message
+ * 
+ * @author saeid
+ *
+ */
+public final class MessageFilter {
+	private final String tag;
+	private final String infoType;
+	private final String infoFormat;
+
+	public MessageFilter(String tag, String infoType, String infoFormat) {
+		this.tag = tag;
+		this.infoType = infoType;
+		this.infoFormat = infoFormat;
+	}
+
+	String getTag() {
+		return tag;
+	}
+
+	String getInfoType() {
+		return infoType;
+	}
+
+	String getInfoFormat() {
+		return infoFormat;
+	}
+
+	public boolean matches(Message message) {
+		return matches(tag, message.getTag()) && matches(infoType, message.getInfoType())
+				&& matches(infoFormat, message.getInfoFormat());
+	}
+
+	/**
+	 * tells if no message of a v5 archive segment can match
+	 * a value which is missing from dictionary of segment can only be archived as
+	 * a literal if dictionary is full or value is too long to be an entry
+	 * 
+	 * @param dictionary - dictionary of segment
+	 * @return true if segment can be skipped
+	 */
+	boolean excludes(MessageDictionary dictionary) {
+		return excludes(dictionary, tag) || excludes(dictionary, infoType) || excludes(dictionary, infoFormat);
+	}
+
+	static boolean matches(String expected, String value) {
+		return expected == null || expected.equals(value);
+	}
+
+	private static boolean excludes(MessageDictionary dictionary, String value) {
+		return value != null && dictionary.indexOf(value) < 0
+				&& dictionary.size() < MessageDictionary.MAXIMUM_ENTRIES
+				&& ByteBufUtil.utf8Bytes(value) <= MessageDictionary.MAXIMUM_ENTRY_LENGTH;
+	}
+}
@@ -12,16 +12,19 @@
  *******************************************************************************/
 package org.eclipse.iofog.message_bus;
 
-import java.util.LinkedList;
-import java.util.Queue;
-import java.util.UUID;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * class to generate unique id for {@link Message}
  * 
+ * ids are generated without locking and without a pool of pre-generated ones.
+ * An id is made of fixed width base 58 fields
+ * [8 chars] timestamp in milliseconds
+ * [9 chars] random id of generator, so that ids of other agents or earlier runs do not collide
+ * [4 chars] index of generating thread
+ * [7 chars] counter of generating thread
+ * 
  * @author saeid
  *
  */
@@ -64,40 +67,57 @@ public class MessageIdGenerator {
 	}
 
 
-	// uuid
-	private static final int PRE_GENERATED_IDS_COUNT = 100_000;
-	private boolean isRefilling = false;
-	private final Queue<String> generatedIds = new LinkedList<>();
+	private static final int TIME_LENGTH = 8;
+	private static final int NODE_LENGTH = 9;
+	private static final int THREAD_LENGTH = 4;
+	private static final int COUNTER_LENGTH = 7;
+	private static final int ID_LENGTH = TIME_LENGTH + NODE_LENGTH + THREAD_LENGTH + COUNTER_LENGTH;
+
+	private final long node = new SecureRandom().nextLong() >>> 16;
+	private final AtomicInteger threads = new AtomicInteger();
+	private final ThreadLocal<IdBuffer> buffers = ThreadLocal.withInitial(() -> new IdBuffer(threads.getAndIncrement()));
+
 	/**
-	 * generates unique id based on UUID
-	 * 
+	 * id being built by a thread, generator and thread fields are written once
 	 */
-	private final Runnable refill = () -> {
-		if (isRefilling)
-			return;
-		isRefilling = true;
-		while (generatedIds.size() < PRE_GENERATED_IDS_COUNT)
-			synchronized (generatedIds) {
-				generatedIds.offer(UUID.randomUUID().toString().replaceAll("-", ""));
-			}
-		isRefilling = false;
-	};
-	
+	private final class IdBuffer {
+		private final char[] id = new char[ID_LENGTH];
+		private long counter;
+
+		IdBuffer(int thread) {
+			encode(id, TIME_LENGTH, NODE_LENGTH, node);
+			encode(id, TIME_LENGTH + NODE_LENGTH, THREAD_LENGTH, thread);
+		}
+
+		String next(long time) {
+			encode(id, 0, TIME_LENGTH, time);
+			encode(id, ID_LENGTH - COUNTER_LENGTH, COUNTER_LENGTH, counter++);
+			return new String(id);
+		}
+	}
+
 	/**
-	 * returns next generated id from list
+	 * writes fixed width base 58 presentation of number, higher digits which do not fit are left out
+	 *
+	 * @param destination - destination array
+	 * @param offset - offset of field in array
+	 * @param length - width of field
+	 * @param number - non-negative number to be written
+	 */
+	private static void encode(char[] destination, int offset, int length, long number) {
+		for (int i = offset + length - 1; i >= offset; i--) {
+			destination[i] = ALPHABETS_ARRAY[(int) (number % 58)];
+			number /= 58;
+		}
+	}
+
+	/**
+	 * returns next unique id, may be called by any number of threads concurrently
 	 * 
 	 * @return id
 	 */
 	public String getNextId() {
-		while (generatedIds.size() == 0);
-		synchronized (generatedIds) {
-			return generatedIds.poll();
-		}
-	}
-	
-	public MessageIdGenerator() {
-		ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
-		scheduler.scheduleAtFixedRate(refill, 0, 5, TimeUnit.SECONDS);
+		return buffers.get().next(System.currentTimeMillis());
 	}
 	
 //			 			 1         2         3         4         5         6         7         8         9         0         1         2         3         4         5         6         7         
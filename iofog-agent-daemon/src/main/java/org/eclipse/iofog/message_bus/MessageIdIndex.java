@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Edgeworx, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ * Saeid Baghbidi
+ * Kilton Hopkins
+ *  Ashita Nagar
+ *******************************************************************************/
+package org.eclipse.iofog.message_bus;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * hash index of message IDs of an archive segment, from ID to offset of index record of message
+ * IDs are kept as hashes only, so that a lookup tells candidate records which have to be read
+ * to compare their IDs
+ *
+ * index of the segment being written is kept in memory and written to its file once the segment
+ * is sealed. Both are the same open addressing hash table with linear probing, kept at most half full
+ *
+ * [2 bytes] version (1)
+ * [4 bytes] number of slots, a power of 2
+ * [8 bytes] per slot, hash of ID followed by offset of index record plus 1, 0 for an empty slot
+ *
+ * @author saeid
+ *
+ */
+final class MessageIdIndex {
+	static final short VERSION = 1;
+
+	private static final int HEADER_SIZE = Short.BYTES + Integer.BYTES;
+	private static final int SLOT_SIZE = Integer.BYTES + Integer.BYTES;
+
+	private static final int INITIAL_SLOTS = 16;
+
+	private int[] hashes = new int[INITIAL_SLOTS];
+	// offset of index record plus 1, 0 for an empty slot
+	private int[] offsets = new int[INITIAL_SLOTS];
+	private int size;
+
+	static int hash(String id) {
+		int hash = (id == null ? 0 : id.hashCode()) * 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * @param id - ID of message
+	 * @param offset - offset of index record of message
+	 */
+	void add(String id, int offset) {
+		if ((size + 1) * 2 > hashes.length) {
+			int[] oldHashes = hashes;
+			int[] oldOffsets = offsets;
+			hashes = new int[oldHashes.length * 2];
+			offsets = new int[oldOffsets.length * 2];
+			for (int i = 0; i < oldHashes.length; i++)
+				if (oldOffsets[i] != 0)
+					insert(oldHashes[i], oldOffsets[i]);
+		}
+		insert(hash(id), offset + 1);
+		size++;
+	}
+
+	private void insert(int hash, int offset) {
+		int mask = hashes.length - 1;
+		int slot = hash & mask;
+		while (offsets[slot] != 0)
+			slot = (slot + 1) & mask;
+		hashes[slot] = hash;
+		offsets[slot] = offset;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @param id - ID of message
+	 * @return offsets of index records of messages whose ID may be the given one
+	 */
+	int[] find(String id) {
+		int hash = hash(id);
+		int mask = hashes.length - 1;
+		int[] result = new int[0];
+		for (int slot = hash & mask; offsets[slot] != 0; slot = (slot + 1) & mask)
+			if (hashes[slot] == hash)
+				result = append(result, offsets[slot] - 1);
+		return result;
+	}
+
+	/**
+	 * writes index to a temporary file first and moves it in place once complete
+	 *
+	 * @param target - index file
+	 * @throws IOException
+	 */
+	void write(File target) throws IOException {
+		ByteBuffer table = ByteBuffer.allocate(HEADER_SIZE + hashes.length * SLOT_SIZE);
+		table.putShort(VERSION).putInt(hashes.length);
+		for (int i = 0; i < hashes.length; i++)
+			table.putInt(hashes[i]).putInt(offsets[i]);
+		table.rewind();
+
+		File temporary = new File(target.getPath() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (table.hasRemaining())
+				channel.write(table);
+			channel.force(false);
+		}
+		Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * looks up a message ID in an index file
+	 *
+	 * @param file - index file
+	 * @param id - ID of message
+	 * @return offsets of index records of messages whose ID may be the given one
+	 * @throws IOException
+	 */
+	static int[] find(File file, String id) throws IOException {
+		MappedByteBuffer table = MessageArchive.map(file);
+		try {
+			if (table.limit() < HEADER_SIZE || table.getShort(0) != VERSION)
+				throw new IOException("invalid message ID index " + file.getName());
+			int slots = table.getInt(Short.BYTES);
+			if (Integer.bitCount(slots) != 1 || table.limit() < HEADER_SIZE + (long) slots * SLOT_SIZE)
+				throw new IOException("invalid message ID index " + file.getName());
+			int hash = hash(id);
+			int[] result = new int[0];
+			for (int slot = hash & (slots - 1), probes = 0; probes < slots; slot = (slot + 1) & (slots - 1), probes++) {
+				int offset = table.getInt(HEADER_SIZE + slot * SLOT_SIZE + Integer.BYTES);
+				if (offset == 0)
+					break;
+				if (table.getInt(HEADER_SIZE + slot * SLOT_SIZE) == hash)
+					result = append(result, offset - 1);
+			}
+			return result;
+		} finally {
+			MessageArchive.unmap(table);
+		}
+	}
+
+	private static int[] append(int[] array, int value) {
+		int[] result = Arrays.copyOf(array, array.length + 1);
+		result[array.length] = value;
+		return result;
+	}
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Edgeworx, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ * Saeid Baghbidi
+ * Kilton Hopkins
+ *  Ashita Nagar
+ *******************************************************************************/
+package org.eclipse.iofog.message_bus;
+
+import org.eclipse.iofog.utils.logging.LoggingService;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * lookup of an archived {@link Message} by its ID
+ *
+ * segments are searched from the newest one. Candidate records of a segment are told by its
+ * {@link MessageIdIndex} and read to compare their IDs, a segment without one is read as a whole.
+ * like {@link MessageArchiveIterator}, lookup does not hold the archive and has to be closed
+ *
+ * @author saeid
+ *
+ */
+final class MessageIdLookup implements AutoCloseable {
+	private static final String MODULE_NAME = "MessageArchive";
+
+	private final String name;
+	private final List<File> segments;
+	private final String activeSegment;
+	private final int activeMessageCount;
+	private final int[] activeOffsets;
+	private final String id;
+	private Runnable onClose;
+
+	/**
+	 * @param name - name of archive
+	 * @param segments - index files of segments to be searched, in order
+	 * @param activeSegment - name of index file of segment being written, null if there is none
+	 * @param activeMessageCount - number of messages in segment being written
+	 * @param activeOffsets - candidate records of segment being written, null to read it as a whole
+	 * @param id - ID of message
+	 * @param onClose - called once lookup is closed, may be null
+	 */
+	MessageIdLookup(String name, List<File> segments, String activeSegment, int activeMessageCount,
+					int[] activeOffsets, String id, Runnable onClose) {
+		this.name = name;
+		this.segments = segments;
+		this.activeSegment = activeSegment;
+		this.activeMessageCount = activeMessageCount;
+		this.activeOffsets = activeOffsets;
+		this.id = id;
+		this.onClose = onClose;
+	}
+
+	/**
+	 * @return {@link Message} or null if there is no message with the ID
+	 */
+	Message find() {
+		for (File file : segments) {
+			// segment may have been removed by retention since lookup was created
+			if (!file.exists())
+				continue;
+			int[] offsets = null;
+			try {
+				offsets = getCandidates(file);
+			} catch (IOException e) {
+				LoggingService.logError(MODULE_NAME, e.getMessage(), e);
+			}
+			Message message = offsets != null ? read(file, offsets) : scan(file);
+			if (message != null)
+				return message;
+		}
+		return null;
+	}
+
+	/**
+	 * @param file - index file of segment
+	 * @return offsets of candidate records, null if segment has no ID index
+	 * @throws IOException
+	 */
+	private int[] getCandidates(File file) throws IOException {
+		if (file.getName().equals(activeSegment))
+			return activeOffsets;
+		File idIndexFile = new File(MessageArchive.getSegmentFileName(file.getPath(), ".midx"));
+		return idIndexFile.exists() ? MessageIdIndex.find(idIndexFile, id) : null;
+	}
+
+	private Message read(File file, int[] offsets) {
+		long segment = MessageArchive.getSegmentTimestamp(name, file.getName());
+		for (int offset : offsets) {
+			try (MessageArchiveIterator iterator = iterator(file, new MessageArchivePosition(segment, offset))) {
+				// iterator skips a corrupted record
+				MessageArchivePosition position = iterator.getPosition();
+				if (position == null || position.getSegment() != segment || position.getOffset() != offset)
+					continue;
+				Message message = iterator.next();
+				if (id.equals(message.getId()))
+					return message;
+			}
+		}
+		return null;
+	}
+
+	private Message scan(File file) {
+		try (MessageArchiveIterator iterator = iterator(file, null)) {
+			while (iterator.hasNext()) {
+				Message message = iterator.next();
+				if (id.equals(message.getId()))
+					return message;
+			}
+		}
+		return null;
+	}
+
+	private MessageArchiveIterator iterator(File file, MessageArchivePosition start) {
+		return new MessageArchiveIterator(name, Collections.singletonList(file), activeSegment, activeMessageCount,
+				Long.MIN_VALUE, Long.MAX_VALUE, start, null, null);
+	}
+
+	@Override
+	public void close() {
+		if (onClose != null)
+			onClose.run();
+		onClose = null;
+	}
+}
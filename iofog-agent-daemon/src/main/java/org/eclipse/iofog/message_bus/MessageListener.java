@@ -16,12 +16,12 @@ import org.apache.activemq.artemis.api.core.client.ClientMessage;
 import org.apache.activemq.artemis.api.core.client.MessageHandler;
 import org.eclipse.iofog.local_api.MessageCallback;
 
-import static org.eclipse.iofog.message_bus.MessageBusServer.messageBusSessionLock;
 import static org.eclipse.iofog.utils.logging.LoggingService.logError;
 import static org.eclipse.iofog.utils.logging.LoggingService.logWarning;
 
 /**
  * listener for real-time receiving
+ * broker and client buffer of consumer hand over higher priority messages first
  * 
  * @author saeid
  *
@@ -38,13 +38,11 @@ public class MessageListener implements MessageHandler{
 	@Override
 	public void onMessage(ClientMessage msg) {
 		try {
-			synchronized (messageBusSessionLock) {
-				msg.acknowledge();
-			}
+			msg.acknowledge();
 		} catch (Exception exp) {
 			logError(MODULE_NAME, exp.getMessage(), exp);}
 
-		Message message = new Message(msg.getBytesProperty("message"));
+		Message message = CompactMessageCodec.decode(msg.getBytesProperty("message"));
 		callback.sendRealtimeMessage(message);
 	}
 
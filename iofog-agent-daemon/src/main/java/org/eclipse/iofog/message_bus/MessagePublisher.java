@@ -15,36 +15,76 @@ package org.eclipse.iofog.message_bus;
 import org.apache.activemq.artemis.api.core.client.ClientMessage;
 import org.apache.activemq.artemis.api.core.client.ClientProducer;
 import org.apache.activemq.artemis.api.core.client.ClientSession;
+import org.apache.activemq.artemis.core.server.Queue;
 import org.eclipse.iofog.exception.AgentSystemException;
+import org.eclipse.iofog.exception.AgentUserException;
+import org.eclipse.iofog.microservice.MessageCompression;
 import org.eclipse.iofog.microservice.Microservice;
 import org.eclipse.iofog.microservice.Route;
+import org.eclipse.iofog.status_reporter.StatusReporter;
+import org.eclipse.iofog.utils.configuration.Configuration;
 import org.eclipse.iofog.utils.logging.LoggingService;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static org.eclipse.iofog.message_bus.MessageBus.MODULE_NAME;
-import static org.eclipse.iofog.message_bus.MessageBusServer.messageBusSessionLock;
 import static org.eclipse.iofog.utils.logging.LoggingService.logError;
 
 /**
  * publisher {@link Microservice}
  * 
+ * messages are delivered right away and queued for archiving. archive queue is drained
+ * in batches by archiver thread of {@link MessageBus}. if the queue is full, depending on
+ * configuration, publisher either writes pending messages to archive itself or drops
+ * the message from archive
+ * in MESSAGE durability mode publisher archives the messages itself before returning,
+ * so that they are on storage device when the container gets its receipt
+ * 
+ * subscription queue of every receiver is limited to configured number of messages.
+ * once a queue is full, depending on {@link AddressFullPolicy}, the message is skipped for
+ * that receiver, publisher waits for the receiver or messages are paged to disk
+ * publisher waits for room for the whole batch before sending any of it, and not longer
+ * than a few seconds, the publish fails then and nothing of it is published
+ * priority of message is mapped to broker priority, and lower priority messages reach
+ * a smaller share of the limit, so that they are shed first
+ * messages with time-to-live expire in subscription queues, but are archived as usual
+ * 
  * @author saeid
  *
  */
 public class MessagePublisher implements AutoCloseable{
+	private static final int ARCHIVE_BATCH_SIZE = 256;
+	private static final long RECEIVER_WAIT_MILLIS = 10;
+	private static final long RECEIVER_BLOCK_TIMEOUT_MILLIS = 5_000;
+	private static final int BROKER_PRIORITY_LEVELS = 10;
+
 	private final MessageArchive archive;
+	private final MessageRingBuffer archiveQueue;
+	private final Object archiveLock = new Object();
+	private boolean closed;
+	private int reportedQueueDepth;
 	private final String name;
+	private final MessageBusServer server;
 	private ClientProducer producer;
 	private ClientSession session;
-	private Route route;
+	private volatile Route route;
+	private final ReentrantLock publishLock = new ReentrantLock();
+	private final Map<String, ReceiverQueue> receiverQueues = new HashMap<>();
 	
-	public MessagePublisher(String name, Route route, ClientProducer producer) {
+	public MessagePublisher(String name, Route route, MessageBusServer server, ClientProducer producer, ClientSession session) {
 		this.archive = new MessageArchive(name);
+		this.archiveQueue = new MessageRingBuffer(Configuration.getArchiveQueueCapacity());
 		this.route = route;
 		this.name = name;
+		this.server = server;
 		this.producer = producer;
-		this.session = MessageBusServer.getSession();
+		this.session = session;
 	}
 	
 	public String getName() {
@@ -57,39 +97,353 @@ public class MessagePublisher implements AutoCloseable{
 	 * @param message - {@link Message} to be published
 	 * @throws Exception
 	 */
-	synchronized void publish(Message message) throws Exception {
-		LoggingService.logInfo(MODULE_NAME, "Start publish message :" + this.name );
-		byte[] bytes = message.getBytes();
+	void publish(Message message) throws Exception {
+		publish(Collections.singletonList(message));
+	}
 
+	/**
+	 * publishes list of {@link Message} in one pass and queues them for archiving
+	 * 
+	 * @param messages - list of {@link Message} to be published
+	 * @throws AgentUserException if subscription queue of a receiver stays full in BLOCK mode
+	 * @throws Exception
+	 */
+	void publish(List<Message> messages) throws Exception {
+		publish(Collections.singletonMap(this, messages));
+	}
+
+	/**
+	 * publishes messages of several publishers, either all of them or none in BLOCK mode
+	 * publishers are locked in order of their names for the whole call, so that batches
+	 * of a publisher are neither interleaved nor reordered while it waits for receivers
+	 * 
+	 * @param batches - list of {@link Message} to be published per publisher
+	 * @throws AgentUserException if subscription queue of a receiver stays full in BLOCK mode
+	 * @throws Exception
+	 */
+	static void publish(Map<MessagePublisher, List<Message>> batches) throws Exception {
+		List<MessagePublisher> publishers = new ArrayList<>(batches.keySet());
+		publishers.sort(Comparator.comparing(MessagePublisher::getName));
+		publishers.forEach(publisher -> publisher.publishLock.lock());
 		try {
-			archive.save(bytes, message.getTimestamp());
-		} catch (Exception e) {
-			logError(MODULE_NAME, "Message Publisher (" + this.name + ")unable to archive message",
-					new AgentSystemException("Message Publisher (" + this.name + ")unable to archive message", e));
-			
+			long deadline = System.currentTimeMillis() + RECEIVER_BLOCK_TIMEOUT_MILLIS;
+			for (MessagePublisher publisher : publishers)
+				publisher.awaitReceivers(batches.get(publisher), deadline);
+			for (MessagePublisher publisher : publishers) {
+				try {
+					publisher.send(batches.get(publisher));
+				} catch (Exception e) {
+					logError(MODULE_NAME, "Message Publisher (" + publisher.getName() + ")unable to send message",
+							new AgentSystemException("Message Publisher (" + publisher.getName() + ")unable to send message", e));
+				}
+			}
+		} finally {
+			publishers.forEach(publisher -> publisher.publishLock.unlock());
 		}
-		for (String receiver : route.getReceivers()) {
-			ClientMessage msg = session.createMessage(false);
-			msg.putObjectProperty("receiver", receiver);
-			msg.putBytesProperty("message", bytes);
-			synchronized (messageBusSessionLock) {
+	}
+
+	/**
+	 * sends list of {@link Message} to receivers and queues them for archiving
+	 * if a message can not be sent, the ones before it are still archived
+	 * 
+	 * @param messages - list of {@link Message} to be published
+	 * @throws Exception
+	 */
+	private void send(List<Message> messages) throws Exception {
+		LoggingService.logInfo(MODULE_NAME, "Start publish message :" + this.name );
+		Route route = this.route;
+		receiverQueues.keySet().retainAll(route.getReceivers());
+		// routes with compression carry v5 format, which can hold compressed content
+		boolean compress = route.getCompression() != MessageCompression.NONE;
+		messages.forEach(message -> message.setCompressContent(compress));
+
+		int published = 0;
+		try {
+			// sent once to multicast address of publisher, broker routes it to subscription queue of every receiver
+			for (; published < messages.size(); published++) {
+				Message message = messages.get(published);
+				List<String> receivers = route.getReceivers();
+				byte priority = getBrokerPriority(message);
+				List<String> dropped = applyReceiverLimits(receivers, priority);
+				if (!dropped.isEmpty() && dropped.size() == receivers.size())
+					continue;
+				byte[] bytes = compress ? CompactMessageCodec.encode(message) : message.getBytes();
+				ClientMessage msg = session.createMessage(false);
+				msg.putBytesProperty("message", bytes);
+				msg.setPriority(priority);
+				if (message.getTtl() > 0)
+					msg.setExpiration(message.getTimestamp() + message.getTtl());
+				if (!dropped.isEmpty())
+					MessageBusServer.setRouteToQueues(msg, getRoutedQueues(receivers, dropped));
 				producer.send(msg);
+				if (receiverQueues.isEmpty())
+					continue;
+				boolean paging = Configuration.getAddressFullPolicy() == AddressFullPolicy.PAGE && server.isPaging(name);
+				for (String receiver : receivers) {
+					ReceiverQueue receiverQueue = receiverQueues.get(receiver);
+					if (receiverQueue == null || dropped.contains(receiver))
+						continue;
+					receiverQueue.expectedAdded++;
+					if (paging)
+						StatusReporter.setMessageBusStatus().increasePagedMessages(receiver);
+				}
 			}
+		} finally {
+			messages.subList(0, published).forEach(this::queueForArchive);
+			if (Configuration.getArchiveDurability() == ArchiveDurability.MESSAGE)
+				archivePending();
 		}
 		LoggingService.logInfo(MODULE_NAME, "Finsihed publish message : " + this.name);
 	}
 
-	synchronized void updateRoute(Route route) {
+	/**
+	 * maps priority of {@link Message}, the lower the number the higher the priority,
+	 * to broker priority 0 to 9, the higher the number the higher the priority
+	 * 
+	 * @param message - {@link Message}
+	 * @return broker priority
+	 */
+	static byte getBrokerPriority(Message message) {
+		return (byte) Math.max(BROKER_PRIORITY_LEVELS - 1 - (message.getPriority() & 0xFF), 0);
+	}
+
+	/**
+	 * returns limit of subscription queue for messages of given priority, which is configured
+	 * limit for the highest priority and a tenth of it for the lowest one
+	 * 
+	 * @param queueLimit - configured limit of subscription queue
+	 * @param priority - broker priority of the message
+	 * @return number of messages
+	 */
+	private static long getReceiverLimit(int queueLimit, byte priority) {
+		return Math.max((long) queueLimit * (priority + 1) / BROKER_PRIORITY_LEVELS, 1);
+	}
+
+	/**
+	 * waits in BLOCK mode until subscription queue of every receiver has room for all messages
+	 * publish lock is held while waiting, route can still be updated. a batch larger than
+	 * the limit is let in once the queue is empty
+	 * 
+	 * @param messages - list of {@link Message} to be published
+	 * @param deadline - time in milliseconds to give up at
+	 * @throws AgentUserException if a receiver does not catch up in time
+	 * @throws Exception
+	 */
+	private void awaitReceivers(List<Message> messages, long deadline) throws Exception {
+		int queueLimit = Configuration.getReceiverQueueLimit();
+		if (queueLimit <= 0 || messages.isEmpty() || Configuration.getAddressFullPolicy() != AddressFullPolicy.BLOCK)
+			return;
+		// message of the batch finds the ones sent before it in the queue
+		long room = Long.MAX_VALUE;
+		for (int i = 0; i < messages.size(); i++)
+			room = Math.min(room, getReceiverLimit(queueLimit, getBrokerPriority(messages.get(i))) - i);
+		room = Math.max(room, 1);
+		for (String receiver : route.getReceivers()) {
+			while (route.getReceivers().contains(receiver) && getQueueDepth(receiver) >= room) {
+				if (System.currentTimeMillis() >= deadline)
+					throw new AgentUserException("subscription queue of receiver " + receiver + " is full");
+				Thread.sleep(RECEIVER_WAIT_MILLIS);
+			}
+		}
+	}
+
+	/**
+	 * applies DROP or PAGE {@link AddressFullPolicy} to receivers whose subscription queue is full
+	 * for messages of given priority, receivers are waited for before in BLOCK mode
+	 * 
+	 * @param receivers - receivers of the message
+	 * @param priority - broker priority of the message
+	 * @return receivers the message is skipped for
+	 * @throws Exception
+	 */
+	private List<String> applyReceiverLimits(List<String> receivers, byte priority) throws Exception {
+		int queueLimit = Configuration.getReceiverQueueLimit();
+		if (queueLimit <= 0) {
+			receiverQueues.clear();
+			return Collections.emptyList();
+		}
+		AddressFullPolicy policy = Configuration.getAddressFullPolicy();
+		if (policy == AddressFullPolicy.BLOCK)
+			return Collections.emptyList();
+		long limit = getReceiverLimit(queueLimit, priority);
+		List<String> dropped = Collections.emptyList();
+		for (String receiver : receivers) {
+			if (getQueueDepth(receiver) < limit)
+				continue;
+			if (policy == AddressFullPolicy.PAGE) {
+				server.startPaging(name);
+				continue;
+			}
+			if (dropped.isEmpty())
+				dropped = new ArrayList<>();
+			dropped.add(receiver);
+			StatusReporter.setMessageBusStatus().increaseDroppedMessages(receiver);
+		}
+		return dropped;
+	}
+
+	/**
+	 * @param receivers - receivers of the message
+	 * @param dropped - receivers the message is skipped for
+	 * @return subscription queues of the other receivers
+	 */
+	private List<Queue> getRoutedQueues(List<String> receivers, List<String> dropped) {
+		List<Queue> queues = new ArrayList<>(receivers.size() - dropped.size());
+		for (String receiver : receivers) {
+			ReceiverQueue receiverQueue = receiverQueues.get(receiver);
+			if (receiverQueue != null && receiverQueue.queue != null && !dropped.contains(receiver))
+				queues.add(receiverQueue.queue);
+		}
+		return queues;
+	}
+
+	/**
+	 * returns number of messages in subscription queue of a receiver, including the ones
+	 * which are sent but not routed to the queue yet, as producer sends asynchronously
+	 * 
+	 * @param receiver - ID of receiver {@link Microservice}
+	 * @return number of messages
+	 */
+	private long getQueueDepth(String receiver) {
+		Queue queue = server.locateSubscriptionQueue(name, receiver);
+		ReceiverQueue receiverQueue = receiverQueues.computeIfAbsent(receiver, key -> new ReceiverQueue());
+		if (receiverQueue.queue != queue) {
+			receiverQueue.queue = queue;
+			receiverQueue.expectedAdded = queue == null ? 0 : queue.getMessagesAdded();
+		}
+		if (queue == null)
+			return 0;
+		return queue.getMessageCount() + Math.max(receiverQueue.expectedAdded - queue.getMessagesAdded(), 0);
+	}
+
+	/**
+	 * adds {@link Message} to archive queue, applying backpressure if it is full
+	 * 
+	 * @param message - {@link Message} to be archived
+	 */
+	private void queueForArchive(Message message) {
+		if (archiveQueue.offer(message))
+			return;
+		if (!Configuration.isArchiveBackpressureBlocking()) {
+			StatusReporter.setMessageBusStatus().increaseArchiveDroppedMessages(name);
+			return;
+		}
+		archivePending();
+		if (!archiveQueue.offer(message))
+			StatusReporter.setMessageBusStatus().increaseArchiveDroppedMessages(name);
+	}
+
+	/**
+	 * writes messages waiting in archive queue to archive in batches
+	 * only messages queued before the call are written, so that a busy publisher
+	 * can not keep the caller here
+	 * 
+	 * @return number of archived messages
+	 */
+	int archivePending() {
+		synchronized (archiveLock) {
+			int pending = archiveQueue.size();
+			if (pending != reportedQueueDepth) {
+				StatusReporter.setMessageBusStatus().setArchiveQueueDepth(name, pending);
+				reportedQueueDepth = pending;
+			}
+			if (closed)
+				return 0;
+			if (pending == 0) {
+				syncArchive();
+				return 0;
+			}
+
+			List<Message> batch = new ArrayList<>(Math.min(pending, ARCHIVE_BATCH_SIZE));
+			int archived = 0;
+			while (archived < pending) {
+				archiveQueue.drainTo(batch, Math.min(pending - archived, ARCHIVE_BATCH_SIZE));
+				try {
+					archive.save(batch);
+				} catch (Exception e) {
+					logError(MODULE_NAME, "Message Publisher (" + this.name + ")unable to archive message",
+							new AgentSystemException("Message Publisher (" + this.name + ")unable to archive message", e));
+				}
+				archived += batch.size();
+				batch.clear();
+			}
+			return archived;
+		}
+	}
+
+	/**
+	 * forces archived messages to storage device once group commit is due
+	 */
+	private void syncArchive() {
+		try {
+			archive.sync(false);
+		} catch (Exception e) {
+			logError(MODULE_NAME, "Message Publisher (" + this.name + ")unable to sync archive",
+					new AgentSystemException("Message Publisher (" + this.name + ")unable to sync archive", e));
+		}
+	}
+
+	/**
+	 * removes archive segments beyond retention quotas, merges small ones
+	 * and compresses a cold one if there is nothing to merge, then indexes
+	 * IDs of a segment which lacks ID index
+	 * 
+	 * @param maximumSize - maximum size of archive in bytes, 0 for no limit
+	 * @param maximumAge - maximum age of archived messages in milliseconds, 0 for no limit
+	 */
+	void enforceRetention(long maximumSize, long maximumAge) {
+		synchronized (archiveLock) {
+			if (closed)
+				return;
+			try {
+				archive.removeExpiredSegments(maximumSize, maximumAge);
+				if (!archive.compact())
+					archive.compressColdSegment();
+				archive.indexSegment();
+			} catch (Exception e) {
+				logError(MODULE_NAME, "Message Publisher (" + this.name + ")unable to enforce archive retention",
+						new AgentSystemException("Message Publisher (" + this.name + ")unable to enforce archive retention", e));
+			}
+		}
+	}
+
+	/**
+	 * removes the oldest sealed segment of archive
+	 * 
+	 * @return number of freed bytes, 0 if there is no sealed segment
+	 */
+	long removeOldestArchiveSegment() {
+		synchronized (archiveLock) {
+			return closed ? 0 : archive.removeOldestSegment();
+		}
+	}
+
+	/**
+	 * updates route of publisher, also while a publish waits for receivers
+	 * 
+	 * @param route - new {@link Route}
+	 */
+	void updateRoute(Route route) {
 		LoggingService.logInfo(MODULE_NAME, "Updating route");
 		this.route = route;
 	}
 
-	public synchronized void close() {
+	public void close() {
 		LoggingService.logInfo(MODULE_NAME, "Start closing publish");
+		publishLock.lock();
 		try {
-			archive.close();
-		} catch (Exception exp) {
-			logError(MODULE_NAME, "", new AgentSystemException("Error closing message publisher", exp));
+			synchronized (archiveLock) {
+				archivePending();
+				closed = true;
+				StatusReporter.setMessageBusStatus().removeArchiveQueue(name);
+				try {
+					archive.close();
+				} catch (Exception exp) {
+					logError(MODULE_NAME, "", new AgentSystemException("Error closing message publisher", exp));
+				}
+			}
+		} finally {
+			publishLock.unlock();
 		}
 		LoggingService.logInfo(MODULE_NAME, "Finished closing publish");
 	}
@@ -97,13 +451,76 @@ public class MessagePublisher implements AutoCloseable{
 	/**
 	 * retrieves list of {@link Message} published by this {@link Microservice}
 	 * within a time frame
+	 * messages waiting in archive queue are written first
 	 * 
 	 * @param from - beginning of time frame
 	 * @param to - end of time frame
 	 * @return list of {@link Message}
 	 */
-	public synchronized List<Message> messageQuery(long from, long to) {
-		return archive.messageQuery(from, to);
+	public List<Message> messageQuery(long from, long to) {
+		synchronized (archiveLock) {
+			archivePending();
+			return archive.messageQuery(from, to);
+		}
+	}
+
+	/**
+	 * creates iterator of {@link Message} published by this {@link Microservice}
+	 * within a time frame
+	 * messages waiting in archive queue are written first. Iterator does not hold
+	 * the archive, so archiving goes on while it is read
+	 * 
+	 * @param from - beginning of time frame
+	 * @param to - end of time frame
+	 * @return {@link MessageArchiveIterator}
+	 */
+	public MessageArchiveIterator messageIterator(long from, long to) {
+		return messageIterator(from, to, null, null);
+	}
+
+	/**
+	 * creates iterator of {@link Message} published by this {@link Microservice}
+	 * within a time frame which match filter, and resumes reading at a position of an earlier iterator
+	 * 
+	 * @param from - beginning of time frame
+	 * @param to - end of time frame
+	 * @param start - position to resume at, null to read from the beginning of time frame
+	 * @param filter - {@link MessageFilter} of messages, null for all messages
+	 * @return {@link MessageArchiveIterator}
+	 */
+	public MessageArchiveIterator messageIterator(long from, long to, MessageArchivePosition start, MessageFilter filter) {
+		synchronized (archiveLock) {
+			archivePending();
+			return archive.messageIterator(from, to, start, filter);
+		}
+	}
+
+	/**
+	 * looks up an archived {@link Message} published by this {@link Microservice} by its ID
+	 * messages waiting in archive queue are written first. Archive is not held while
+	 * segments are searched
+	 * 
+	 * @param id - ID of message
+	 * @return {@link Message} or null if there is no such message in archive
+	 */
+	public Message getMessage(String id) {
+		MessageIdLookup lookup;
+		synchronized (archiveLock) {
+			archivePending();
+			lookup = archive.messageLookup(id);
+		}
+		try (MessageIdLookup search = lookup) {
+			return search.find();
+		}
+	}
+
+	/**
+	 * subscription queue of a receiver with number of messages it should have been added
+	 * once all sent messages are routed
+	 */
+	private static final class ReceiverQueue {
+		private Queue queue;
+		private long expectedAdded;
 	}
 	
 }
@@ -0,0 +1,286 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Edgeworx, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ * Saeid Baghbidi
+ * Kilton Hopkins
+ *  Ashita Nagar
+ *******************************************************************************/
+package org.eclipse.iofog.message_bus;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * flyweight reader of ioMessage v4 wire format
+ * reads field offsets straight from the 33-byte header and decodes
+ * fields in place, without copying the underlying buffer
+ *
+ * an instance may be reused by calling one of wrap methods again
+ *
+ * @author saeid
+ *
+ */
+public final class MessageReader {
+	public static final short VERSION = 4;
+	public static final int HEADER_SIZE = 33;
+
+	static final int ID = 0;
+	static final int TAG = 1;
+	static final int GROUP_ID = 2;
+	static final int SEQUENCE_NUMBER = 3;
+	static final int SEQUENCE_TOTAL = 4;
+	static final int PRIORITY = 5;
+	static final int TIMESTAMP = 6;
+	static final int PUBLISHER = 7;
+	static final int AUTH_IDENTIFIER = 8;
+	static final int AUTH_GROUP = 9;
+	static final int CHAIN_POSITION = 10;
+	static final int HASH = 11;
+	static final int PREVIOUS_HASH = 12;
+	static final int NONCE = 13;
+	static final int DIFFICULTY_TARGET = 14;
+	static final int INFO_TYPE = 15;
+	static final int INFO_FORMAT = 16;
+	static final int CONTEXT_DATA = 17;
+	static final int CONTENT_DATA = 18;
+	static final int FIELD_COUNT = 19;
+
+	/**
+	 * number of bytes used in header to store the length of each field, in wire order
+	 */
+	static final int[] LENGTH_WIDTHS = {1, 2, 1, 1, 1, 1, 1, 1, 2, 2, 1, 2, 2, 2, 1, 1, 1, 4, 4};
+
+	private ByteBuf data;
+	private short version;
+	private boolean valid;
+	private int dataSize;
+	private final int[] offsets = new int[FIELD_COUNT];
+	private final int[] sizes = new int[FIELD_COUNT];
+
+	/**
+	 * wraps raw bytes of a {@link Message} (header followed by data)
+	 *
+	 * @param rawBytes - encoded {@link Message}
+	 * @return this reader
+	 */
+	public MessageReader wrap(byte[] rawBytes) {
+		return wrap(Unpooled.wrappedBuffer(rawBytes));
+	}
+
+	/**
+	 * wraps header and data of a {@link Message} which are stored separately
+	 *
+	 * @param header - 33-byte header
+	 * @param data - data block, may be null if only header fields are needed
+	 * @return this reader
+	 */
+	public MessageReader wrap(byte[] header, byte[] data) {
+		return wrap(Unpooled.wrappedBuffer(header), 0,
+				data == null ? Unpooled.EMPTY_BUFFER : Unpooled.wrappedBuffer(data), 0);
+	}
+
+	/**
+	 * wraps readable bytes of buffer, header followed by data
+	 * reader index of buffer is not changed
+	 *
+	 * @param buffer - buffer containing encoded {@link Message}
+	 * @return this reader
+	 */
+	public MessageReader wrap(ByteBuf buffer) {
+		int index = buffer.readerIndex();
+		return wrap(buffer, index, buffer, index + HEADER_SIZE);
+	}
+
+	/**
+	 * wraps header and data of a {@link Message}
+	 *
+	 * @param header - buffer containing header
+	 * @param headerIndex - index of header in buffer
+	 * @param data - buffer containing data block
+	 * @param dataIndex - index of data block in buffer
+	 * @return this reader
+	 */
+	public MessageReader wrap(ByteBuf header, int headerIndex, ByteBuf data, int dataIndex) {
+		this.data = data;
+		this.dataSize = 0;
+		this.valid = false;
+
+		if (header.writerIndex() - headerIndex < 2) {
+			version = 0;
+			return this;
+		}
+		version = header.getShort(headerIndex);
+		if (version != VERSION || header.writerIndex() - headerIndex < HEADER_SIZE)
+			return this;
+
+		int lengthIndex = headerIndex + 2;
+		long pos = dataIndex;
+		for (int field = 0; field < FIELD_COUNT; field++) {
+			int size;
+			switch (LENGTH_WIDTHS[field]) {
+				case 1:
+					size = header.getUnsignedByte(lengthIndex);
+					break;
+				case 2:
+					size = header.getUnsignedShort(lengthIndex);
+					break;
+				default:
+					size = header.getInt(lengthIndex);
+			}
+			lengthIndex += LENGTH_WIDTHS[field];
+			if (size < 0) {
+				dataSize = -1;
+				return this;
+			}
+			offsets[field] = (int) Math.min(pos, Integer.MAX_VALUE);
+			sizes[field] = size;
+			pos += size;
+		}
+		if (pos - dataIndex > Integer.MAX_VALUE - HEADER_SIZE) {
+			dataSize = -1;
+			return this;
+		}
+		dataSize = (int) (pos - dataIndex);
+		valid = data.writerIndex() >= pos;
+		return this;
+	}
+
+	/**
+	 * @return version read from header
+	 */
+	public short getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return true if wrapped bytes are a complete {@link Message} of supported version
+	 */
+	public boolean isValid() {
+		return valid;
+	}
+
+	/**
+	 * @return size of data block, computed from header field lengths, or -1 if lengths are malformed
+	 */
+	public int getDataSize() {
+		return dataSize;
+	}
+
+	/**
+	 * @return total size of the encoded {@link Message}
+	 */
+	public int getEncodedSize() {
+		return HEADER_SIZE + dataSize;
+	}
+
+	int getSize(int field) {
+		return valid ? sizes[field] : 0;
+	}
+
+	private String getString(int field) {
+		int size = getSize(field);
+		return size > 0 ? data.toString(offsets[field], size, UTF_8) : null;
+	}
+
+	private long getNumber(int field) {
+		int size = getSize(field);
+		long result = 0;
+		for (int i = 0; i < size; i++)
+			result = (result << 8) + data.getUnsignedByte(offsets[field] + i);
+		return result;
+	}
+
+	private ByteBuf getSlice(int field) {
+		int size = getSize(field);
+		return size > 0 ? data.slice(offsets[field], size) : null;
+	}
+
+	public String getId() {
+		return getString(ID);
+	}
+
+	public String getTag() {
+		return getString(TAG);
+	}
+
+	public String getMessageGroupId() {
+		return getString(GROUP_ID);
+	}
+
+	public int getSequenceNumber() {
+		return (int) getNumber(SEQUENCE_NUMBER);
+	}
+
+	public int getSequenceTotal() {
+		return (int) getNumber(SEQUENCE_TOTAL);
+	}
+
+	public byte getPriority() {
+		return (byte) getNumber(PRIORITY);
+	}
+
+	public long getTimestamp() {
+		return getNumber(TIMESTAMP);
+	}
+
+	public String getPublisher() {
+		return getString(PUBLISHER);
+	}
+
+	public String getAuthIdentifier() {
+		return getString(AUTH_IDENTIFIER);
+	}
+
+	public String getAuthGroup() {
+		return getString(AUTH_GROUP);
+	}
+
+	public long getChainPosition() {
+		return getNumber(CHAIN_POSITION);
+	}
+
+	public String getHash() {
+		return getString(HASH);
+	}
+
+	public String getPreviousHash() {
+		return getString(PREVIOUS_HASH);
+	}
+
+	public String getNonce() {
+		return getString(NONCE);
+	}
+
+	public int getDifficultyTarget() {
+		return (int) getNumber(DIFFICULTY_TARGET);
+	}
+
+	public String getInfoType() {
+		return getString(INFO_TYPE);
+	}
+
+	public String getInfoFormat() {
+		return getString(INFO_FORMAT);
+	}
+
+	/**
+	 * @return slice of wrapped buffer holding context data or null if empty
+	 */
+	public ByteBuf getContextData() {
+		return getSlice(CONTEXT_DATA);
+	}
+
+	/**
+	 * @return slice of wrapped buffer holding content data or null if empty
+	 */
+	public ByteBuf getContentData() {
+		return getSlice(CONTENT_DATA);
+	}
+}
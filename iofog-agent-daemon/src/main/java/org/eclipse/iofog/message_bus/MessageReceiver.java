@@ -18,33 +18,80 @@ import org.eclipse.iofog.microservice.Microservice;
 import org.eclipse.iofog.local_api.MessageCallback;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
-import static org.eclipse.iofog.message_bus.MessageBusServer.messageBusSessionLock;
 import static org.eclipse.iofog.utils.logging.LoggingService.logError;
 
 /**
  * receiver {@link Microservice}
+ * holds a {@link ClientConsumer} of subscription queue per publisher it receives from
  * 
  * @author saeid
  *
  */
 public class MessageReceiver implements AutoCloseable{
 	private static final String MODULE_NAME = "MessageReceiver";
+	// the lower the priority number, the higher the priority
+	private static final Comparator<Message> DELIVERY_ORDER = Comparator.<Message>comparingInt(message -> message.getPriority() & 0xFF)
+			.thenComparingLong(Message::getTimestamp);
 
 	private final String name;
 
 	private MessageListener listener;
-	private final ClientConsumer consumer;
+	private final Map<String, ClientConsumer> consumers = new ConcurrentHashMap<>();
 
-	public MessageReceiver(String name, ClientConsumer consumer) {
+	public MessageReceiver(String name) {
 		this.name = name;
-		this.consumer = consumer;
 		this.listener = null;
 	}
 
+	/**
+	 * adds {@link ClientConsumer} of subscription queue of a publisher
+	 * replaces and closes the previous one, if any
+	 * 
+	 * @param publisher - ID of publisher {@link Microservice}
+	 * @param consumer - {@link ClientConsumer}
+	 */
+	synchronized void addConsumer(String publisher, ClientConsumer consumer) {
+		if (consumer == null)
+			return;
+		ClientConsumer previous = consumers.put(publisher, consumer);
+		if (previous != null && previous != consumer)
+			closeConsumer(previous);
+		if (listener != null) {
+			try {
+				consumer.setMessageHandler(listener);
+			} catch (Exception exp) {
+				logError(MODULE_NAME, exp.getMessage(), exp);
+			}
+		}
+	}
+
+	/**
+	 * removes and closes {@link ClientConsumer} of subscription queue of a publisher
+	 * 
+	 * @param publisher - ID of publisher {@link Microservice}
+	 */
+	synchronized void removeConsumer(String publisher) {
+		ClientConsumer consumer = consumers.remove(publisher);
+		if (consumer != null)
+			closeConsumer(consumer);
+	}
+
+	/**
+	 * @return IDs of publishers this {@link Microservice} receives from
+	 */
+	Set<String> getPublishers() {
+		return consumers.keySet();
+	}
+
 	/**
 	 * receivers list of {@link Message} sent to this {@link Microservice}
+	 * higher priority messages come first, messages of the same priority are ordered by timestamp
 	 * 
 	 * @return list of {@link Message}
 	 * @throws Exception
@@ -52,12 +99,16 @@ public class MessageReceiver implements AutoCloseable{
 	synchronized List<Message> getMessages() throws Exception {
 		List<Message> result = new ArrayList<>();
 		
-		if (consumer != null || listener == null) {
-			Message message = getMessage();
-			while (message != null) {
-				result.add(message);
-				message = getMessage();
+		if (listener == null) {
+			for (ClientConsumer consumer : consumers.values()) {
+				Message message = getMessage(consumer);
+				while (message != null) {
+					result.add(message);
+					message = getMessage(consumer);
+				}
 			}
+			if (result.size() > 1)
+				result.sort(DELIVERY_ORDER);
 		}
 		return result;
 	}
@@ -65,21 +116,19 @@ public class MessageReceiver implements AutoCloseable{
 	/**
 	 * receives only one {@link Message}
 	 * 
+	 * @param consumer - {@link ClientConsumer} to receive from
 	 * @return {@link Message}
 	 * @throws Exception
 	 */
-	private Message getMessage() throws Exception {
-		if (consumer == null || listener != null)
+	private Message getMessage(ClientConsumer consumer) throws Exception {
+		if (consumer.isClosed() || listener != null)
 			return null;
 
 		Message result = null;
-		ClientMessage msg;
-		synchronized (messageBusSessionLock) {
-			msg = consumer.receiveImmediate();
-		}
+		ClientMessage msg = consumer.receiveImmediate();
 		if (msg != null) {
 			msg.acknowledge();
-			result = new Message(msg.getBytesProperty("message"));
+			result = CompactMessageCodec.decode(msg.getBytesProperty("message"));
 		}
 		return result;
 	}
@@ -92,14 +141,14 @@ public class MessageReceiver implements AutoCloseable{
 	 * enables real-time receiving for this {@link Microservice}
 	 * 
 	 */
-	void enableRealTimeReceiving() {
-		if (consumer == null || consumer.isClosed())
-			return;
+	synchronized void enableRealTimeReceiving() {
 		listener = new MessageListener(new MessageCallback(name));
 		try {
-			consumer.setMessageHandler(listener);
+			for (ClientConsumer consumer : consumers.values())
+				if (!consumer.isClosed())
+					consumer.setMessageHandler(listener);
 		} catch (Exception e) {
-			listener = null;
+			disableRealTimeReceiving();
 		}
 	}
 	
@@ -107,21 +156,27 @@ public class MessageReceiver implements AutoCloseable{
 	 * disables real-time receiving for this {@link Microservice}
 	 * 
 	 */
-	void disableRealTimeReceiving() {
-		try {
-			if (consumer == null || listener == null || consumer.getMessageHandler() == null)
-				return;
-			listener = null;
-			consumer.setMessageHandler(null);
-		} catch (Exception exp) {
-			logError(MODULE_NAME, exp.getMessage(), exp);
+	synchronized void disableRealTimeReceiving() {
+		if (listener == null)
+			return;
+		listener = null;
+		for (ClientConsumer consumer : consumers.values()) {
+			try {
+				if (!consumer.isClosed() && consumer.getMessageHandler() != null)
+					consumer.setMessageHandler(null);
+			} catch (Exception exp) {
+				logError(MODULE_NAME, exp.getMessage(), exp);
+			}
 		}
 	}
 	
-	public void close() {
-		if (consumer == null)
-			return;
+	public synchronized void close() {
 		disableRealTimeReceiving();
+		consumers.values().forEach(this::closeConsumer);
+		consumers.clear();
+	}
+
+	private void closeConsumer(ClientConsumer consumer) {
 		try {
 			consumer.close();
 		} catch (Exception exp) {
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Edgeworx, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ * Saeid Baghbidi
+ * Kilton Hopkins
+ *  Ashita Nagar
+ *******************************************************************************/
+package org.eclipse.iofog.message_bus;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * bounded lock-free ring buffer of {@link Message} with a single producer and a single consumer
+ * producer and consumer may be different threads at different times, as long as
+ * calls of each side are serialized by its caller
+ *
+ * @author saeid
+ *
+ */
+final class MessageRingBuffer {
+	private final Message[] buffer;
+	private final int mask;
+	// next position to be read, written by consumer only
+	private final AtomicLong head = new AtomicLong();
+	// next position to be written, written by producer only
+	private final AtomicLong tail = new AtomicLong();
+
+	/**
+	 * @param capacity - minimum capacity, rounded up to power of 2
+	 */
+	MessageRingBuffer(int capacity) {
+		int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+		buffer = new Message[size];
+		mask = size - 1;
+	}
+
+	/**
+	 * adds {@link Message} if buffer is not full
+	 *
+	 * @param message - {@link Message} to be added
+	 * @return false if buffer is full
+	 */
+	boolean offer(Message message) {
+		long position = tail.get();
+		if (position - head.get() >= buffer.length)
+			return false;
+		buffer[(int) position & mask] = message;
+		tail.lazySet(position + 1);
+		return true;
+	}
+
+	/**
+	 * moves up to maximum number of {@link Message} to list in order they were added
+	 *
+	 * @param result - destination list
+	 * @param maximum - maximum number of messages to be moved
+	 * @return number of moved messages
+	 */
+	int drainTo(List<Message> result, int maximum) {
+		long position = head.get();
+		int count = (int) Math.min(tail.get() - position, maximum);
+		for (int i = 0; i < count; i++) {
+			int index = (int) (position + i) & mask;
+			result.add(buffer[index]);
+			buffer[index] = null;
+		}
+		head.lazySet(position + count);
+		return count;
+	}
+
+	int size() {
+		long position = head.get();
+		return (int) (tail.get() - position);
+	}
+
+	int capacity() {
+		return buffer.length;
+	}
+}
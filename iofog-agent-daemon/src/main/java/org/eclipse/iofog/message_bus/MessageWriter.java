@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Edgeworx, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ * Saeid Baghbidi
+ * Kilton Hopkins
+ *  Ashita Nagar
+ *******************************************************************************/
+package org.eclipse.iofog.message_bus;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+
+import static org.eclipse.iofog.message_bus.MessageReader.HEADER_SIZE;
+import static org.eclipse.iofog.message_bus.MessageReader.VERSION;
+
+/**
+ * writer of ioMessage v4 wire format
+ * writes header and data of {@link Message} in one pass, filling
+ * header field lengths in place while data block is being written
+ *
+ * @author saeid
+ *
+ */
+public final class MessageWriter {
+
+	private MessageWriter() {
+	}
+
+	private static int getLength(String str) {
+		return str == null ? 0 : ByteBufUtil.utf8Bytes(str);
+	}
+
+	private static int getLength(byte[] bytes) {
+		return bytes == null ? 0 : bytes.length;
+	}
+
+	/**
+	 * computes size of encoded {@link Message}
+	 *
+	 * @param message - {@link Message} to be encoded
+	 * @return size in bytes
+	 */
+	public static int getEncodedSize(Message message) {
+		byte[] rawBytes = message.getRawBytes();
+		if (rawBytes != null)
+			return rawBytes.length;
+
+		int size = HEADER_SIZE;
+		size += getLength(message.getId());
+		size += getLength(message.getTag());
+		size += getLength(message.getMessageGroupId());
+		size += message.getSequenceNumber() == 0 ? 0 : Integer.BYTES;
+		size += message.getSequenceTotal() == 0 ? 0 : Integer.BYTES;
+		size += message.getPriority() == 0 ? 0 : Byte.BYTES;
+		size += message.getTimestamp() == 0 ? 0 : Long.BYTES;
+		size += getLength(message.getPublisher());
+		size += getLength(message.getAuthIdentifier());
+		size += getLength(message.getAuthGroup());
+		size += message.getChainPosition() == 0 ? 0 : Long.BYTES;
+		size += getLength(message.getHash());
+		size += getLength(message.getPreviousHash());
+		size += getLength(message.getNonce());
+		size += message.getDifficultyTarget() == 0 ? 0 : Integer.BYTES;
+		size += getLength(message.getInfoType());
+		size += getLength(message.getInfoFormat());
+		size += getLength(message.getContextData());
+		size += getLength(message.getContentData());
+		return size;
+	}
+
+	/**
+	 * encodes {@link Message} to a new byte array of exact size
+	 *
+	 * @param message - {@link Message} to be encoded
+	 * @return encoded bytes
+	 */
+	public static byte[] encode(Message message) {
+		byte[] result = new byte[getEncodedSize(message)];
+		write(message, Unpooled.wrappedBuffer(result).clear());
+		return result;
+	}
+
+	/**
+	 * encodes {@link Message} to a buffer of exact size taken from allocator
+	 * caller is responsible for releasing returned buffer
+	 *
+	 * @param message - {@link Message} to be encoded
+	 * @param allocator - allocator of destination buffer
+	 * @return buffer containing encoded {@link Message}
+	 */
+	public static ByteBuf encode(Message message, ByteBufAllocator allocator) {
+		ByteBuf out = allocator.buffer(getEncodedSize(message));
+		write(message, out);
+		return out;
+	}
+
+	/**
+	 * writes encoded {@link Message} at writer index of buffer
+	 * if {@link Message} has not been modified since decoding, its original bytes are copied as is
+	 *
+	 * @param message - {@link Message} to be encoded
+	 * @param out - destination buffer, should have {@link #getEncodedSize(Message)} bytes writable
+	 */
+	public static void write(Message message, ByteBuf out) {
+		byte[] rawBytes = message.getRawBytes();
+		if (rawBytes != null) {
+			out.writeBytes(rawBytes);
+			return;
+		}
+
+		int index = out.writerIndex();
+		out.writeZero(HEADER_SIZE);
+
+		out.setShort(index, VERSION);
+		out.setByte(index + 2, writeString(out, message.getId()));
+		out.setShort(index + 3, writeString(out, message.getTag()));
+		out.setByte(index + 5, writeString(out, message.getMessageGroupId()));
+
+		if (message.getSequenceNumber() != 0) {
+			out.writeInt(message.getSequenceNumber());
+			out.setByte(index + 6, Integer.BYTES);
+		}
+		if (message.getSequenceTotal() != 0) {
+			out.writeInt(message.getSequenceTotal());
+			out.setByte(index + 7, Integer.BYTES);
+		}
+		if (message.getPriority() != 0) {
+			out.writeByte(message.getPriority());
+			out.setByte(index + 8, Byte.BYTES);
+		}
+		if (message.getTimestamp() != 0) {
+			out.writeLong(message.getTimestamp());
+			out.setByte(index + 9, Long.BYTES);
+		}
+
+		out.setByte(index + 10, writeString(out, message.getPublisher()));
+		out.setShort(index + 11, writeString(out, message.getAuthIdentifier()));
+		out.setShort(index + 13, writeString(out, message.getAuthGroup()));
+
+		if (message.getChainPosition() != 0) {
+			out.writeLong(message.getChainPosition());
+			out.setByte(index + 15, Long.BYTES);
+		}
+
+		out.setShort(index + 16, writeString(out, message.getHash()));
+		out.setShort(index + 18, writeString(out, message.getPreviousHash()));
+		out.setShort(index + 20, writeString(out, message.getNonce()));
+
+		if (message.getDifficultyTarget() != 0) {
+			out.writeInt(message.getDifficultyTarget());
+			out.setByte(index + 22, Integer.BYTES);
+		}
+
+		out.setByte(index + 23, writeString(out, message.getInfoType()));
+		out.setByte(index + 24, writeString(out, message.getInfoFormat()));
+		out.setInt(index + 25, writeBytes(out, message.getContextData()));
+		out.setInt(index + 29, writeBytes(out, message.getContentData()));
+	}
+
+	private static int writeString(ByteBuf out, String value) {
+		return value == null ? 0 : ByteBufUtil.reserveAndWriteUtf8(out, value, getLength(value));
+	}
+
+	private static int writeBytes(ByteBuf out, byte[] value) {
+		if (value == null)
+			return 0;
+		out.writeBytes(value);
+		return value.length;
+	}
+}
@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Edgeworx, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ * Saeid Baghbidi
+ * Kilton Hopkins
+ *  Ashita Nagar
+ *******************************************************************************/
+package org.eclipse.iofog.microservice;
+
+/**
+ * compression of message content for a route
+ * 
+ * @author saeid
+ *
+ */
+public enum MessageCompression {
+	NONE("none"),
+	DEFLATE("deflate");
+
+	private final String name;
+
+	MessageCompression(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @param name - name of compression as sent by controller, may be null
+	 * @return {@link MessageCompression}, NONE if name is unknown
+	 */
+	public static MessageCompression fromName(String name) {
+		for (MessageCompression compression : values()) {
+			if (compression.name.equalsIgnoreCase(name))
+				return compression;
+		}
+		return NONE;
+	}
+}
@@ -27,6 +27,7 @@ public class Microservice {
     private List<PortMapping> portMappings;
     private String config;
     private List<String> routes;
+    private MessageCompression messageCompression = MessageCompression.NONE;
     private String containerId;
     private int registryId;
     private String containerIpAddress;
@@ -179,4 +180,12 @@ public class Microservice {
     public void setRoutes(List<String> routes) {
         this.routes = routes;
     }
+
+    public MessageCompression getMessageCompression() {
+        return messageCompression;
+    }
+
+    public void setMessageCompression(MessageCompression messageCompression) {
+        this.messageCompression = messageCompression;
+    }
 }
@@ -23,9 +23,11 @@ import java.util.List;
  */
 public class Route {
 	private List<String> receivers;
+	private MessageCompression compression;
 	
 	public Route() {
 		receivers = new ArrayList<>();
+		compression = MessageCompression.NONE;
 	}
 
 	public List<String> getReceivers() {
@@ -36,6 +38,14 @@ public class Route {
 		this.receivers = receivers;
 	}
 
+	public MessageCompression getCompression() {
+		return compression;
+	}
+
+	public void setCompression(MessageCompression compression) {
+		this.compression = compression == null ? MessageCompression.NONE : compression;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder in = new StringBuilder("\"receivers\" : [");
@@ -43,7 +53,7 @@ public class Route {
 			for (String e : receivers)
 				in.append("\"").append(e).append("\",");
 		in.append("]");
-		return "{" + in + "}";
+		return "{" + in + ", \"compression\" : \"" + compression.getName() + "\"}";
 	}
 
 	@Override
@@ -51,11 +61,11 @@ public class Route {
 		if (this == o) return true;
 		if (o == null || getClass() != o.getClass()) return false;
 		Route route = (Route) o;
-		return receivers.equals(route.receivers);
+		return receivers.equals(route.receivers) && compression == route.compression;
 	}
 
 	@Override
 	public int hashCode() {
-		return receivers.hashCode();
+		return 31 * receivers.hashCode() + compression.hashCode();
 	}
 }
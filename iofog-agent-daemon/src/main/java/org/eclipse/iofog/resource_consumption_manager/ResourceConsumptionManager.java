@@ -16,6 +16,7 @@ import org.apache.commons.lang.SystemUtils;
 import org.eclipse.iofog.IOFogModule;
 import org.eclipse.iofog.command_line.util.CommandShellResultSet;
 import org.eclipse.iofog.exception.AgentSystemException;
+import org.eclipse.iofog.message_bus.MessageBus;
 import org.eclipse.iofog.status_reporter.StatusReporter;
 import org.eclipse.iofog.utils.Constants;
 import org.eclipse.iofog.utils.configuration.Configuration;
@@ -23,7 +24,6 @@ import org.eclipse.iofog.utils.functional.Pair;
 
 import java.io.*;
 import java.lang.management.ManagementFactory;
-import java.util.Arrays;
 import java.util.List;
 
 import static org.apache.commons.lang.StringUtils.EMPTY;
@@ -114,36 +114,13 @@ public class ResourceConsumptionManager implements IOFogModule {
 	};
 
 	/**
-	 * remove old archives
+	 * requests old archives to be removed, which {@link MessageBus} does in background
 	 * 
 	 * @param amount - disk space to be freed in bytes
 	 */
 	private void removeArchives(float amount) {
-		logInfo("Start remove archives : " + amount);
-		String archivesDirectory = Configuration.getDiskDirectory() + "messages/archive/";
-		
-		final File workingDirectory = new File(archivesDirectory);
-		File[] filesList = workingDirectory.listFiles((dir, fileName) ->
-				fileName.substring(fileName.indexOf(".")).equals(".idx"));
-
-		if (filesList != null) {
-			Arrays.sort(filesList, (o1, o2) -> {
-				String t1 = o1.getName().substring(o1.getName().indexOf('_') + 1, o1.getName().indexOf("."));
-				String t2 = o2.getName().substring(o2.getName().indexOf('_') + 1, o2.getName().indexOf("."));
-				return t1.compareTo(t2);
-			});
-
-			for (File indexFile : filesList) {
-				File dataFile = new File(archivesDirectory + indexFile.getName().substring(0, indexFile.getName().indexOf('.')) + ".iomsg");
-				amount -= indexFile.length();
-				indexFile.delete();
-				amount -= dataFile.length();
-				dataFile.delete();
-				if (amount < 0)
-					break;
-			}
-		}
-		logInfo("Finished remove archives : ");
+		logInfo("Request remove archives : " + amount);
+		MessageBus.getInstance().releaseArchiveSpace((long) amount);
 	}
 	
 	/**
@@ -114,6 +114,11 @@ public final class StatusReporter {
 		result.append("\\nRunning Microservices       : ").append(processManagerStatus.getRunningMicroservicesCount());
 		result.append("\\nConnection to Controller    : ").append(connectionStatus);
 		result.append(String.format(Locale.US, "\\nMessages Processed          : about %,d", messageBusStatus.getProcessedMessages()));
+		result.append(String.format(Locale.US, "\\nMessages Awaiting Archive   : about %,d", messageBusStatus.getArchiveQueueDepth()));
+		result.append(String.format(Locale.US, "\\nMessages Not Archived       : %,d", messageBusStatus.getArchiveDroppedMessages()));
+		result.append(String.format(Locale.US, "\\nMessages Dropped            : %,d", messageBusStatus.getDroppedMessages()));
+		result.append(String.format(Locale.US, "\\nMessages Paged              : %,d", messageBusStatus.getPagedMessages()));
+		result.append(String.format(Locale.US, "\\nMessages Expired            : %,d", messageBusStatus.getExpiredMessages()));
 		result.append("\\nSystem Time                 : ").append(dateFormat.format(cal.getTime()));
 
 		result.append("\\nSystem Available Disk       : ").append(String.format("%.2f MB", availableDisk));
@@ -123,6 +123,8 @@ public class Constants {
     public static final String FIELD_AGENT_POST_DIAGNOSTIC = "FAPD";
 	public static final String MESSAGE_BUS_CALCULATE_SPEED = "MBCS";
 	public static final String MESSAGE_BUS_CHECK_MESSAGE_SERVER_STATUS = "MBSS";
+	public static final String MESSAGE_BUS_ARCHIVE_MESSAGES = "MBAM";
+	public static final String MESSAGE_BUS_ARCHIVE_RETENTION = "MBAR";
 	public static final String STATUS_REPORTER_SET_STATUS_REPORTER_SYSTEM_TIME = "SRST";
 	public static final String LOCAL_API_EVENT = "LAPI";
 	public static final String RESOURCE_CONSUMPTION_MANAGER_GET_USAGE_DATA = "RCUD";
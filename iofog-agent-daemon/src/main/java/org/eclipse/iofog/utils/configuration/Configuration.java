@@ -21,6 +21,9 @@ import org.eclipse.iofog.exception.AgentUserException;
 import org.eclipse.iofog.field_agent.FieldAgent;
 import org.eclipse.iofog.gps.GpsMode;
 import org.eclipse.iofog.gps.GpsWebHandler;
+import org.eclipse.iofog.message_bus.AddressFullPolicy;
+import org.eclipse.iofog.message_bus.ArchiveDurability;
+import org.eclipse.iofog.message_bus.ArchiveEngine;
 import org.eclipse.iofog.message_bus.MessageBus;
 import org.eclipse.iofog.network.IOFogNetworkInterface;
 import org.eclipse.iofog.process_manager.ProcessManager;
@@ -98,6 +101,16 @@ public final class Configuration {
     private static int changeFrequency;
     private static int deviceScanFrequency;
     private static int postDiagnosticsFreq;
+    private static boolean archiveBackpressureBlocking;
+    private static ArchiveDurability archiveDurability;
+    private static ArchiveEngine archiveEngine;
+    private static int archiveSegmentSize;
+    private static int archiveSegmentMessages;
+    private static int archiveSegmentAge;
+    private static int archiveRetentionSize;
+    private static int archiveRetentionAge;
+    private static AddressFullPolicy addressFullPolicy;
+    private static int receiverQueueLimit;
     private static boolean watchdogEnabled;
     private static String gpsCoordinates;
     private static GpsMode gpsMode;
@@ -118,6 +131,9 @@ public final class Configuration {
     private static String dockerApiVersion;
     private static int setSystemTimeFreqSeconds;
     private static int monitorSshTunnelStatusFreqSeconds;
+    private static int archiveQueueCapacity;
+    private static int archiveSyncIntervalMillis;
+    private static int archiveSyncMessages;
 
     private static void updateAutomaticConfigParams() {
     	LoggingService.logInfo(MODULE_NAME, "Start update Automatic ConfigParams ");
@@ -132,6 +148,9 @@ public final class Configuration {
                 dockerApiVersion = "1.23";
                 setSystemTimeFreqSeconds = 60;
                 monitorSshTunnelStatusFreqSeconds = 30;
+                archiveQueueCapacity = 1024;
+                archiveSyncIntervalMillis = 1000;
+                archiveSyncMessages = 1000;
                 break;
             case INTEL_AMD:
                 statusReportFreqSeconds = 5;
@@ -143,6 +162,9 @@ public final class Configuration {
                 dockerApiVersion = "1.23";
                 setSystemTimeFreqSeconds = 60;
                 monitorSshTunnelStatusFreqSeconds = 10;
+                archiveQueueCapacity = 8192;
+                archiveSyncIntervalMillis = 500;
+                archiveSyncMessages = 5000;
                 break;
         }
         LoggingService.logInfo(MODULE_NAME, "Finished update Automatic ConfigParams ");
@@ -164,6 +186,18 @@ public final class Configuration {
         return monitorSshTunnelStatusFreqSeconds;
     }
 
+    public static int getArchiveQueueCapacity() {
+        return archiveQueueCapacity;
+    }
+
+    public static int getArchiveSyncIntervalMillis() {
+        return archiveSyncIntervalMillis;
+    }
+
+    public static int getArchiveSyncMessages() {
+        return archiveSyncMessages;
+    }
+
     public static int getMonitorContainersStatusFreqSeconds() {
         return monitorContainersStatusFreqSeconds;
     }
@@ -256,6 +290,86 @@ public final class Configuration {
         Configuration.postDiagnosticsFreq = postDiagnosticsFreq;
     }
 
+    public static boolean isArchiveBackpressureBlocking() {
+        return archiveBackpressureBlocking;
+    }
+
+    public static void setArchiveBackpressureBlocking(boolean archiveBackpressureBlocking) {
+        Configuration.archiveBackpressureBlocking = archiveBackpressureBlocking;
+    }
+
+    public static ArchiveDurability getArchiveDurability() {
+        return archiveDurability;
+    }
+
+    public static void setArchiveDurability(ArchiveDurability archiveDurability) {
+        Configuration.archiveDurability = archiveDurability;
+    }
+
+    public static ArchiveEngine getArchiveEngine() {
+        return archiveEngine;
+    }
+
+    public static void setArchiveEngine(ArchiveEngine archiveEngine) {
+        Configuration.archiveEngine = archiveEngine;
+    }
+
+    public static int getArchiveSegmentSize() {
+        return archiveSegmentSize;
+    }
+
+    public static void setArchiveSegmentSize(int archiveSegmentSize) {
+        Configuration.archiveSegmentSize = archiveSegmentSize;
+    }
+
+    public static int getArchiveSegmentMessages() {
+        return archiveSegmentMessages;
+    }
+
+    public static void setArchiveSegmentMessages(int archiveSegmentMessages) {
+        Configuration.archiveSegmentMessages = archiveSegmentMessages;
+    }
+
+    public static int getArchiveSegmentAge() {
+        return archiveSegmentAge;
+    }
+
+    public static void setArchiveSegmentAge(int archiveSegmentAge) {
+        Configuration.archiveSegmentAge = archiveSegmentAge;
+    }
+
+    public static int getArchiveRetentionSize() {
+        return archiveRetentionSize;
+    }
+
+    public static void setArchiveRetentionSize(int archiveRetentionSize) {
+        Configuration.archiveRetentionSize = archiveRetentionSize;
+    }
+
+    public static int getArchiveRetentionAge() {
+        return archiveRetentionAge;
+    }
+
+    public static void setArchiveRetentionAge(int archiveRetentionAge) {
+        Configuration.archiveRetentionAge = archiveRetentionAge;
+    }
+
+    public static AddressFullPolicy getAddressFullPolicy() {
+        return addressFullPolicy;
+    }
+
+    public static void setAddressFullPolicy(AddressFullPolicy addressFullPolicy) {
+        Configuration.addressFullPolicy = addressFullPolicy;
+    }
+
+    public static int getReceiverQueueLimit() {
+        return receiverQueueLimit;
+    }
+
+    public static void setReceiverQueueLimit(int receiverQueueLimit) {
+        Configuration.receiverQueueLimit = receiverQueueLimit;
+    }
+
     public static ArchitectureType getFogType() {
         return fogType;
     }
@@ -605,6 +719,135 @@ public final class Configuration {
                     setNode(POST_DIAGNOSTICS_FREQ, value, configFile, configElement);
                     setPostDiagnosticsFreq(Integer.parseInt(value));
                     break;
+                case ARCHIVE_BACKPRESSURE:
+                	LoggingService.logInfo(MODULE_NAME, "Setting archive backpressure");
+                    if (!"block".equalsIgnoreCase(value) && !"drop".equalsIgnoreCase(value)) {
+                        messageMap.put(option, "Option -" + option + " has invalid value: " + value);
+                        break;
+                    }
+                    setNode(ARCHIVE_BACKPRESSURE, value, configFile, configElement);
+                    setArchiveBackpressureBlocking(!"drop".equalsIgnoreCase(value));
+                    break;
+                case ARCHIVE_DURABILITY:
+                	LoggingService.logInfo(MODULE_NAME, "Setting archive durability");
+                    ArchiveDurability durability = ArchiveDurability.fromName(value);
+                    if (durability == null) {
+                        messageMap.put(option, "Option -" + option + " has invalid value: " + value);
+                        break;
+                    }
+                    setNode(ARCHIVE_DURABILITY, value, configFile, configElement);
+                    setArchiveDurability(durability);
+                    break;
+                case ARCHIVE_ENGINE:
+                	LoggingService.logInfo(MODULE_NAME, "Setting archive engine");
+                    ArchiveEngine engine = ArchiveEngine.fromName(value);
+                    if (engine == null) {
+                        messageMap.put(option, "Option -" + option + " has invalid value: " + value);
+                        break;
+                    }
+                    setNode(ARCHIVE_ENGINE, value, configFile, configElement);
+                    setArchiveEngine(engine);
+                    break;
+                case ARCHIVE_SEGMENT_SIZE:
+                	LoggingService.logInfo(MODULE_NAME, "Setting archive segment size");
+                    try {
+                        intValue = Integer.parseInt(value);
+                    } catch (NumberFormatException e) {
+                        messageMap.put(option, "Option -" + option + " has invalid value: " + value);
+                        break;
+                    }
+                    if (intValue < 1 || intValue > 1024) {
+                        messageMap.put(option, "Archive segment size range must be 1 to 1024 MiB");
+                        break;
+                    }
+                    setNode(ARCHIVE_SEGMENT_SIZE, value, configFile, configElement);
+                    setArchiveSegmentSize(intValue);
+                    break;
+                case ARCHIVE_SEGMENT_MESSAGES:
+                	LoggingService.logInfo(MODULE_NAME, "Setting archive segment messages");
+                    try {
+                        intValue = Integer.parseInt(value);
+                    } catch (NumberFormatException e) {
+                        messageMap.put(option, "Option -" + option + " has invalid value: " + value);
+                        break;
+                    }
+                    if (intValue < 1 || intValue > 1000000) {
+                        messageMap.put(option, "Archive segment messages range must be 1 to 1000000");
+                        break;
+                    }
+                    setNode(ARCHIVE_SEGMENT_MESSAGES, value, configFile, configElement);
+                    setArchiveSegmentMessages(intValue);
+                    break;
+                case ARCHIVE_SEGMENT_AGE:
+                	LoggingService.logInfo(MODULE_NAME, "Setting archive segment age");
+                    try {
+                        intValue = Integer.parseInt(value);
+                    } catch (NumberFormatException e) {
+                        messageMap.put(option, "Option -" + option + " has invalid value: " + value);
+                        break;
+                    }
+                    if (intValue < 0) {
+                        messageMap.put(option, "Archive segment age must not be negative");
+                        break;
+                    }
+                    setNode(ARCHIVE_SEGMENT_AGE, value, configFile, configElement);
+                    setArchiveSegmentAge(intValue);
+                    break;
+                case ARCHIVE_RETENTION_SIZE:
+                	LoggingService.logInfo(MODULE_NAME, "Setting archive retention size");
+                    try {
+                        intValue = Integer.parseInt(value);
+                    } catch (NumberFormatException e) {
+                        messageMap.put(option, "Option -" + option + " has invalid value: " + value);
+                        break;
+                    }
+                    if (intValue < 0) {
+                        messageMap.put(option, "Archive retention size must not be negative");
+                        break;
+                    }
+                    setNode(ARCHIVE_RETENTION_SIZE, value, configFile, configElement);
+                    setArchiveRetentionSize(intValue);
+                    break;
+                case ARCHIVE_RETENTION_AGE:
+                	LoggingService.logInfo(MODULE_NAME, "Setting archive retention age");
+                    try {
+                        intValue = Integer.parseInt(value);
+                    } catch (NumberFormatException e) {
+                        messageMap.put(option, "Option -" + option + " has invalid value: " + value);
+                        break;
+                    }
+                    if (intValue < 0) {
+                        messageMap.put(option, "Archive retention age must not be negative");
+                        break;
+                    }
+                    setNode(ARCHIVE_RETENTION_AGE, value, configFile, configElement);
+                    setArchiveRetentionAge(intValue);
+                    break;
+                case ADDRESS_FULL_POLICY:
+                	LoggingService.logInfo(MODULE_NAME, "Setting address full policy");
+                    AddressFullPolicy policy = AddressFullPolicy.fromName(value);
+                    if (policy == null) {
+                        messageMap.put(option, "Option -" + option + " has invalid value: " + value);
+                        break;
+                    }
+                    setNode(ADDRESS_FULL_POLICY, value, configFile, configElement);
+                    setAddressFullPolicy(policy);
+                    break;
+                case RECEIVER_QUEUE_LIMIT:
+                	LoggingService.logInfo(MODULE_NAME, "Setting receiver queue limit");
+                    try {
+                        intValue = Integer.parseInt(value);
+                    } catch (NumberFormatException e) {
+                        messageMap.put(option, "Option -" + option + " has invalid value: " + value);
+                        break;
+                    }
+                    if (intValue < 0) {
+                        messageMap.put(option, "Receiver queue limit must not be negative");
+                        break;
+                    }
+                    setNode(RECEIVER_QUEUE_LIMIT, value, configFile, configElement);
+                    setReceiverQueueLimit(intValue);
+                    break;
                 case WATCHDOG_ENABLED:
                 	LoggingService.logInfo(MODULE_NAME, "Setting watchdog enabled");
                     if (!"off".equalsIgnoreCase(value) && !"on".equalsIgnoreCase(value)) {
@@ -870,6 +1113,19 @@ public final class Configuration {
         setStatusFrequency(Integer.parseInt(getNode(STATUS_FREQUENCY, configFile)));
         setPostDiagnosticsFreq(Integer.parseInt(getNode(POST_DIAGNOSTICS_FREQ, configFile)));
         setWatchdogEnabled(!getNode(WATCHDOG_ENABLED, configFile).equals("off"));
+        setArchiveBackpressureBlocking(!getNode(ARCHIVE_BACKPRESSURE, configFile).equalsIgnoreCase("drop"));
+        ArchiveDurability durability = ArchiveDurability.fromName(getNode(ARCHIVE_DURABILITY, configFile));
+        setArchiveDurability(durability != null ? durability : ArchiveDurability.fromName(ARCHIVE_DURABILITY.getDefaultValue()));
+        ArchiveEngine engine = ArchiveEngine.fromName(getNode(ARCHIVE_ENGINE, configFile));
+        setArchiveEngine(engine != null ? engine : ArchiveEngine.fromName(ARCHIVE_ENGINE.getDefaultValue()));
+        setArchiveSegmentSize(Integer.parseInt(getNode(ARCHIVE_SEGMENT_SIZE, configFile)));
+        setArchiveSegmentMessages(Integer.parseInt(getNode(ARCHIVE_SEGMENT_MESSAGES, configFile)));
+        setArchiveSegmentAge(Integer.parseInt(getNode(ARCHIVE_SEGMENT_AGE, configFile)));
+        setArchiveRetentionSize(Integer.parseInt(getNode(ARCHIVE_RETENTION_SIZE, configFile)));
+        setArchiveRetentionAge(Integer.parseInt(getNode(ARCHIVE_RETENTION_AGE, configFile)));
+        AddressFullPolicy policy = AddressFullPolicy.fromName(getNode(ADDRESS_FULL_POLICY, configFile));
+        setAddressFullPolicy(policy != null ? policy : AddressFullPolicy.fromName(ADDRESS_FULL_POLICY.getDefaultValue()));
+        setReceiverQueueLimit(Integer.parseInt(getNode(RECEIVER_QUEUE_LIMIT, configFile)));
         configureFogType(getNode(FOG_TYPE, configFile));
         setDeveloperMode(!getNode(DEV_MODE, configFile).equals("off"));
         setIpAddressExternal(GpsWebHandler.getExternalIp());
@@ -1144,6 +1400,26 @@ public final class Configuration {
         result.append(buildReportLine(getConfigParamMessage(DEVICE_SCAN_FREQUENCY), format("%d", deviceScanFrequency)));
         // post diagnostics frequency
         result.append(buildReportLine(getConfigParamMessage(POST_DIAGNOSTICS_FREQ), format("%d", postDiagnosticsFreq)));
+        // archive backpressure
+        result.append(buildReportLine(getConfigParamMessage(ARCHIVE_BACKPRESSURE), (archiveBackpressureBlocking ? "block" : "drop")));
+        // archive durability
+        result.append(buildReportLine(getConfigParamMessage(ARCHIVE_DURABILITY), archiveDurability.getName()));
+        // archive engine
+        result.append(buildReportLine(getConfigParamMessage(ARCHIVE_ENGINE), archiveEngine.getName()));
+        // archive segment size
+        result.append(buildReportLine(getConfigParamMessage(ARCHIVE_SEGMENT_SIZE), format("%d", archiveSegmentSize)));
+        // archive segment messages
+        result.append(buildReportLine(getConfigParamMessage(ARCHIVE_SEGMENT_MESSAGES), format("%d", archiveSegmentMessages)));
+        // archive segment age
+        result.append(buildReportLine(getConfigParamMessage(ARCHIVE_SEGMENT_AGE), format("%d", archiveSegmentAge)));
+        // archive retention size
+        result.append(buildReportLine(getConfigParamMessage(ARCHIVE_RETENTION_SIZE), format("%d", archiveRetentionSize)));
+        // archive retention age
+        result.append(buildReportLine(getConfigParamMessage(ARCHIVE_RETENTION_AGE), format("%d", archiveRetentionAge)));
+        // address full policy
+        result.append(buildReportLine(getConfigParamMessage(ADDRESS_FULL_POLICY), addressFullPolicy.getName()));
+        // receiver queue limit
+        result.append(buildReportLine(getConfigParamMessage(RECEIVER_QUEUE_LIMIT), format("%d", receiverQueueLimit)));
         // log file directory
         result.append(buildReportLine(getConfigParamMessage(WATCHDOG_ENABLED), (watchdogEnabled ? "on" : "off")));
         // gps mode
@@ -0,0 +1,277 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Edgeworx, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ * Saeid Baghbidi
+ * Kilton Hopkins
+ *  Ashita Nagar
+ *******************************************************************************/
+package org.eclipse.iofog.message_bus;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CompactMessageCodecTest {
+
+    private Message createMessage(String tag) {
+        Message message = new Message("publisher");
+        message.setId("4Hbn6jLMmpvHNTfSNaQzzb");
+        message.setTag(tag);
+        message.setMessageGroupId("group");
+        message.setSequenceNumber(-1);
+        message.setSequenceTotal(3);
+        message.setPriority((byte) 200);
+        message.setTimestamp(1546300800000L);
+        message.setAuthIdentifier("auth");
+        message.setChainPosition(Long.MAX_VALUE);
+        message.setHash("hash");
+        message.setDifficultyTarget(Integer.MIN_VALUE);
+        message.setInfoType("text");
+        message.setInfoFormat("utf-8");
+        message.setContextData(new byte[]{1, 2, 3});
+        message.setContentData("content".getBytes(UTF_8));
+        return message;
+    }
+
+    private void assertSameFields(Message expected, Message actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getTag(), actual.getTag());
+        assertEquals(expected.getMessageGroupId(), actual.getMessageGroupId());
+        assertEquals(expected.getSequenceNumber(), actual.getSequenceNumber());
+        assertEquals(expected.getSequenceTotal(), actual.getSequenceTotal());
+        assertEquals(expected.getPriority(), actual.getPriority());
+        assertEquals(expected.getTimestamp(), actual.getTimestamp());
+        assertEquals(expected.getPublisher(), actual.getPublisher());
+        assertEquals(expected.getAuthIdentifier(), actual.getAuthIdentifier());
+        assertEquals(expected.getAuthGroup(), actual.getAuthGroup());
+        assertEquals(expected.getChainPosition(), actual.getChainPosition());
+        assertEquals(expected.getHash(), actual.getHash());
+        assertEquals(expected.getPreviousHash(), actual.getPreviousHash());
+        assertEquals(expected.getNonce(), actual.getNonce());
+        assertEquals(expected.getDifficultyTarget(), actual.getDifficultyTarget());
+        assertEquals(expected.getInfoType(), actual.getInfoType());
+        assertEquals(expected.getInfoFormat(), actual.getInfoFormat());
+        assertArrayEquals(expected.getContextData(), actual.getContextData());
+        assertArrayEquals(expected.getContentData(), actual.getContentData());
+    }
+
+    @Test
+    public void roundTrip() {
+        Message message = createMessage("tag");
+        byte[] bytes = CompactMessageCodec.encode(message);
+        assertTrue(bytes.length < message.getBytes().length);
+        assertSameFields(message, CompactMessageCodec.decode(bytes));
+    }
+
+    @Test
+    public void decodesV4() {
+        Message message = createMessage("tag");
+        assertSameFields(message, CompactMessageCodec.decode(message.getBytes()));
+    }
+
+    @Test
+    public void roundTripCompressed() {
+        Message message = createMessage("tag");
+        byte[] content = new byte[4096];
+        Arrays.fill(content, (byte) 'a');
+        message.setContentData(content);
+        message.setCompressContent(true);
+        byte[] bytes = CompactMessageCodec.encode(message);
+        assertTrue(bytes.length < content.length);
+        Message decoded = CompactMessageCodec.decode(bytes);
+        assertTrue(decoded.isCompressContent());
+        assertSameFields(message, decoded);
+    }
+
+    @Test
+    public void compressedContentIsReused() {
+        Message message = createMessage("tag");
+        byte[] content = new byte[4096];
+        Arrays.fill(content, (byte) 'a');
+        message.setContentData(content);
+        message.setCompressContent(true);
+        byte[] bytes = CompactMessageCodec.encode(message);
+        byte[] compressed = message.getCompressedContent();
+        assertArrayEquals(bytes, CompactMessageCodec.encode(message));
+        assertTrue(compressed == message.getCompressedContent());
+
+        Message decoded = CompactMessageCodec.decode(bytes);
+        assertArrayEquals(compressed, decoded.getCompressedContent());
+        assertEquals(content.length, decoded.getCompressedContentSize());
+        assertArrayEquals(bytes, CompactMessageCodec.encode(decoded));
+
+        decoded.setContentData("other".getBytes(UTF_8));
+        assertNull(decoded.getCompressedContent());
+        assertArrayEquals("other".getBytes(UTF_8), CompactMessageCodec.decode(CompactMessageCodec.encode(decoded)).getContentData());
+    }
+
+    @Test
+    public void dictionaryReferences() {
+        MessageDictionary writer = new MessageDictionary();
+        MessageDictionary reader = new MessageDictionary();
+        ByteBuf buffer = Unpooled.buffer();
+        Message message = createMessage("tag");
+        CompactMessageCodec.write(message, buffer, writer, true);
+        int first = buffer.readableBytes();
+        CompactMessageCodec.write(message, buffer, writer, true);
+        assertTrue(buffer.readableBytes() - first < first);
+
+        assertSameFields(message, CompactMessageCodec.read(buffer, reader));
+        assertSameFields(message, CompactMessageCodec.read(buffer, reader));
+        assertFalse(buffer.isReadable());
+        assertEquals(writer.size(), reader.size());
+    }
+
+    @Test
+    public void dictionaryOverflow() {
+        MessageDictionary writer = new MessageDictionary();
+        MessageDictionary reader = new MessageDictionary();
+        ByteBuf buffer = Unpooled.buffer();
+        int count = MessageDictionary.MAXIMUM_ENTRIES + 100;
+        for (int i = 0; i < count; i++)
+            CompactMessageCodec.write(createMessage("tag" + i), buffer, writer, true);
+
+        for (int i = 0; i < count; i++)
+            assertEquals("tag" + i, CompactMessageCodec.read(buffer, reader).getTag());
+        assertFalse(buffer.isReadable());
+        assertEquals(MessageDictionary.MAXIMUM_ENTRIES, writer.size());
+        assertEquals(MessageDictionary.MAXIMUM_ENTRIES, reader.size());
+    }
+
+    @Test
+    public void longStringIsNotAddedToDictionary() {
+        MessageDictionary writer = new MessageDictionary();
+        MessageDictionary reader = new MessageDictionary();
+        char[] tag = new char[MessageDictionary.MAXIMUM_ENTRY_LENGTH + 1];
+        Arrays.fill(tag, 't');
+        Message message = createMessage(new String(tag));
+        ByteBuf buffer = Unpooled.buffer();
+        CompactMessageCodec.write(message, buffer, writer, true);
+        assertEquals(message.getTag(), CompactMessageCodec.read(buffer, reader).getTag());
+        assertEquals(-1, reader.indexOf(message.getTag()));
+    }
+
+    @Test
+    public void referenceWithoutDictionaryIsRejected() {
+        MessageDictionary writer = new MessageDictionary();
+        ByteBuf buffer = Unpooled.buffer();
+        CompactMessageCodec.write(createMessage("tag"), buffer, writer, false);
+        try {
+            CompactMessageCodec.read(buffer, null);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void unknownReferenceIsRejected() {
+        MessageDictionary writer = new MessageDictionary();
+        ByteBuf buffer = Unpooled.buffer();
+        CompactMessageCodec.write(createMessage("tag"), buffer, writer, false);
+        try {
+            CompactMessageCodec.read(buffer, new MessageDictionary());
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void truncatedMessageIsRejected() {
+        byte[] bytes = CompactMessageCodec.encode(createMessage("tag"));
+        for (int length = 2; length < bytes.length; length++) {
+            try {
+                CompactMessageCodec.decode(Arrays.copyOf(bytes, length));
+                fail("decoded message truncated to " + length + " bytes");
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void unsupportedFlagsAreRejected() {
+        byte[] bytes = CompactMessageCodec.encode(createMessage("tag"));
+        bytes[2] = 0x02;
+        try {
+            CompactMessageCodec.decode(bytes);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void malformedVarintIsRejected() {
+        byte[] bytes = new byte[16];
+        Arrays.fill(bytes, (byte) 0xFF);
+        try {
+            CompactMessageCodec.readVarint(Unpooled.wrappedBuffer(bytes));
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void oversizedCompressedContentIsRejected() {
+        // few bytes of compressed content declaring an original size of almost 2 GB
+        byte[] header = CompactMessageCodec.encode(new Message());
+        byte[] compressed = MessageCompressor.compress(new byte[1024]);
+        long size = Integer.MAX_VALUE - 16;
+        ByteBuf buffer = Unpooled.buffer();
+        buffer.writeBytes(header, 0, header.length - 1);
+        buffer.setByte(2, CompactMessageCodec.FLAG_COMPRESSED);
+        CompactMessageCodec.writeVarint(buffer, compressed.length + CompactMessageCodec.varintSize(size));
+        CompactMessageCodec.writeVarint(buffer, size);
+        buffer.writeBytes(compressed);
+        try {
+            CompactMessageCodec.read(buffer, null);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getCause() instanceof DataFormatException);
+        }
+    }
+
+    @Test
+    public void decompressRejectsImpossibleSize() {
+        byte[] compressed = MessageCompressor.compress(new byte[1024]);
+        try {
+            MessageCompressor.decompress(compressed, Integer.MAX_VALUE - 8);
+            fail();
+        } catch (DataFormatException e) {
+            // expected
+        }
+        try {
+            MessageCompressor.decompress(compressed, -1);
+            fail();
+        } catch (DataFormatException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void nullFields() {
+        Message message = new Message();
+        Message decoded = CompactMessageCodec.decode(CompactMessageCodec.encode(message));
+        assertNull(decoded.getTag());
+        assertNull(decoded.getContentData());
+    }
+}
@@ -0,0 +1,295 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Edgeworx, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ * Saeid Baghbidi
+ * Kilton Hopkins
+ *  Ashita Nagar
+ *******************************************************************************/
+package org.eclipse.iofog.message_bus;
+
+import org.eclipse.iofog.utils.configuration.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.powermock.reflect.Whitebox;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MessageArchiveTest {
+    private static final String PUBLISHER = "publisher";
+    private static final long FIRST_TIMESTAMP = 1546300800000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MessageArchive archive;
+
+    @Before
+    public void initialization() throws Exception {
+        Whitebox.setInternalState(Configuration.class, "diskDirectory", folder.getRoot().getPath() + "/");
+        Configuration.setArchiveDurability(ArchiveDurability.NONE);
+        Configuration.setArchiveEngine(ArchiveEngine.FILE);
+        Configuration.setArchiveSegmentSize(1);
+        Configuration.setArchiveSegmentMessages(20);
+        Configuration.setArchiveSegmentAge(0);
+        archive = new MessageArchive(PUBLISHER);
+    }
+
+    @After
+    public void close() {
+        archive.close();
+    }
+
+    private static List<Message> createMessages(int first, int count) {
+        List<Message> messages = new ArrayList<>();
+        for (int i = first; i < first + count; i++) {
+            Message message = new Message(PUBLISHER);
+            message.setId("id" + i);
+            message.setTag("tag" + i % 3);
+            message.setTimestamp(FIRST_TIMESTAMP + i);
+            message.setContentData(("content" + i).getBytes(UTF_8));
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    private List<String> readIds(MessageArchivePosition start) {
+        List<String> ids = new ArrayList<>();
+        try (MessageArchiveIterator iterator = archive.messageIterator(0, Long.MAX_VALUE, start, null)) {
+            iterator.forEachRemaining(message -> ids.add(message.getId()));
+        }
+        return ids;
+    }
+
+    private static List<String> ids(int first, int last) {
+        List<String> ids = new ArrayList<>();
+        for (int i = first; i < last; i++)
+            ids.add("id" + i);
+        return ids;
+    }
+
+    /**
+     * reads messages up to the given one and returns position of it, as handed out in a cursor
+     */
+    private MessageArchivePosition positionOf(int message) {
+        try (MessageArchiveIterator iterator = archive.messageIterator(0, Long.MAX_VALUE)) {
+            for (int i = 0; i < message; i++)
+                iterator.next();
+            return iterator.getPosition();
+        }
+    }
+
+    /**
+     * writes segment the way v4 archive did, header of each message
+     * followed by position of its data in index file and the rest of it in data file
+     */
+    private void writeV4Segment(List<Message> messages) throws IOException {
+        File directory = new File(folder.getRoot(), "messages/archive");
+        directory.mkdirs();
+        String fileName = PUBLISHER + "_" + messages.get(0).getTimestamp();
+        try (FileOutputStream index = new FileOutputStream(new File(directory, fileName + ".idx"));
+             FileOutputStream data = new FileOutputStream(new File(directory, fileName + ".iomsg"))) {
+            long dataPos = 0;
+            for (Message message : messages) {
+                byte[] bytes = message.getBytes();
+                index.write(bytes, 0, MessageReader.HEADER_SIZE);
+                for (int i = Long.BYTES - 1; i >= 0; i--)
+                    index.write((int) (dataPos >>> (i * 8)));
+                data.write(bytes, MessageReader.HEADER_SIZE, bytes.length - MessageReader.HEADER_SIZE);
+                dataPos += bytes.length - MessageReader.HEADER_SIZE;
+            }
+        }
+    }
+
+    private int countSegments() {
+        File[] files = new File(folder.getRoot(), "messages/archive").listFiles((dir, name) -> name.endsWith(".idx"));
+        return files == null ? 0 : files.length;
+    }
+
+    @Test
+    public void readsAcrossSegments() throws Exception {
+        archive.save(createMessages(0, 100));
+        assertEquals(5, countSegments());
+        assertEquals(ids(0, 100), readIds(null));
+    }
+
+    @Test
+    public void readsV4Segments() throws Exception {
+        archive.close();
+        writeV4Segment(createMessages(0, 30));
+        writeV4Segment(createMessages(30, 30));
+        archive = new MessageArchive(PUBLISHER);
+        archive.save(createMessages(60, 10));
+        assertEquals(3, countSegments());
+
+        assertEquals(ids(0, 70), readIds(null));
+        List<Message> messages = archive.messageQuery(FIRST_TIMESTAMP + 25, FIRST_TIMESTAMP + 34);
+        assertEquals(10, messages.size());
+        assertEquals("id25", messages.get(0).getId());
+        assertEquals("content25", new String(messages.get(0).getContentData(), UTF_8));
+        assertEquals(ids(45, 70), readIds(positionOf(45)));
+
+        MessageFilter filter = new MessageFilter("tag1", null, null);
+        List<String> tagged = new ArrayList<>();
+        try (MessageArchiveIterator iterator = archive.messageIterator(0, Long.MAX_VALUE, null, filter)) {
+            iterator.forEachRemaining(message -> tagged.add(message.getId()));
+        }
+        assertEquals(23, tagged.size());
+        assertEquals("id1", tagged.get(0));
+
+        try (MessageIdLookup lookup = archive.messageLookup("id42")) {
+            assertEquals(FIRST_TIMESTAMP + 42, lookup.find().getTimestamp());
+        }
+        assertTrue(archive.indexSegment());
+        try (MessageIdLookup lookup = archive.messageLookup("id42")) {
+            assertEquals(FIRST_TIMESTAMP + 42, lookup.find().getTimestamp());
+        }
+
+        // v4 segments are neither merged nor compressed
+        Configuration.setArchiveSegmentMessages(1000);
+        assertTrue(!archive.compact());
+        assertTrue(!archive.compressColdSegment());
+        assertEquals(ids(0, 70), readIds(null));
+    }
+
+    @Test
+    public void skipsCorruptedV4Records() throws Exception {
+        archive.close();
+        writeV4Segment(createMessages(0, 30));
+        int recordSize = MessageReader.HEADER_SIZE + Long.BYTES;
+        File indexFile = new File(folder.getRoot(), "messages/archive/" + PUBLISHER + "_" + FIRST_TIMESTAMP + ".idx");
+        try (RandomAccessFile index = new RandomAccessFile(indexFile, "rw")) {
+            // unknown version, data beyond data file and negative data position
+            index.seek(5 * recordSize + 1);
+            index.writeByte(9);
+            index.seek(10 * recordSize + MessageReader.HEADER_SIZE);
+            index.writeLong(Integer.MAX_VALUE);
+            index.seek(20 * recordSize + MessageReader.HEADER_SIZE);
+            index.writeLong(-1);
+        }
+        archive = new MessageArchive(PUBLISHER);
+
+        List<String> expected = ids(0, 30);
+        expected.removeAll(Arrays.asList("id5", "id10", "id20"));
+        assertEquals(expected, readIds(null));
+    }
+
+    @Test
+    public void cursorResumesAcrossRotation() throws Exception {
+        archive.save(createMessages(0, 30));
+        assertNull(positionOf(30));
+
+        MessageArchivePosition position = positionOf(25);
+        archive.save(createMessages(30, 70));
+        assertEquals(ids(25, 100), readIds(position));
+
+        // position at the first message of a segment
+        assertEquals(ids(40, 100), readIds(positionOf(40)));
+    }
+
+    @Test
+    public void cursorResumesAfterCompaction() throws Exception {
+        archive.save(createMessages(0, 100));
+        MessageArchivePosition position = positionOf(50);
+        assertNotNull(position);
+
+        Configuration.setArchiveSegmentMessages(100);
+        assertTrue(archive.compact());
+        assertEquals(2, countSegments());
+        assertEquals(ids(0, 100), readIds(null));
+        assertEquals(ids(50, 100), readIds(position));
+    }
+
+    @Test
+    public void cursorResumesAfterRepeatedCompaction() throws Exception {
+        // segments of 30, 10 and 10 messages followed by segment being written
+        Configuration.setArchiveSegmentMessages(30);
+        archive.save(createMessages(0, 30));
+        Configuration.setArchiveSegmentMessages(10);
+        archive.save(createMessages(30, 25));
+        assertEquals(4, countSegments());
+        MessageArchivePosition third = positionOf(45);
+
+        // first segment is not small yet, so the second and third ones are merged
+        Configuration.setArchiveSegmentMessages(100);
+        assertTrue(archive.compact());
+        assertEquals(3, countSegments());
+        MessageArchivePosition second = positionOf(35);
+        assertEquals(ids(45, 55), readIds(third));
+
+        // then merged segment is merged into the first one
+        Configuration.setArchiveSegmentMessages(200);
+        assertTrue(archive.compact());
+        assertEquals(2, countSegments());
+        assertEquals(ids(0, 55), readIds(null));
+        assertEquals(ids(35, 55), readIds(second));
+        assertEquals(ids(45, 55), readIds(third));
+    }
+
+    private Message lookup(String id) {
+        try (MessageIdLookup lookup = archive.messageLookup(id)) {
+            return lookup.find();
+        }
+    }
+
+    @Test
+    public void lookupFindsMessagesOfAllSegments() throws Exception {
+        archive.save(createMessages(0, 50));
+        File archiveDirectory = new File(folder.getRoot(), "messages/archive");
+        File[] idIndexes = archiveDirectory.listFiles((dir, name) -> name.endsWith(".midx"));
+        assertEquals(2, idIndexes.length);
+        // sealed segment without ID index is read as a whole
+        assertTrue(idIndexes[0].delete());
+
+        for (int i = 0; i < 50; i++)
+            assertEquals(FIRST_TIMESTAMP + i, lookup("id" + i).getTimestamp());
+        assertNull(lookup("missing"));
+
+        assertTrue(archive.indexSegment());
+        assertEquals(2, archiveDirectory.listFiles((dir, name) -> name.endsWith(".midx")).length);
+        for (int i = 0; i < 50; i++)
+            assertEquals("id" + i, lookup("id" + i).getId());
+
+        // ID index of segment being written is rebuilt once archive is reopened
+        archive.close();
+        archive = new MessageArchive(PUBLISHER);
+        assertEquals("id45", lookup("id45").getId());
+        archive.save(createMessages(50, 5));
+        assertEquals("id52", lookup("id52").getId());
+    }
+
+    @Test
+    public void compactionLeavesActiveSegmentOpen() throws Exception {
+        archive.save(createMessages(0, 90));
+        int segments = countSegments();
+        Configuration.setArchiveSegmentMessages(100);
+        assertTrue(archive.compact());
+        assertEquals(segments - 3, countSegments());
+
+        archive.save(createMessages(90, 5));
+        assertEquals(segments - 3, countSegments());
+        assertEquals(ids(0, 95), readIds(null));
+        try (MessageIdLookup lookup = archive.messageLookup("id92")) {
+            assertEquals("id92", lookup.find().getId());
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Edgeworx, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ * Saeid Baghbidi
+ * Kilton Hopkins
+ *  Ashita Nagar
+ *******************************************************************************/
+package org.eclipse.iofog.message_bus;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MessageIdGeneratorTest {
+    private static final int THREADS = 16;
+    private static final int IDS_PER_THREAD = 20000;
+
+    @Test
+    public void idsAreUniqueAcrossThreads() throws Exception {
+        MessageIdGenerator generator = new MessageIdGenerator();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<List<String>>> results = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    List<String> ids = new ArrayList<>(IDS_PER_THREAD);
+                    for (int j = 0; j < IDS_PER_THREAD; j++)
+                        ids.add(generator.getNextId());
+                    return ids;
+                }));
+            }
+            start.countDown();
+
+            Set<String> ids = new HashSet<>();
+            for (Future<List<String>> result : results)
+                ids.addAll(result.get());
+            assertEquals(THREADS * IDS_PER_THREAD, ids.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void idsOfGeneratorsAreUnique() {
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            MessageIdGenerator generator = new MessageIdGenerator();
+            for (int j = 0; j < 100; j++)
+                assertTrue(ids.add(generator.getNextId()));
+        }
+    }
+
+    @Test
+    public void idsHaveFixedLength() {
+        MessageIdGenerator generator = new MessageIdGenerator();
+        for (int i = 0; i < 1000; i++)
+            assertEquals(28, generator.getNextId().length());
+    }
+}
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Edgeworx, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ * Saeid Baghbidi
+ * Kilton Hopkins
+ *  Ashita Nagar
+ *******************************************************************************/
+package org.eclipse.iofog.message_bus;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class MessageIdIndexTest {
+    private static final int COUNT = 3000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MessageIdIndex createIndex() {
+        MessageIdIndex index = new MessageIdIndex();
+        for (int i = 0; i < COUNT; i++)
+            index.add("id" + i, i * MessageArchive.INDEX_RECORD_SIZE);
+        return index;
+    }
+
+    @Test
+    public void findsAddedIds() {
+        MessageIdIndex index = createIndex();
+        assertEquals(COUNT, index.size());
+        for (int i = 0; i < COUNT; i++)
+            assertArrayEquals(new int[]{i * MessageArchive.INDEX_RECORD_SIZE}, index.find("id" + i));
+        assertEquals(0, index.find("missing").length);
+    }
+
+    @Test
+    public void findsIdsInWrittenIndex() throws Exception {
+        File file = folder.newFile("segment.midx");
+        createIndex().write(file);
+        for (int i = 0; i < COUNT; i++)
+            assertArrayEquals(new int[]{i * MessageArchive.INDEX_RECORD_SIZE}, MessageIdIndex.find(file, "id" + i));
+        assertEquals(0, MessageIdIndex.find(file, "missing").length);
+        assertEquals(0, folder.getRoot().listFiles((dir, name) -> name.endsWith(".tmp")).length);
+    }
+
+    @Test
+    public void returnsAllCandidatesOfCollidingIds() throws Exception {
+        // "Aa" and "BB" have the same hash code
+        MessageIdIndex index = new MessageIdIndex();
+        index.add("Aa", 0);
+        index.add("other", MessageArchive.INDEX_RECORD_SIZE);
+        index.add("BB", 2 * MessageArchive.INDEX_RECORD_SIZE);
+        int[] expected = {0, 2 * MessageArchive.INDEX_RECORD_SIZE};
+        assertArrayEquals(expected, index.find("Aa"));
+        assertArrayEquals(expected, index.find("BB"));
+
+        File file = folder.newFile("segment.midx");
+        index.write(file);
+        int[] found = MessageIdIndex.find(file, "BB");
+        Arrays.sort(found);
+        assertArrayEquals(expected, found);
+    }
+
+    @Test
+    public void emptyIndex() throws Exception {
+        File file = folder.newFile("segment.midx");
+        new MessageIdIndex().write(file);
+        assertEquals(0, MessageIdIndex.find(file, "id").length);
+    }
+
+    @Test
+    public void invalidIndexIsRejected() throws Exception {
+        File file = folder.newFile("segment.midx");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[]{0, MessageIdIndex.VERSION, 0, 0, 0, 3});
+        }
+        try {
+            MessageIdIndex.find(file, "id");
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Edgeworx, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ * Saeid Baghbidi
+ * Kilton Hopkins
+ *  Ashita Nagar
+ *******************************************************************************/
+package org.eclipse.iofog.message_bus;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MessageReaderTest {
+    private static final int CONTEXT_LENGTH_INDEX = 25;
+    private static final int CONTENT_LENGTH_INDEX = 29;
+
+    private byte[] encode() {
+        Message message = new Message("publisher");
+        message.setId("id");
+        message.setTimestamp(1546300800000L);
+        message.setContentData("content".getBytes(UTF_8));
+        return message.getBytes();
+    }
+
+    @Test
+    public void readsEncodedMessage() {
+        byte[] bytes = encode();
+        MessageReader reader = new MessageReader().wrap(bytes);
+        assertTrue(reader.isValid());
+        assertEquals(bytes.length, reader.getEncodedSize());
+
+        Message message = new Message(bytes);
+        assertEquals("publisher", message.getPublisher());
+        assertEquals(1546300800000L, message.getTimestamp());
+        assertArrayEquals("content".getBytes(UTF_8), message.getContentData());
+    }
+
+    @Test
+    public void truncatedMessageIsInvalid() {
+        byte[] bytes = encode();
+        MessageReader reader = new MessageReader().wrap(Arrays.copyOf(bytes, bytes.length - 1));
+        assertFalse(reader.isValid());
+        assertEquals(bytes.length - MessageReader.HEADER_SIZE, reader.getDataSize());
+    }
+
+    @Test
+    public void headerOnlyReportsDataSize() {
+        byte[] bytes = encode();
+        MessageReader reader = new MessageReader().wrap(Arrays.copyOf(bytes, MessageReader.HEADER_SIZE), null);
+        assertFalse(reader.isValid());
+        assertEquals(bytes.length - MessageReader.HEADER_SIZE, reader.getDataSize());
+    }
+
+    @Test
+    public void overflowingLengthsAreRejected() {
+        ByteBuf buffer = Unpooled.wrappedBuffer(encode());
+        buffer.setInt(CONTEXT_LENGTH_INDEX, Integer.MAX_VALUE);
+        buffer.setInt(CONTENT_LENGTH_INDEX, Integer.MAX_VALUE);
+        MessageReader reader = new MessageReader().wrap(buffer);
+        assertFalse(reader.isValid());
+        assertEquals(-1, reader.getDataSize());
+        assertEquals(0, reader.getSize(MessageReader.CONTENT_DATA));
+    }
+
+    @Test
+    public void negativeLengthIsRejected() {
+        ByteBuf buffer = Unpooled.wrappedBuffer(encode());
+        buffer.setInt(CONTENT_LENGTH_INDEX, -2);
+        MessageReader reader = new MessageReader().wrap(buffer);
+        assertFalse(reader.isValid());
+        assertEquals(-1, reader.getDataSize());
+    }
+}